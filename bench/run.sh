@@ -0,0 +1,11 @@
+#!/bin/sh
+# Construit et lance la suite JMH, puis publie les résultats en JSON dans bench/results/.
+# Les arguments sont transmis à JMH, par exemple : ./bench/run.sh TrameReaderBenchmark
+set -e
+cd "$(dirname "$0")"
+
+mvn -B -q -f ../pom.xml -pl bench -am package
+mkdir -p results
+out="results/$(date +%Y%m%d-%H%M%S)-$(git rev-parse --short HEAD 2>/dev/null || echo local).json"
+java -jar target/benchmarks.jar -prof gc -rf json -rff "$out" "$@"
+echo "Résultats : bench/$out"
@@ -0,0 +1,52 @@
+package fr.upem.net.chatvabien.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import fr.upem.net.chatvabien.protocol.*;
+
+/**
+ * Coût d'une diffusion à {@code recipients} destinataires : une sérialisation par destinataire
+ * (ancien chemin) ou une seule {@link EncodedTrame} partagée en vues en lecture seule.
+ * <p>
+ * Lancé avec {@code -prof gc}, la métrique {@code gc.alloc.rate.norm} donne les octets
+ * alloués par diffusion.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BroadcastEncodingBenchmark {
+
+    @Param({"100", "5000"})
+    int recipients;
+
+    private Trame trame;
+
+    @Setup
+    public void setup() {
+        var random = new Random(42);
+        trame = Trame.clientMessage(OPCODE.MESSAGE, ProtocolSamples.pseudo(random),
+                new PublicMessage(ProtocolSamples.text(random, 120)));
+    }
+
+    @Benchmark
+    public void encodePerRecipient(Blackhole blackhole) {
+        for (var i = 0; i < recipients; i++) {
+            blackhole.consume(trame.toByteBuffer());
+        }
+    }
+
+    @Benchmark
+    public void encodeOnce(Blackhole blackhole) {
+        var encoded = trame.encode();
+        for (var i = 0; i < recipients; i++) {
+            blackhole.consume(encoded.buffer());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package fr.upem.net.chatvabien.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import fr.upem.net.chatvabien.protocol.OPCODE;
+
+/**
+ * Résolution d'un octet reçu en {@link OPCODE} par {@link OPCODE#fromCode(byte)},
+ * sur tous les codes connus plus un code inconnu.
+ * <p>
+ * {@code valuesScan} reproduit l'ancienne implémentation, qui parcourait {@code values()}
+ * et clonait donc le tableau des constantes à chaque appel. Lancé avec {@code -prof gc},
+ * {@code fromCode} doit afficher un {@code gc.alloc.rate.norm} nul.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@OperationsPerInvocation(OpcodeBenchmark.CODES)
+public class OpcodeBenchmark {
+    static final int CODES = 14;
+
+    private final byte[] codes = new byte[CODES];
+
+    @Setup
+    public void setup() {
+        var values = OPCODE.values();
+        for (var i = 0; i < CODES; i++) {
+            codes[i] = i < values.length ? values[i].getCode() : (byte) 0x7F;
+        }
+    }
+
+    @Benchmark
+    public void fromCode(Blackhole blackhole) {
+        for (var code : codes) {
+            blackhole.consume(OPCODE.fromCode(code));
+        }
+    }
+
+    @Benchmark
+    public void valuesScan(Blackhole blackhole) {
+        for (var code : codes) {
+            blackhole.consume(scan(code));
+        }
+    }
+
+    private static OPCODE scan(byte code) {
+        for (var op : OPCODE.values()) {
+            if (op.getCode() == code) {
+                return op;
+            }
+        }
+        return null;
+    }
+}
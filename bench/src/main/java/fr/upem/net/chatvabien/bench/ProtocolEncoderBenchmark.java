@@ -0,0 +1,67 @@
+package fr.upem.net.chatvabien.bench;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import fr.upem.net.chatvabien.protocol.OPCODE;
+import fr.upem.net.chatvabien.protocol.User.ProtocolEncoder;
+
+/**
+ * Méthodes d'encodage de {@link ProtocolEncoder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ProtocolEncoderBenchmark {
+    private String from;
+    private String to;
+    private String text;
+    private String userList;
+    private final InetSocketAddress address = new InetSocketAddress("127.0.0.1", 7777);
+
+    @Setup
+    public void setup() {
+        var random = new Random(42);
+        from = ProtocolSamples.pseudo(random);
+        to = ProtocolSamples.pseudo(random);
+        text = ProtocolSamples.text(random, 120);
+        userList = ProtocolSamples.text(random, 400).replace(' ', ',');
+    }
+
+    @Benchmark
+    public ByteBuffer encodeBroadcastMessage() {
+        return ProtocolEncoder.encodeBroadcastMessage(from, text, OPCODE.MESSAGE.getCode());
+    }
+
+    @Benchmark
+    public ByteBuffer encodePrivateRequest() {
+        return ProtocolEncoder.encodePrivateRequest(from, to, OPCODE.REQUEST_PRIVATE.getCode());
+    }
+
+    @Benchmark
+    public ByteBuffer encodeOKPrivateRequest() {
+        return ProtocolEncoder.encodeOKPrivateRequest(from, to, address, 42L, OPCODE.OK_PRIVATE.getCode());
+    }
+
+    @Benchmark
+    public ByteBuffer encodeKOPrivateRequest() {
+        return ProtocolEncoder.encodeKOPrivateRequest(from, to, OPCODE.KO_PRIVATE.getCode());
+    }
+
+    @Benchmark
+    public ByteBuffer encodeUserList() {
+        return ProtocolEncoder.encodeUserList(userList, OPCODE.CONNECTED_USERS_LIST.getCode());
+    }
+
+    @Benchmark
+    public ByteBuffer encodeLoginStatus() {
+        return ProtocolEncoder.encodeLoginStatus(true, OPCODE.LOGIN_ACCEPTED.getCode(), OPCODE.LOGIN_REFUSED.getCode());
+    }
+}
@@ -0,0 +1,71 @@
+package fr.upem.net.chatvabien.bench;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import fr.upem.net.chatvabien.protocol.*;
+
+/**
+ * Jeux de données réalistes et reproductibles (graine fixe) partagés par les benchmarks.
+ */
+final class ProtocolSamples {
+    private static final String[] PSEUDOS = {"alice", "bob", "carol", "dave", "élodie", "françois", "yann", "arnaud"};
+    private static final String[] WORDS = {"salut", "ça", "va", "le", "serveur", "est", "rapide", "aujourd'hui",
+            "quelqu'un", "a", "vu", "mon", "fichier", "merci", "à", "tous", "réunion", "demain", "😀"};
+
+    private ProtocolSamples() {}
+
+    static String pseudo(Random random) {
+        return PSEUDOS[random.nextInt(PSEUDOS.length)];
+    }
+
+    /**
+     * Texte de chat d'environ {@code approximateSize} caractères.
+     */
+    static String text(Random random, int approximateSize) {
+        var builder = new StringBuilder(approximateSize + 16);
+        while (builder.length() < approximateSize) {
+            if (!builder.isEmpty()) {
+                builder.append(' ');
+            }
+            builder.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Flux de {@code count} trames MESSAGE encodées bout à bout, de 20 à 200 caractères de texte.
+     */
+    static ByteBuffer messageStream(int count, long seed) {
+        var random = new Random(seed);
+        var trames = new ByteBuffer[count];
+        var size = 0;
+        for (var i = 0; i < count; i++) {
+            var trame = Trame.clientMessage(OPCODE.MESSAGE, pseudo(random), new PublicMessage(text(random, 20 + random.nextInt(180))));
+            trames[i] = trame.toByteBuffer();
+            size += trames[i].remaining();
+        }
+        var stream = ByteBuffer.allocate(size);
+        for (var trame : trames) {
+            stream.put(trame);
+        }
+        return stream.flip();
+    }
+
+    /**
+     * Une trame de chaque type de {@link Message}, indexée par le nom passé en paramètre JMH.
+     */
+    static Trame trame(String kind, Random random) {
+        var sender = pseudo(random);
+        return switch (kind) {
+            case "LOGIN" -> Trame.clientMessage(OPCODE.LOGIN, sender, new LoginMessage());
+            case "MESSAGE" -> Trame.clientMessage(OPCODE.MESSAGE, sender, new PublicMessage(text(random, 120)));
+            case "REQUEST_PRIVATE" -> Trame.clientMessage(OPCODE.REQUEST_PRIVATE, sender, new PrivateRequestMessage(pseudo(random)));
+            case "OK_PRIVATE" -> Trame.clientMessage(OPCODE.OK_PRIVATE, sender,
+                    new OKPrivateMessage(pseudo(random), new java.net.InetSocketAddress("127.0.0.1", 7777), random.nextLong()));
+            case "KO_PRIVATE" -> Trame.clientMessage(OPCODE.KO_PRIVATE, sender, new KOPrivateMessage(pseudo(random)));
+            case "GET_CONNECTED_USERS" -> Trame.clientMessage(OPCODE.GET_CONNECTED_USERS, sender, new GetUsersMessage());
+            default -> throw new IllegalArgumentException(kind);
+        };
+    }
+}
@@ -0,0 +1,111 @@
+package fr.upem.net.chatvabien.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * Débit d'un transfert en masse sur la boucle locale selon que le buffer passé à
+ * {@link SocketChannel#read(ByteBuffer)} ou {@link SocketChannel#write(ByteBuffer)} est
+ * sur le tas ou direct. Un buffer sur le tas impose au JDK une copie par un buffer direct
+ * temporaire à chaque appel système.
+ * <p>
+ * Chaque opération transfère {@link #CHUNK} octets : le nombre d'opérations par seconde
+ * multiplié par 1 Mio donne le débit. L'autre extrémité de la connexion est servie par un
+ * thread qui écrit ou lit sans arrêt avec un buffer direct.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class SocketBufferBenchmark {
+    private static final int CHUNK = 1 << 20;
+    private static final int PEER_BUFFER_SIZE = 256 * 1024;
+
+    @Param({"heap", "direct"})
+    String kind;
+
+    /**
+     * Taille du buffer de lecture ou d'écriture : celle des contextes (1 Kio) ou de la classe maximale du pool.
+     */
+    @Param({"1024", "65536"})
+    int bufferSize;
+
+    private ServerSocketChannel listener;
+    private SocketChannel reader;
+    private SocketChannel writer;
+    private Thread peer;
+    private ByteBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setup(BenchmarkParams params) throws IOException {
+        listener = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        writer = SocketChannel.open(listener.getLocalAddress());
+        reader = listener.accept();
+        buffer = kind.equals("direct") ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+
+        // l'extrémité opposée à celle mesurée tourne en continu jusqu'à la fermeture
+        var measuringReads = params.getBenchmark().endsWith(".read");
+        peer = Thread.ofPlatform().daemon().start(measuringReads ? () -> pump(writer, true) : () -> pump(reader, false));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        writer.close();
+        reader.close();
+        listener.close();
+        peer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    @Benchmark
+    public long read() throws IOException {
+        var total = 0L;
+        while (total < CHUNK) {
+            buffer.clear();
+            var n = reader.read(buffer);
+            if (n == -1) {
+                throw new IOException("connexion fermée");
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        var total = 0L;
+        while (total < CHUNK) {
+            buffer.clear();
+            total += writer.write(buffer);
+        }
+        return total;
+    }
+
+    private static void pump(SocketChannel channel, boolean writing) {
+        var peerBuffer = ByteBuffer.allocateDirect(PEER_BUFFER_SIZE);
+        try {
+            while (true) {
+                peerBuffer.clear();
+                if (writing) {
+                    channel.write(peerBuffer);
+                } else if (channel.read(peerBuffer) == -1) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            if (channel.isOpen()) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package fr.upem.net.chatvabien.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import fr.upem.net.chatvabien.protocol.Reader;
+import fr.upem.net.chatvabien.protocol.StringReader;
+
+/**
+ * Lecture d'une chaîne UTF-8 préfixée par sa taille avec {@link StringReader}, pour plusieurs tailles.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class StringReaderBenchmark {
+
+    @Param({"16", "256", "900"})
+    int size;
+
+    private ByteBuffer encoded;
+    private final StringReader reader = new StringReader();
+
+    @Setup
+    public void setup() {
+        var text = ProtocolSamples.text(new Random(42), size);
+        var bytes = StandardCharsets.UTF_8.encode(text);
+        if (bytes.remaining() > StringReader.MAX_STRING_SIZE) {
+            bytes.limit(StringReader.MAX_STRING_SIZE);
+        }
+        encoded = ByteBuffer.allocate(Integer.BYTES + bytes.remaining()).putInt(bytes.remaining()).put(bytes).flip();
+    }
+
+    @Benchmark
+    public String process() {
+        var bb = encoded.duplicate();
+        reader.reset();
+        if (reader.process(bb) != Reader.ProcessStatus.DONE) {
+            throw new AssertionError();
+        }
+        return reader.get();
+    }
+}
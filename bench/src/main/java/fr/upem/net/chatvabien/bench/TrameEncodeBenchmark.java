@@ -0,0 +1,36 @@
+package fr.upem.net.chatvabien.bench;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import fr.upem.net.chatvabien.protocol.Trame;
+
+/**
+ * Sérialisation d'une trame par {@link Trame#toByteBuffer()} pour chaque type de message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TrameEncodeBenchmark {
+
+    @Param({"LOGIN", "MESSAGE", "REQUEST_PRIVATE", "OK_PRIVATE", "KO_PRIVATE", "GET_CONNECTED_USERS"})
+    String kind;
+
+    private Trame trame;
+
+    @Setup
+    public void setup() {
+        trame = ProtocolSamples.trame(kind, new Random(42));
+    }
+
+    @Benchmark
+    public ByteBuffer toByteBuffer() {
+        return trame.toByteBuffer();
+    }
+}
@@ -0,0 +1,77 @@
+package fr.upem.net.chatvabien.bench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import fr.upem.net.chatvabien.protocol.Reader;
+import fr.upem.net.chatvabien.protocol.TrameReader;
+
+/**
+ * Décodage d'un flux de trames MESSAGE par {@link TrameReader#process(ByteBuffer)}.
+ * <p>
+ * {@code contiguous} décode un flux entièrement présent en mémoire (décodage en place) ;
+ * {@code fragmented} reproduit des lectures socket de {@code chunkSize} octets dans un
+ * bufferIn de 1024 octets, ce qui force la machine à états incrémentale pour les petits morceaux.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@OperationsPerInvocation(TrameReaderBenchmark.FRAMES)
+public class TrameReaderBenchmark {
+    static final int FRAMES = 1_000;
+
+    /**
+     * Taille des lectures simulées, propre au benchmark {@code fragmented}.
+     */
+    @State(Scope.Thread)
+    public static class Reads {
+        @Param({"7", "64", "1024"})
+        int chunkSize;
+    }
+
+    private ByteBuffer stream;
+    private final ByteBuffer bufferIn = ByteBuffer.allocate(1024);
+    private final TrameReader reader = new TrameReader();
+
+    @Setup
+    public void setup() {
+        stream = ProtocolSamples.messageStream(FRAMES, 42);
+    }
+
+    @Benchmark
+    public void contiguous(Blackhole blackhole) {
+        var bb = stream.duplicate();
+        while (bb.hasRemaining()) {
+            if (reader.process(bb) != Reader.ProcessStatus.DONE) {
+                throw new AssertionError();
+            }
+            blackhole.consume(reader.get());
+            reader.reset();
+        }
+    }
+
+    @Benchmark
+    public void fragmented(Reads reads, Blackhole blackhole) {
+        var source = stream.duplicate();
+        bufferIn.clear();
+        while (source.hasRemaining() || bufferIn.position() > 0) {
+            var chunk = Math.min(Math.min(reads.chunkSize, source.remaining()), bufferIn.remaining());
+            bufferIn.put(bufferIn.position(), source, source.position(), chunk);
+            bufferIn.position(bufferIn.position() + chunk);
+            source.position(source.position() + chunk);
+
+            bufferIn.flip();
+            while (reader.process(bufferIn) == Reader.ProcessStatus.DONE) {
+                blackhole.consume(reader.get());
+                reader.reset();
+            }
+            bufferIn.compact();
+        }
+    }
+}
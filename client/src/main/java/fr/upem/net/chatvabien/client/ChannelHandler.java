@@ -10,4 +10,9 @@ public interface ChannelHandler {
     default void handleAccept() throws IOException {}
     default void handleRead() throws IOException {}
     default void handleWrite() throws IOException {}
+
+    /**
+     * Libère les ressources du gestionnaire, appelé une fois son canal fermé
+     */
+    default void close() {}
 }
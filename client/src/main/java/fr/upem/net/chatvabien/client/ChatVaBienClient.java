@@ -0,0 +1,474 @@
+package fr.upem.net.chatvabien.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.*;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import fr.upem.net.chatvabien.protocol.*;
+
+/**
+ * Client ChatVaBien
+ */
+public class ChatVaBienClient implements ServerMessageHandler, PrivateConnectionHandler {
+    private static final Logger logger = Logger.getLogger(ChatVaBienClient.class.getName());
+    // buffers directs de lecture des connexions au serveur et des connexions privées
+    private static final int POOL_MIN_BUFFER_SIZE = 1024;
+    private static final int POOL_MAX_BUFFER_SIZE = 64 * 1024;
+    private static final int POOL_MAX_IDLE = 16;
+    // délais entre deux tentatives de reconnexion au serveur, doublés à chaque échec
+    private static final long RECONNECT_MIN_DELAY_MILLIS = 500;
+    private static final long RECONNECT_MAX_DELAY_MILLIS = 30_000;
+    // connexions ouvertes vers un pair pour transférer un fichier, la principale comprise
+    private static final int PRIVATE_STREAMS =
+            Math.clamp(Integer.getInteger("chatvabien.private.streams", 1), 1, PrivateContext.MAX_STREAMS + 1);
+
+    private final String login;
+    private final String password;
+    private final Path fileDirectory;
+    private final InetSocketAddress serverAddress;
+
+    private final Selector selector;
+    private final Map<SelectionKey, ChannelHandler> handlers = new HashMap<>();
+    private final Map<String, PrivateContext> privateContexts = new HashMap<>();
+    // jetons donnés par OK_PRIVATE, attendus dans l'OPEN de la connexion entrante
+    private final Map<Long, String> expectedTokens = new HashMap<>();
+    // envois interrompus par la fermeture d'une connexion privée, repris à la suivante avec le même pair
+    private final Map<String, List<Path>> interruptedSends = new HashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final BufferPool bufferPool =
+            new BufferPool(POOL_MIN_BUFFER_SIZE, POOL_MAX_BUFFER_SIZE, POOL_MAX_BUFFER_SIZE, POOL_MAX_IDLE);
+    private final ConsoleManager consoleManager = new ConsoleManager();
+
+    private ServerContext serverContext;
+    private ServerSocketChannel privateServerChannel;
+    private CommandProcessor commandProcessor;
+
+    // présence : pseudos connectés tenus à jour par les évolutions du serveur, version -1 avant le premier état
+    private final Set<String> connectedUsers = new LinkedHashSet<>();
+    private final List<String> snapshotPages = new ArrayList<>();
+    private long presenceVersion = -1;
+
+    // reprise : numéro du dernier message public reçu, -1 tant que le serveur n'en a pas donné
+    private long epoch = ResumeMessage.NO_EPOCH;
+    private long lastSequence = -1;
+    private boolean sequenced = false;
+    private boolean everAccepted = false;
+    private boolean reconnectRequested = false;
+    private long reconnectDelayMillis = RECONNECT_MIN_DELAY_MILLIS;
+    private long reconnectAt = -1;
+
+    public ChatVaBienClient(String login, InetSocketAddress serverAddress, Path fileDirectory) throws IOException {
+        this(login, null, serverAddress, fileDirectory);
+    }
+
+    public ChatVaBienClient(String login, String password, InetSocketAddress serverAddress, Path fileDirectory)
+            throws IOException {
+        this.login = login;
+        this.password = password;
+        this.serverAddress = serverAddress;
+        this.fileDirectory = fileDirectory;
+        this.selector = Selector.open();
+    }
+
+    public void launch() throws IOException {
+        setupServerConnection();
+        setupPrivateServer();
+        setupCommandProcessor();
+        consoleManager.start();
+
+        logger.info("Client ChatVaBien démarré pour " + login);
+
+        while (!Thread.interrupted()) {
+            selector.select(1000);
+
+            var selectedKeys = selector.selectedKeys();
+            var iterator = selectedKeys.iterator();
+
+            while (iterator.hasNext()) {
+                var key = iterator.next();
+                iterator.remove();
+                treatKey(key);
+            }
+
+            processCommands();
+            reconnectIfDue();
+        }
+    }
+
+    private void setupServerConnection() throws IOException {
+        var serverChannel = SocketChannel.open();
+        serverChannel.configureBlocking(false);
+
+        var key = serverChannel.register(selector, SelectionKey.OP_CONNECT);
+        this.serverContext = new ServerContext(key, login, password, bufferPool, this);
+        serverContext.resumeAfter(epoch, lastSequence);
+        handlers.put(key, serverContext);
+
+        serverChannel.connect(serverAddress);
+    }
+
+    private void setupPrivateServer() throws IOException {
+        privateServerChannel = ServerSocketChannel.open();
+        privateServerChannel.configureBlocking(false);
+        privateServerChannel.bind(new InetSocketAddress(0));
+
+        var key = privateServerChannel.register(selector, SelectionKey.OP_ACCEPT);
+        handlers.put(key, new ChannelHandler() {
+            @Override
+            public void handleAccept() throws IOException {
+                var clientChannel = privateServerChannel.accept();
+                if (clientChannel == null) return;
+
+                clientChannel.configureBlocking(false);
+                var clientKey = clientChannel.register(selector, SelectionKey.OP_READ);
+
+                var context = new PrivateContext(clientKey, login, null, bufferPool, fileDirectory,
+                        ChatVaBienClient.this);
+                handlers.put(clientKey, context);
+
+                logger.info("Connexion privée entrante acceptée");
+            }
+        });
+
+        var privatePort = ((InetSocketAddress) privateServerChannel.getLocalAddress()).getPort();
+        logger.info("Serveur privé sur port " + privatePort);
+    }
+
+    private void setupCommandProcessor() {
+        this.commandProcessor = new DefaultCommandProcessor(
+                this,
+                serverContext,
+                privateContexts,
+                privateServerChannel
+        );
+    }
+
+    private void treatKey(SelectionKey key) {
+        try {
+            var handler = handlers.get(key);
+            if (handler == null) {
+                logger.warning("Handler null pour clé: " + key.channel());
+                return;
+            }
+
+            if (key.isValid() && key.isConnectable()) {
+                handler.handleConnect();
+            }
+            if (key.isValid() && key.isAcceptable()) {
+                handler.handleAccept();
+            }
+            if (key.isValid() && key.isWritable()) {
+                handler.handleWrite();
+            }
+            if (key.isValid() && key.isReadable()) {
+                handler.handleRead();
+            }
+        } catch (IOException e) {
+            logger.warning("Erreur sur clé: " + e.getMessage());
+            silentlyClose(key);
+        }
+    }
+
+    private void silentlyClose(SelectionKey key) {
+        if (handlers.get(key) instanceof PrivateContext context && context.isPrimary()) {
+            // les connexions de flux d'abord, leurs morceaux en cours rendus à l'envoi
+            for (var streamKey : context.streamKeys()) {
+                silentlyClose(streamKey);
+            }
+        }
+        var handler = handlers.remove(key);
+        try {
+            if (handler != null) {
+                handler.close();
+            }
+            key.channel().close();
+        } catch (IOException e) {
+            // ignore
+        }
+        if (handler == serverContext) {
+            scheduleReconnect();
+        } else if (handler instanceof PrivateContext context && context.getRemotePseudo() != null) {
+            privateContexts.remove(context.getRemotePseudo(), context);
+        }
+    }
+
+    /**
+     * Programme une nouvelle connexion au serveur ; l'état de présence sera renvoyé en entier
+     * et les messages publics manqués repris depuis {@code lastSequence}.
+     */
+    private void scheduleReconnect() {
+        sequenced = false;
+        connectedUsers.clear();
+        snapshotPages.clear();
+        presenceVersion = -1;
+        System.out.println("Connexion au serveur perdue, nouvelle tentative dans " + reconnectDelayMillis + " ms");
+        reconnectAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(reconnectDelayMillis);
+        reconnectDelayMillis = Math.min(2 * reconnectDelayMillis, RECONNECT_MAX_DELAY_MILLIS);
+    }
+
+    private void reconnectIfDue() {
+        if (reconnectRequested) {
+            // pseudo encore tenu par l'ancienne connexion, que le serveur n'a pas encore vue fermée
+            reconnectRequested = false;
+            silentlyClose(serverContext.key());
+            return;
+        }
+        if (reconnectAt < 0 || System.nanoTime() < reconnectAt) {
+            return;
+        }
+        reconnectAt = -1;
+        try {
+            setupServerConnection();
+            setupCommandProcessor();
+        } catch (IOException e) {
+            logger.warning("Reconnexion impossible: " + e.getMessage());
+            scheduleReconnect();
+        }
+    }
+
+    private void processCommands() {
+        String command;
+        while ((command = consoleManager.pollCommand()) != null) {
+            // hors connexion, seules les commandes locales sont traitées
+            if (!serverContext.key().isValid() && !command.equals("/help") && !command.equals("/quit")) {
+                System.out.println("Hors connexion, non envoyé: " + command);
+                continue;
+            }
+            commandProcessor.processCommand(command);
+        }
+    }
+
+    @Override
+    public void handleServerMessage(Trame trame) {
+        switch (trame.opcode()) {
+            case LOGIN_ACCEPTED -> {
+                System.out.println("Connexion acceptée - Bienvenue " + login + " !");
+                everAccepted = true;
+                reconnectDelayMillis = RECONNECT_MIN_DELAY_MILLIS;
+                serverContext.subscribeUsers();
+            }
+            case LOGIN_REFUSED -> {
+                if (everAccepted) {
+                    reconnectRequested = true;
+                    return;
+                }
+                System.out.println("Connexion refusée");
+                System.exit(1);
+            }
+            case MESSAGE -> {
+                // les avis du serveur ne sont pas numérotés
+                if (sequenced && !trame.sender().equals("Server")) {
+                    lastSequence++;
+                }
+                System.out.println(trame.sender() + ": " + extractMessageText(trame.message()));
+            }
+            case RESUME -> {
+                var resume = (ResumeMessage) trame.message();
+                epoch = resume.epoch();
+                lastSequence = resume.sequence();
+                sequenced = true;
+            }
+            case REQUEST_PRIVATE -> {
+                handlePrivateRequest(trame.sender());
+            }
+            case OK_PRIVATE -> connectPrivate(trame.sender(), (OKPrivateMessage) trame.message());
+            case KO_PRIVATE -> {
+                System.out.println("Connexion privée refusée par " + trame.sender());
+            }
+            case CONNECTED_USERS_LIST -> {
+                String users = extractMessageText(trame.message());
+                if (!users.trim().isEmpty()) {
+                    System.out.println("Utilisateurs connectés: " + users);
+                }
+            }
+            case USERS_SNAPSHOT -> snapshotPages.addAll(((UsersPageMessage) trame.message()).users());
+            case USERS_DELTA -> applyPresence((UsersDeltaMessage) trame.message());
+            case JOIN_ROOM -> System.out.println("Salon #" + ((JoinRoomMessage) trame.message()).room() + " rejoint");
+            case LEAVE_ROOM -> System.out.println("Salon #" + ((LeaveRoomMessage) trame.message()).room() + " quitté");
+            case ROOM_MESSAGE -> {
+                var roomMsg = (RoomMessage) trame.message();
+                System.out.println("[#" + roomMsg.room() + "] " + trame.sender() + ": " + roomMsg.text());
+            }
+            default -> logger.warning("Message serveur non géré: " + trame.opcode());
+        }
+    }
+
+    /**
+     * La première évolution reçue après l'abonnement termine les pages de l'état initial ;
+     * les suivantes ne sont appliquées que si elles sont plus récentes que l'état.
+     */
+    private void applyPresence(UsersDeltaMessage delta) {
+        if (presenceVersion < 0) {
+            connectedUsers.addAll(snapshotPages);
+            snapshotPages.clear();
+            presenceVersion = delta.version();
+            displayUsers();
+            return;
+        }
+        if (delta.version() <= presenceVersion) {
+            return;
+        }
+        connectedUsers.addAll(delta.joined());
+        delta.left().forEach(connectedUsers::remove);
+        presenceVersion = delta.version();
+        if (!delta.joined().isEmpty()) {
+            System.out.println(String.join(", ", delta.joined())
+                    + (delta.joined().size() == 1 ? " s'est connecté" : " se sont connectés"));
+        }
+        if (!delta.left().isEmpty()) {
+            System.out.println(String.join(", ", delta.left())
+                    + (delta.left().size() == 1 ? " s'est déconnecté" : " se sont déconnectés"));
+        }
+    }
+
+    private void displayUsers() {
+        if (!connectedUsers.isEmpty()) {
+            System.out.println("Utilisateurs connectés: " + String.join(", ", connectedUsers));
+        }
+    }
+
+    private String extractMessageText(Message message) {
+        var buffer = message.serialize();
+        if (buffer.remaining() < 4) return "";
+
+        var length = buffer.getInt();
+        if (length <= 0 || length > buffer.remaining()) return "";
+
+        var textBytes = new byte[length];
+        buffer.get(textBytes);
+        return new String(textBytes, java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    private void handlePrivateRequest(String requester) {
+        System.out.println("Demande de connexion privée de " + requester);
+        System.out.println("Tapez 'accept " + requester + "' ou 'refuse " + requester + "'");
+    }
+
+    /**
+     * Ouvre la connexion privée acceptée par {@code pseudo} ; le jeton est présenté par OPEN une fois connecté.
+     */
+    private void connectPrivate(String pseudo, OKPrivateMessage accepted) {
+        try {
+            var channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            var key = channel.register(selector, SelectionKey.OP_CONNECT);
+            var context = new PrivateContext(key, login, pseudo, bufferPool, fileDirectory, this);
+            context.setOutgoingToken(accepted.token());
+            handlers.put(key, context);
+            privateContexts.put(pseudo, context);
+            System.out.println("Connexion privée acceptée par " + pseudo);
+            if (channel.connect(accepted.address())) {
+                context.handleConnect();
+            }
+        } catch (IOException e) {
+            System.err.println("Erreur connexion privée vers " + pseudo + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Jeton à envoyer par OK_PRIVATE à {@code pseudo}, qui le présentera en se connectant.
+     */
+    public long newPrivateToken(String pseudo) {
+        long token;
+        do {
+            token = random.nextLong();
+        } while (token == -1 || expectedTokens.containsKey(token));
+        expectedTokens.put(token, pseudo);
+        return token;
+    }
+
+    @Override
+    public String claimToken(long token) {
+        return expectedTokens.remove(token);
+    }
+
+    @Override
+    public void privateOpened(PrivateContext context) {
+        var pseudo = context.getRemotePseudo();
+        privateContexts.put(pseudo, context);
+        var interrupted = interruptedSends.remove(pseudo);
+        if (interrupted == null) {
+            return;
+        }
+        for (var path : interrupted) {
+            try {
+                context.sendFile(path);
+            } catch (IOException e) {
+                System.err.println("Reprise de l'envoi de " + path + " impossible: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public PrivateContext openedWith(long token) {
+        for (var context : privateContexts.values()) {
+            if (context.acceptedToken() == token) {
+                return context;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void openStreams(PrivateContext primary) {
+        for (var i = 1; i < PRIVATE_STREAMS; i++) {
+            try {
+                var channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                var key = channel.register(selector, SelectionKey.OP_CONNECT);
+                var stream = new PrivateContext(key, login, primary.getRemotePseudo(), bufferPool, fileDirectory, this);
+                stream.setPrimary(primary);
+                handlers.put(key, stream);
+                if (channel.connect(primary.remoteAddress())) {
+                    stream.handleConnect();
+                }
+            } catch (IOException e) {
+                System.err.println("Erreur connexion de flux vers " + primary.getRemotePseudo() + ": " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void transferInterrupted(String pseudo, Path path) {
+        interruptedSends.computeIfAbsent(pseudo, p -> new ArrayList<>()).add(path);
+    }
+
+    /**
+     * Fichier du répertoire de fichiers du client, tel qu'envoyé par /file.
+     */
+    public Path sharedFile(String name) {
+        return fileDirectory.resolve(name);
+    }
+
+    public void handleUsersCommand() {
+        if (presenceVersion < 0) {
+            serverContext.requestUserList();
+        } else {
+            displayUsers();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4 && args.length != 5) {
+            System.err.println("Usage: java ChatVaBienClient <login> <host> <port> <fileDir> [password]");
+            return;
+        }
+
+        var login = args[0];
+        var host = args[1];
+        var port = Integer.parseInt(args[2]);
+        var fileDir = Path.of(args[3]);
+        var password = args.length == 5 ? args[4] : null;
+
+        var serverAddress = new InetSocketAddress(host, port);
+        var client = new ChatVaBienClient(login, password, serverAddress, fileDir);
+
+        client.launch();
+    }
+}
\ No newline at end of file
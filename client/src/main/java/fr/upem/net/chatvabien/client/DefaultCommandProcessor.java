@@ -3,9 +3,13 @@ package fr.upem.net.chatvabien.client;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
+import fr.upem.net.chatvabien.protocol.JoinRoomMessage;
 import fr.upem.net.chatvabien.protocol.PublicMessage;
+import fr.upem.net.chatvabien.protocol.RoomMessage;
+import fr.upem.net.chatvabien.protocol.StringReader;
 
 /**
  * Implémentation par défaut du processeur de commandes
@@ -33,6 +37,8 @@ public class DefaultCommandProcessor implements CommandProcessor {
                 handleSpecialCommand(command);
             } else if (command.startsWith("@")) {
                 handlePrivateMessage(command);
+            } else if (command.startsWith("#")) {
+                handleRoomMessage(command);
             } else if (command.startsWith("accept ")) {
                 handleAcceptPrivate(command.substring(7));
             } else if (command.startsWith("refuse ")) {
@@ -53,18 +59,53 @@ public class DefaultCommandProcessor implements CommandProcessor {
             }
             case "/quit" -> System.exit(0);
             default -> {
-                if (command.startsWith("/")) {
+                if (command.startsWith("/join ")) {
+                    handleJoinRoom(command.substring(6).trim());
+                } else if (command.startsWith("/leave ")) {
+                    serverContext.queueLeaveRoom(command.substring(7).trim());
+                } else if (command.startsWith("/file ")) {
+                    handleSendFile(command.substring(6).trim());
+                } else if (command.startsWith("/")) {
                     System.out.println("Commande inconnue. Tapez /help");
                 }
             }
         }
     }
 
+    private void handleJoinRoom(String room) {
+        if (!JoinRoomMessage.isValidRoomName(room)) {
+            System.out.println("Nom de salon invalide (non vide, sans espace, au plus "
+                    + JoinRoomMessage.MAX_ROOM_NAME_SIZE + " octets)");
+            return;
+        }
+        serverContext.queueJoinRoom(room);
+    }
+
     private void handlePublicMessage(String message) {
+        var size = message.getBytes(StandardCharsets.UTF_8).length;
+        if (size > serverContext.maxStringSize()) {
+            System.out.println("Message trop long (" + size + " octets, maximum " + serverContext.maxStringSize() + ")");
+            return;
+        }
         var publicMsg = new PublicMessage(message);
         serverContext.queueMessage(publicMsg);
     }
 
+    private void handleRoomMessage(String command) {
+        var parts = command.substring(1).split(" ", 2);
+        if (parts.length < 2 || parts[0].isEmpty()) {
+            System.out.println("Usage: #salon message");
+            return;
+        }
+        var roomMsg = new RoomMessage(parts[0], parts[1]);
+        var size = roomMsg.contentSize();
+        if (size > serverContext.maxStringSize()) {
+            System.out.println("Message trop long (" + size + " octets, maximum " + serverContext.maxStringSize() + ")");
+            return;
+        }
+        serverContext.queueRoomMessage(roomMsg);
+    }
+
     private void handlePrivateMessage(String command) {
         var parts = command.substring(1).split(" ", 2);
         if (parts.length < 1) {
@@ -77,6 +118,11 @@ public class DefaultCommandProcessor implements CommandProcessor {
         var privateContext = privateContexts.get(targetPseudo);
         if (privateContext != null && privateContext.isOpened()) {
             if (parts.length == 2) {
+                var size = parts[1].getBytes(StandardCharsets.UTF_8).length;
+                if (size > StringReader.MAX_STRING_SIZE) {
+                    System.out.println("Message trop long (" + size + " octets, maximum " + StringReader.MAX_STRING_SIZE + ")");
+                    return;
+                }
                 privateContext.sendPrivateMessage(parts[1]);
                 System.out.println("[PRIVÉ] -> " + targetPseudo + ": " + parts[1]);
             } else {
@@ -88,10 +134,28 @@ public class DefaultCommandProcessor implements CommandProcessor {
         }
     }
 
+    private void handleSendFile(String arguments) {
+        var parts = arguments.split(" ", 2);
+        if (parts.length < 2 || parts[1].isBlank()) {
+            System.out.println("Usage: /file pseudo fichier");
+            return;
+        }
+        var privateContext = privateContexts.get(parts[0]);
+        if (privateContext == null || !privateContext.isOpened()) {
+            System.out.println("Pas de connexion privée avec " + parts[0] + " (@" + parts[0] + " pour la demander)");
+            return;
+        }
+        try {
+            privateContext.sendFile(client.sharedFile(parts[1].trim()));
+        } catch (IOException e) {
+            System.out.println("Fichier illisible: " + e.getMessage());
+        }
+    }
+
     private void handleAcceptPrivate(String requester) {
         try {
             var localAddress = (InetSocketAddress) privateServerChannel.getLocalAddress();
-            var token = System.currentTimeMillis();
+            var token = client.newPrivateToken(requester);
 
             serverContext.queueOKPrivate(requester, localAddress, token);
             System.out.println("Connexion privée acceptée avec " + requester);
@@ -114,10 +178,16 @@ public class DefaultCommandProcessor implements CommandProcessor {
             Messages publics:
               <message>           - Envoyer un message public
             
+            Salons:
+              /join <salon>       - Rejoindre un salon
+              /leave <salon>      - Quitter un salon
+              #salon <message>    - Envoyer un message aux membres du salon
+            
             Messages privés:
               @pseudo [message]   - Demande connexion privée (+ message optionnel)
               accept <pseudo>     - Accepter demande de connexion privée
               refuse <pseudo>     - Refuser demande de connexion privée
+              /file <pseudo> <f>  - Envoyer le fichier f du répertoire de fichiers
             
             Commandes:
               /users              - Lister les utilisateurs connectés
@@ -0,0 +1,37 @@
+package fr.upem.net.chatvabien.client;
+
+import java.nio.file.Path;
+
+/**
+ * Interface pour identifier les connexions privées entrantes
+ */
+public interface PrivateConnectionHandler {
+
+    /**
+     * Pseudo auquel ce jeton a été donné par OK_PRIVATE, ou {@code null} s'il est inconnu ;
+     * un jeton n'est accepté qu'une fois.
+     */
+    String claimToken(long token);
+
+    /**
+     * Connexion principale ouverte par ce jeton et toujours ouverte, ou {@code null} : une connexion
+     * présentant le même jeton devient une de ses connexions de flux.
+     */
+    PrivateContext openedWith(long token);
+
+    /**
+     * Appelée au premier transfert d'une connexion principale sortante pour ouvrir ses connexions de flux.
+     */
+    void openStreams(PrivateContext primary);
+
+    /**
+     * Appelée quand une connexion privée est ouverte : entrante, elle a présenté un jeton valide ;
+     * sortante, elle a envoyé le sien.
+     */
+    void privateOpened(PrivateContext context);
+
+    /**
+     * Appelée à la fermeture d'une connexion privée pour chaque fichier dont l'envoi n'était pas terminé.
+     */
+    void transferInterrupted(String pseudo, Path path);
+}
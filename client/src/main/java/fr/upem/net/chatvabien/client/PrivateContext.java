@@ -0,0 +1,541 @@
+package fr.upem.net.chatvabien.client;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import fr.upem.net.chatvabien.protocol.BufferPool;
+import fr.upem.net.chatvabien.protocol.ChunkHeader;
+import fr.upem.net.chatvabien.protocol.FileHeader;
+import fr.upem.net.chatvabien.protocol.FileReceiver;
+import fr.upem.net.chatvabien.protocol.FileResume;
+import fr.upem.net.chatvabien.protocol.FileSender;
+import fr.upem.net.chatvabien.protocol.OPCODE;
+import fr.upem.net.chatvabien.protocol.OutboundQueue;
+import fr.upem.net.chatvabien.protocol.PrivateFrameReader;
+import fr.upem.net.chatvabien.protocol.PrivateMessage;
+import fr.upem.net.chatvabien.protocol.Reader;
+
+/**
+ * Contexte pour une connexion privée P2P
+ * <p>
+ * Après OPEN, toutes les trames reçues sont lues par un {@link PrivateFrameReader} : messages privés
+ * (MESSAGE), propositions de fichiers et morceaux. Un message n'alloue que son texte décodé.
+ * <p>
+ * Les fichiers sont envoyés par {@link FileSender}, sans passer par le tas, et reçus dans le
+ * répertoire de fichiers du client : chaque morceau est lu de la socket dans un buffer direct
+ * emprunté le temps du morceau puis écrit à sa position dans le fichier. Les fichiers d'au moins
+ * {@code chatvabien.receive.mapMinBytes} octets sont reçus par projection : le fichier est
+ * dimensionné dès la proposition et chaque morceau est lu de la socket directement dans une fenêtre
+ * de {@code chatvabien.receive.mapWindowBytes} octets du fichier, forcée sur disque tous les
+ * {@code chatvabien.receive.forceBytes} octets.
+ * <p>
+ * Un fichier est proposé par FILE ; le récepteur répond par FILE_RESUME avec les morceaux déjà reçus
+ * lors d'une connexion précédente, et seuls les autres sont envoyés, chacun vérifié par son CRC32C.
+ * Les trames en attente passent entre deux morceaux. Les envois interrompus par la fermeture de la
+ * connexion sont signalés au {@link PrivateConnectionHandler}, qui les reprend à la prochaine.
+ * <p>
+ * La première connexion ouverte avec un pair est la connexion principale : elle porte les messages,
+ * les propositions de fichiers et l'état des transferts. Au premier transfert, le demandeur peut
+ * ouvrir des connexions de flux supplémentaires, présentant le même jeton OPEN ; chacune, comme la
+ * principale, envoie les morceaux du fichier en cours et reçoit ceux du fichier attendu.
+ */
+public class PrivateContext implements ChannelHandler {
+    private static final Logger logger = Logger.getLogger(PrivateContext.class.getName());
+    private static final int BUFFER_SIZE = 1024;
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+    /**
+     * Nombre maximal de connexions de flux acceptées en plus de la connexion principale.
+     */
+    public static final int MAX_STREAMS = 15;
+    // réception par projection des fichiers d'au moins MAP_MIN_BYTES octets (désactivée si négatif)
+    private static final long MAP_MIN_BYTES = Long.getLong("chatvabien.receive.mapMinBytes", -1);
+    private static final long MAP_WINDOW_BYTES = Long.getLong("chatvabien.receive.mapWindowBytes", 64L << 20);
+    // octets de morceaux terminés forcés sur disque puis libérés à la fois (0 : la fenêtre projetée)
+    private static final long FORCE_BYTES = Long.getLong("chatvabien.receive.forceBytes", 0);
+
+    private final SelectionKey key;
+    private final SocketChannel sc;
+    private final BufferPool bufferPool;
+    private final ByteBuffer bufferIn;
+    private final OutboundQueue outQueue = new OutboundQueue();
+    private final Path fileDirectory;
+    private final PrivateConnectionHandler connectionHandler;
+
+    private final String login;
+    private String remotePseudo;
+    private long expectedToken = -1;
+    private long outgoingToken = -1;
+    private long acceptedToken = -1;
+    private boolean opened = false;
+
+    // connexion principale, this pour elle-même, et ses connexions de flux
+    private PrivateContext primary = this;
+    private final List<PrivateContext> streams = new ArrayList<>();
+    private boolean streamsRequested;
+
+    // morceaux en cours sur cette connexion et buffer de lecture du morceau reçu
+    private FileReceiver.Chunk chunkIn;
+    private FileSender.Chunk chunkOut;
+    private ByteBuffer fileBuffer;
+
+    // réception, sur la connexion principale : trame en cours et fichier reçu
+    private final PrivateFrameReader frameReader = new PrivateFrameReader();
+    private FileReceiver receiver;
+    private long receiveStart;
+
+    // envoi, sur la connexion principale : fichier en cours et fichiers en attente
+    private FileSender sender;
+    private final ArrayDeque<FileSender> pendingFiles = new ArrayDeque<>();
+    private long sendStart;
+
+    /**
+     * @param bufferPool        pool du thread sélecteur, dont sont empruntés les buffers directs de lecture
+     * @param fileDirectory     répertoire recevant les fichiers
+     * @param connectionHandler identifie une connexion entrante par son jeton OPEN
+     */
+    public PrivateContext(SelectionKey key, String login, String remotePseudo, BufferPool bufferPool,
+                          Path fileDirectory, PrivateConnectionHandler connectionHandler) {
+        this.key = key;
+        this.sc = (SocketChannel) key.channel();
+        this.login = login;
+        this.remotePseudo = remotePseudo;
+        this.bufferPool = bufferPool;
+        this.bufferIn = bufferPool.acquire(BUFFER_SIZE);
+        this.fileDirectory = fileDirectory;
+        this.connectionHandler = connectionHandler;
+    }
+
+    public void setRemotePseudo(String remotePseudo) {
+        this.remotePseudo = remotePseudo;
+    }
+
+    public void setOutgoingToken(long token) {
+        this.outgoingToken = token;
+    }
+
+    public void setExpectedToken(long token) {
+        this.expectedToken = token;
+    }
+
+    /**
+     * Fait de cette connexion sortante une connexion de flux de {@code primary}, à laquelle elle se
+     * joint en présentant son jeton.
+     */
+    public void setPrimary(PrivateContext primary) {
+        this.primary = primary;
+        this.outgoingToken = primary.outgoingToken;
+    }
+
+    public boolean isOpened() {
+        return opened;
+    }
+
+    /**
+     * Jeton présenté par le pair pour ouvrir cette connexion entrante principale, -1 sinon.
+     */
+    public long acceptedToken() {
+        return acceptedToken;
+    }
+
+    public boolean isPrimary() {
+        return primary == this;
+    }
+
+    public String getRemotePseudo() {
+        return remotePseudo;
+    }
+
+    public SelectionKey key() {
+        return key;
+    }
+
+    /**
+     * Adresse du pair, à laquelle se connectent les connexions de flux.
+     */
+    public SocketAddress remoteAddress() throws IOException {
+        return sc.getRemoteAddress();
+    }
+
+    /**
+     * Clés des connexions de flux de cette connexion principale, à fermer avec elle.
+     */
+    public List<SelectionKey> streamKeys() {
+        return streams.stream().map(PrivateContext::key).toList();
+    }
+
+    @Override
+    public void handleConnect() throws IOException {
+        if (sc.finishConnect()) {
+            sendOpen();
+            updateInterestOps();
+            logger.info("Connexion privée établie vers " + remotePseudo);
+        }
+    }
+
+    @Override
+    public void handleRead() throws IOException {
+        if (chunkIn != null && bufferIn.position() == 0) {
+            // morceau de fichier : lu directement dans le buffer du morceau, ou dans le fichier projeté
+            if (chunkIn.receive(sc, fileBuffer) == -1) {
+                throw new IOException("Connexion privée fermée pendant la réception d'un morceau");
+            }
+            if (chunkIn.isComplete()) {
+                chunkReceived();
+            }
+            return;
+        }
+
+        var read = sc.read(bufferIn);
+        if (read == -1) {
+            if (isPrimary()) {
+                System.out.println("Connexion privée fermée avec " + remotePseudo);
+            }
+            throw new IOException("Connexion privée fermée");
+        }
+
+        if (read > 0) {
+            processPrivateIn();
+        }
+    }
+
+    @Override
+    public void handleWrite() throws IOException {
+        while (true) {
+            // un morceau ou une proposition commencés sont terminés avant d'écrire quoi que ce soit d'autre
+            if (chunkOut != null) {
+                if (!chunkOut.transfer(sc)) {
+                    break;
+                }
+                chunkOut = null;
+                primary.finishSendIfDone();
+            }
+            if (sender != null && sender.inHeader() && !sender.transferHeader(sc)) {
+                break;
+            }
+            outQueue.flush(sc);
+            if (!outQueue.isEmpty()) {
+                break;
+            }
+            if (isPrimary() && sender == null) {
+                sender = pendingFiles.poll();
+                if (sender == null) {
+                    break;
+                }
+                sendStart = System.nanoTime();
+                // le morceau suivant attend la réponse du récepteur
+                if (!sender.transferHeader(sc)) {
+                    break;
+                }
+                continue;
+            }
+            var current = primary.sender;
+            if (current == null || (chunkOut = current.nextChunk()) == null) {
+                break;
+            }
+        }
+        updateInterestOps();
+    }
+
+    /**
+     * Termine l'envoi en cours si tous ses morceaux ont été envoyés, puis passe au fichier suivant.
+     */
+    private void finishSendIfDone() throws IOException {
+        if (sender == null || !sender.isDone()) {
+            return;
+        }
+        sender.close();
+        var header = sender.header();
+        var sent = sender.sent();
+        sender = null;
+        System.out.println("Fichier " + header.name() + " envoyé à " + remotePseudo + " ("
+                + transferStats(sent, sendStart) + (streams.isEmpty() ? "" : ", " + (streams.size() + 1) + " connexions")
+                + ")");
+        updateInterestOps();
+    }
+
+    @Override
+    public void close() {
+        bufferPool.release(bufferIn);
+        releaseFileBuffer();
+        if (!isPrimary()) {
+            primary.streams.remove(this);
+            // le morceau en cours sera renvoyé sur une autre connexion
+            if (chunkOut != null) {
+                chunkOut.abandon();
+                primary.wakeUpSenders();
+            }
+            return;
+        }
+        try {
+            if (receiver != null) {
+                receiver.close();
+                System.out.println("Réception de " + receiver.header().name() + " interrompue, "
+                        + "les morceaux reçus sont conservés pour la reprendre");
+            }
+            // les envois interrompus sont repris à la prochaine connexion avec ce pair
+            if (sender != null) {
+                sender.close();
+                connectionHandler.transferInterrupted(remotePseudo, sender.path());
+            }
+            for (var pending : pendingFiles) {
+                pending.close();
+                connectionHandler.transferInterrupted(remotePseudo, pending.path());
+            }
+        } catch (IOException e) {
+            logger.warning("Erreur à la fermeture des fichiers: " + e.getMessage());
+        }
+    }
+
+    private void sendOpen() {
+        if (outgoingToken != -1) {
+            var openBuffer = ByteBuffer.allocate(9);
+            openBuffer.put(OPCODE.OPEN.getCode());
+            openBuffer.putLong(outgoingToken);
+            openBuffer.flip();
+            outQueue.offer(openBuffer);
+            // le jeton suffit au pair pour identifier la connexion
+            opened = true;
+            if (isPrimary()) {
+                connectionHandler.privateOpened(this);
+            } else {
+                primary.streams.add(this);
+            }
+            updateInterestOps();
+        }
+    }
+
+    private void processPrivateIn() throws IOException {
+        bufferIn.flip();
+        try {
+            while (bufferIn.hasRemaining()) {
+                if (!opened) {
+                    if (bufferIn.remaining() < 9) break;
+
+                    var opcode = bufferIn.get();
+                    if (opcode != OPCODE.OPEN.getCode()) {
+                        throw new IOException("OPEN attendu, opcode reçu: " + opcode);
+                    }
+                    acceptOpen(bufferIn.getLong());
+                    continue;
+                }
+                if (chunkIn != null) {
+                    chunkIn.write(bufferIn);
+                    if (chunkIn.isComplete()) {
+                        chunkReceived();
+                    }
+                    continue;
+                }
+                var status = frameReader.process(bufferIn);
+                if (status == Reader.ProcessStatus.REFILL) {
+                    break;
+                }
+                if (status == Reader.ProcessStatus.ERROR) {
+                    throw new IOException("Trame invalide reçue de " + remotePseudo);
+                }
+                var frame = frameReader.get();
+                frameReader.reset();
+                switch (frame) {
+                    case PrivateMessage message -> receiveMessage(message);
+                    case FileHeader header -> primary.startReceive(header);
+                    case FileResume resume -> primary.resumeSend(resume);
+                    case ChunkHeader chunk -> startChunk(chunk);
+                }
+            }
+        } finally {
+            bufferIn.compact();
+        }
+    }
+
+    private void acceptOpen(long token) throws IOException {
+        if (expectedToken != -1) {
+            if (token != expectedToken) {
+                throw new IOException("Token invalide reçu: " + token + ", attendu: " + expectedToken);
+            }
+        } else {
+            var owner = connectionHandler.claimToken(token);
+            if (owner == null) {
+                // jeton d'une connexion principale ouverte : connexion de flux
+                var openedBy = connectionHandler.openedWith(token);
+                if (openedBy == null || openedBy.streams.size() >= MAX_STREAMS) {
+                    throw new IOException("Token invalide reçu: " + token);
+                }
+                primary = openedBy;
+                remotePseudo = openedBy.remotePseudo;
+                opened = true;
+                openedBy.streams.add(this);
+                updateInterestOps();
+                logger.info("Connexion de flux ouverte avec " + remotePseudo);
+                return;
+            }
+            remotePseudo = owner;
+            acceptedToken = token;
+        }
+        opened = true;
+        connectionHandler.privateOpened(this);
+        System.out.println("Connexion privée établie avec " + remotePseudo);
+    }
+
+    /**
+     * Demande, au premier transfert de la connexion principale sortante, ses connexions de flux.
+     */
+    private void requestStreams() {
+        if (!streamsRequested && outgoingToken != -1) {
+            streamsRequested = true;
+            connectionHandler.openStreams(this);
+        }
+    }
+
+    /**
+     * Réveille les connexions de cette connexion principale, dont l'une peut envoyer un morceau.
+     */
+    private void wakeUpSenders() {
+        updateInterestOps();
+        for (var stream : streams) {
+            stream.updateInterestOps();
+        }
+    }
+
+    private void receiveMessage(PrivateMessage message) throws IOException {
+        if (!message.sender().equals(remotePseudo)) {
+            throw new IOException("Message privé de " + message.sender() + " reçu sur la connexion avec " + remotePseudo);
+        }
+        System.out.println("[PRIVÉ] <- " + remotePseudo + ": " + message.text());
+    }
+
+    /**
+     * Ouvre le fichier proposé et répond par les morceaux déjà reçus.
+     */
+    private void startReceive(FileHeader header) throws IOException {
+        if (receiver != null) {
+            throw new IOException("Fichier " + header.name() + " proposé par " + remotePseudo
+                    + " pendant la réception de " + receiver.header().name());
+        }
+        receiver = MAP_MIN_BYTES >= 0 && header.size() >= MAP_MIN_BYTES
+                ? new FileReceiver(fileDirectory, header, MAP_WINDOW_BYTES, FORCE_BYTES)
+                : new FileReceiver(fileDirectory, header);
+        receiveStart = System.nanoTime();
+        outQueue.offer(receiver.resume().encode());
+        updateInterestOps();
+        var resumed = receiver.resumed();
+        System.out.println("Réception de " + header.name() + " (" + header.size() + " octets) de " + remotePseudo
+                + (resumed > 0 ? ", reprise après " + resumed + " octets déjà reçus" : ""));
+        if (receiver.isComplete()) {
+            finishReceive();
+        } else {
+            requestStreams();
+        }
+    }
+
+    private void startChunk(ChunkHeader chunk) throws IOException {
+        var fileReceiver = primary.receiver;
+        if (fileReceiver == null) {
+            throw new IOException("Morceau reçu de " + remotePseudo + " sans fichier proposé");
+        }
+        chunkIn = fileReceiver.startChunk(chunk);
+        if (!fileReceiver.isMapped() && fileBuffer == null) {
+            fileBuffer = bufferPool.acquire(FILE_BUFFER_SIZE);
+        }
+    }
+
+    private void chunkReceived() throws IOException {
+        chunkIn = null;
+        releaseFileBuffer();
+        if (primary.receiver.isComplete()) {
+            primary.finishReceive();
+        }
+    }
+
+    private void finishReceive() throws IOException {
+        var received = receiver.received();
+        var path = receiver.complete();
+        receiver = null;
+        System.out.println("Fichier " + path + " reçu de " + remotePseudo + " ("
+                + transferStats(received, receiveStart) + ")");
+    }
+
+    private void resumeSend(FileResume resume) throws IOException {
+        if (sender == null) {
+            throw new IOException("FILE_RESUME reçu de " + remotePseudo + " sans fichier proposé");
+        }
+        sender.resume(resume);
+        var skipped = resume.completedBytes();
+        if (skipped > 0) {
+            System.out.println("Reprise de l'envoi de " + sender.header().name() + " à " + remotePseudo + " : "
+                    + skipped + " octets déjà reçus");
+        }
+        finishSendIfDone();
+        if (sender != null) {
+            requestStreams();
+        }
+        wakeUpSenders();
+    }
+
+    private void releaseFileBuffer() {
+        if (fileBuffer != null) {
+            bufferPool.release(fileBuffer);
+            fileBuffer = null;
+        }
+    }
+
+    private static String transferStats(long size, long start) {
+        var nanos = Math.max(1, System.nanoTime() - start);
+        return String.format(Locale.ROOT, "%d octets en %d ms, %.1f Mio/s", size,
+                TimeUnit.NANOSECONDS.toMillis(nanos), size / (1024.0 * 1024.0) / (nanos / 1e9));
+    }
+
+    /**
+     * Envoie le fichier après les trames et fichiers déjà en attente.
+     */
+    public void sendFile(Path path) throws IOException {
+        if (!opened) {
+            System.out.println("Connexion privée pas encore établie avec " + remotePseudo);
+            return;
+        }
+        var file = new FileSender(path);
+        pendingFiles.offer(file);
+        System.out.println("Envoi de " + file.header().name() + " (" + file.header().size() + " octets) à " + remotePseudo);
+        updateInterestOps();
+    }
+
+    public void sendPrivateMessage(String message) {
+        if (!opened) {
+            System.out.println("Connexion privée pas encore établie avec " + remotePseudo);
+            return;
+        }
+
+        outQueue.offer(new PrivateMessage(login, message).encode());
+        updateInterestOps();
+    }
+
+    private void updateInterestOps() {
+        if (!sc.isConnected() || !key.isValid()) {
+            return;
+        }
+        var ops = SelectionKey.OP_READ;
+        if (!outQueue.isEmpty() || chunkOut != null || canSend()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        key.interestOps(ops);
+    }
+
+    /**
+     * @return {@code true} si cette connexion a une proposition ou un morceau de fichier à envoyer
+     */
+    private boolean canSend() {
+        if (isPrimary() && sender == null) {
+            return !pendingFiles.isEmpty();
+        }
+        var current = primary.sender;
+        return current != null && (isPrimary() && current.inHeader() || current.hasNextChunk());
+    }
+}
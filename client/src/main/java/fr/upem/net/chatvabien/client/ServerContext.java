@@ -0,0 +1,237 @@
+package fr.upem.net.chatvabien.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.logging.Logger;
+
+import fr.upem.net.chatvabien.protocol.*;
+
+/**
+ * Contexte de communication avec le serveur principal
+ */
+public class ServerContext implements ChannelHandler {
+    private static final Logger logger = Logger.getLogger(ServerContext.class.getName());
+    private static final int BUFFER_SIZE = 1024;
+
+    private final SelectionKey key;
+    private final SocketChannel sc;
+    private final BufferPool bufferPool;
+    private final ByteBuffer bufferIn;
+    private final OutboundQueue outQueue = new OutboundQueue();
+
+    private TrameReader trameReader = new TrameReader();
+    private int maxStringSize = StringReader.MAX_STRING_SIZE;
+    private final String login;
+    private final String password;
+    private final ServerMessageHandler messageHandler;
+
+    private boolean loginSent = false;
+    private boolean connected = false;
+    private long resumeEpoch = ResumeMessage.NO_EPOCH;
+    private long resumeSequence = -1;
+
+    public ServerContext(SelectionKey key, String login, ServerMessageHandler messageHandler) {
+        this(key, login, null, new BufferPool(BUFFER_SIZE, BUFFER_SIZE, BUFFER_SIZE, 0), messageHandler);
+    }
+
+    /**
+     * @param password   mot de passe vérifié par le serveur MDP, ou {@code null} pour une connexion sans mot de passe
+     * @param bufferPool pool du thread sélecteur, dont est emprunté le buffer direct de lecture
+     */
+    public ServerContext(SelectionKey key, String login, String password, BufferPool bufferPool,
+                         ServerMessageHandler messageHandler) {
+        this.key = key;
+        this.sc = (SocketChannel) key.channel();
+        this.login = login;
+        this.password = password;
+        this.bufferPool = bufferPool;
+        this.bufferIn = bufferPool.acquire(BUFFER_SIZE);
+        this.messageHandler = messageHandler;
+    }
+
+    @Override
+    public void handleConnect() throws IOException {
+        if (sc.finishConnect()) {
+            connected = true;
+            updateInterestOps();
+            logger.info("Connecté au serveur");
+        }
+    }
+
+    @Override
+    public void handleRead() throws IOException {
+        var read = sc.read(bufferIn);
+        if (read == -1) {
+            throw new IOException("Serveur fermé");
+        }
+
+        if (read > 0) {
+            processIn();
+        }
+    }
+
+    @Override
+    public void handleWrite() throws IOException {
+        if (!loginSent && connected) {
+            sendLogin();
+        }
+
+        outQueue.flush(sc);
+        updateInterestOps();
+    }
+
+    SelectionKey key() {
+        return key;
+    }
+
+    @Override
+    public void close() {
+        bufferPool.release(bufferIn);
+    }
+
+    private void processIn() {
+        bufferIn.flip();
+
+        while (true) {
+            var status = trameReader.process(bufferIn);
+            if (status == Reader.ProcessStatus.DONE) {
+                var trame = trameReader.get();
+                trameReader.reset();
+                if (trame.message() instanceof LimitsMessage limits) {
+                    applyLimits(limits.maxStringSize());
+                } else {
+                    messageHandler.handleServerMessage(trame);
+                }
+            } else if (status == Reader.ProcessStatus.REFILL) {
+                break;
+            } else {
+                logger.severe("Erreur lecture serveur");
+                break;
+            }
+        }
+
+        bufferIn.compact();
+    }
+
+    /**
+     * Adopte la taille maximale des chaînes annoncée par le serveur, pour la lecture comme pour l'envoi.
+     */
+    private void applyLimits(int limit) {
+        maxStringSize = limit;
+        trameReader = new TrameReader(limit);
+        logger.info("Taille maximale des messages annoncée par le serveur: " + limit + " octets");
+    }
+
+    /**
+     * Taille maximale en octets d'un message envoyé au serveur, {@link StringReader#MAX_STRING_SIZE}
+     * tant que le serveur n'en a pas annoncé d'autre.
+     */
+    public int maxStringSize() {
+        return maxStringSize;
+    }
+
+    private void sendLogin() {
+        if (loginSent) return;
+
+        var loginTrame = password == null
+                ? Trame.clientMessage(OPCODE.LOGIN, login, new LoginMessage())
+                : Trame.clientMessage(OPCODE.LOGINAUTH, login, new LoginAuthMessage(password));
+        outQueue.offer(loginTrame.toByteBuffer());
+        // envoyée avec l'identification, la reprise précède tout nouveau message public
+        outQueue.offer(Trame.clientMessage(OPCODE.RESUME, login, new ResumeMessage(resumeEpoch, resumeSequence)).toByteBuffer());
+
+        loginSent = true;
+        updateInterestOps();
+    }
+
+    /**
+     * Demande, avec l'identification, les messages publics suivant le numéro {@code sequence} de
+     * l'époque {@code epoch} encore dans l'historique du serveur, aucun s'il est négatif ; le serveur
+     * répond par son époque et sa position.
+     */
+    public void resumeAfter(long epoch, long sequence) {
+        resumeEpoch = epoch;
+        resumeSequence = sequence;
+    }
+
+    public void queueMessage(Message message) {
+        var trame = Trame.clientMessage(OPCODE.MESSAGE, login, message);
+        var buffer = trame.toByteBuffer();
+        outQueue.offer(buffer);
+        updateInterestOps();
+    }
+
+    public void queuePrivateRequest(String target) {
+        var request = new PrivateRequestMessage(target);
+        var trame = Trame.clientMessage(OPCODE.REQUEST_PRIVATE, login, request);
+        var buffer = trame.toByteBuffer();
+        outQueue.offer(buffer);
+        updateInterestOps();
+    }
+
+    public void queueOKPrivate(String target, InetSocketAddress address, long token) {
+        var response = new OKPrivateMessage(target, address, token);
+        var trame = Trame.clientMessage(OPCODE.OK_PRIVATE, login, response);
+        var buffer = trame.toByteBuffer();
+        outQueue.offer(buffer);
+        updateInterestOps();
+    }
+
+    public void queueKOPrivate(String target) {
+        var response = new KOPrivateMessage(target);
+        var trame = Trame.clientMessage(OPCODE.KO_PRIVATE, login, response);
+        var buffer = trame.toByteBuffer();
+        outQueue.offer(buffer);
+        updateInterestOps();
+    }
+
+    public void requestUserList() {
+        var request = new GetUsersMessage();
+        var trame = Trame.clientMessage(OPCODE.GET_CONNECTED_USERS, login, request);
+        var buffer = trame.toByteBuffer();
+        outQueue.offer(buffer);
+        updateInterestOps();
+    }
+
+    /**
+     * Demande l'état de présence puis ses évolutions, qui remplacent les demandes de liste.
+     */
+    public void subscribeUsers() {
+        var trame = Trame.clientMessage(OPCODE.SUBSCRIBE_USERS, login, new SubscribeUsersMessage());
+        outQueue.offer(trame.toByteBuffer());
+        updateInterestOps();
+    }
+
+    public void queueJoinRoom(String room) {
+        var trame = Trame.clientMessage(OPCODE.JOIN_ROOM, login, new JoinRoomMessage(room));
+        outQueue.offer(trame.toByteBuffer());
+        updateInterestOps();
+    }
+
+    public void queueLeaveRoom(String room) {
+        var trame = Trame.clientMessage(OPCODE.LEAVE_ROOM, login, new LeaveRoomMessage(room));
+        outQueue.offer(trame.toByteBuffer());
+        updateInterestOps();
+    }
+
+    public void queueRoomMessage(RoomMessage message) {
+        var trame = Trame.clientMessage(OPCODE.ROOM_MESSAGE, login, message);
+        outQueue.offer(trame.toByteBuffer());
+        updateInterestOps();
+    }
+
+    private void updateInterestOps() {
+        if (!connected) {
+            // OP_CONNECT reste seul demandé, la file sera écrite une fois connecté
+            return;
+        }
+        var ops = SelectionKey.OP_READ;
+        if ((!loginSent && connected) || !outQueue.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        key.interestOps(ops);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,26 @@
+#!/bin/sh
+# Mesure le débit de livraison du serveur pour 1, 2, 4 et 8 réacteurs.
+# Les propriétés loadgen.* sont transmises au générateur, par exemple :
+#   LOADGEN_OPTS="-Dloadgen.users=2000 -Dloadgen.rate=500" ./loadgen/scaling.sh
+# Prévoir une limite de descripteurs suffisante (ulimit -n) pour 2 x loadgen.users connexions.
+set -e
+cd "$(dirname "$0")/.."
+
+mvn -B -q -pl server,loadgen -am package -DskipTests
+port=${PORT:-7777}
+logging=$(mktemp)
+trap 'rm -f "$logging"' EXIT
+printf 'handlers=java.util.logging.ConsoleHandler\n.level=WARNING\n' > "$logging"
+
+for reactors in ${REACTORS:-1 2 4 8}; do
+    java -Djava.util.logging.config.file="$logging" -Dchatvabien.reactors="$reactors" \
+         -jar server/target/chatvabien-server.jar "$port" > /dev/null 2>&1 &
+    server=$!
+    sleep 1
+    echo "=== $reactors réacteur(s) ==="
+    java $LOADGEN_OPTS -jar loadgen/target/chatvabien-loadgen.jar localhost "$port" \
+        | grep -E '^(Utilisateurs|Requêtes|Livraisons|Latence)'
+    kill "$server"
+    wait "$server" 2>/dev/null || true
+    port=$((port + 1))
+done
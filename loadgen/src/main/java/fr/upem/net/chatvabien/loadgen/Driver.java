@@ -0,0 +1,381 @@
+package fr.upem.net.chatvabien.loadgen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+
+import fr.upem.net.chatvabien.protocol.*;
+
+/**
+ * Boucle de sélection pilotant un sous-ensemble des utilisateurs simulés.
+ * <p>
+ * Les requêtes sont émises selon un calendrier fixe (boucle ouverte) : chaque message public
+ * porte l'instant auquel il devait partir, si bien qu'un retard d'émission du générateur
+ * compte dans la latence mesurée au lieu de la masquer.
+ */
+final class Driver implements Runnable {
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int POOL_SLAB_SIZE = 64 * 1024;
+    private static final int POOL_MAX_IDLE = 64;
+    private static final int MAX_PENDING_CONNECTS = 64;
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    private final InetSocketAddress server;
+    private final LoadGeneratorConfig config;
+    private final LoadStats stats;
+    private final CountDownLatch logins;
+    private final Selector selector;
+    // buffers directs de lecture, empruntés pour la durée de la connexion de chaque utilisateur
+    private final BufferPool bufferPool = new BufferPool(BUFFER_SIZE, BUFFER_SIZE, POOL_SLAB_SIZE, POOL_MAX_IDLE);
+    private final List<VirtualUser> users = new ArrayList<>();
+    private final List<VirtualUser> active = new ArrayList<>();
+    private final SplittableRandom random;
+    private final long interval;
+    private final String padding;
+
+    final LatencyHistogram broadcastLatency = new LatencyHistogram();
+    final LatencyHistogram privateLatency = new LatencyHistogram();
+    final LatencyHistogram userListLatency = new LatencyHistogram();
+
+    private int nextToConnect;
+    private int pendingConnects;
+    private int nextSender;
+
+    private long nextSend;
+    private long measureStart;
+    private long measureEnd;
+    private long stopAt;
+    private volatile boolean started;
+
+    Driver(int index, int firstUser, int userCount, InetSocketAddress server, LoadGeneratorConfig config,
+           LoadStats stats, CountDownLatch logins) throws IOException {
+        this.server = server;
+        this.config = config;
+        this.stats = stats;
+        this.logins = logins;
+        this.selector = Selector.open();
+        this.random = new SplittableRandom(index);
+        this.interval = (long) (config.threads() * 1e9 / config.rate());
+        this.padding = "x".repeat(config.messageSize());
+        for (var i = 0; i < userCount; i++) {
+            users.add(new VirtualUser(config.prefix() + (firstUser + i)));
+        }
+    }
+
+    /**
+     * Démarre l'émission des requêtes ; appelé par le thread principal une fois les connexions établies.
+     * Les mesures ne portent que sur les requêtes prévues dans {@code [measureStart, measureEnd)}.
+     */
+    void startSending(long sendStart, long measureStart, long measureEnd, long stopAt) {
+        this.nextSend = sendStart;
+        this.measureStart = measureStart;
+        this.measureEnd = measureEnd;
+        this.stopAt = stopAt;
+        started = true;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            connectMore();
+            while (!Thread.interrupted()) {
+                var timeout = 100L;
+                if (started) {
+                    var now = System.nanoTime();
+                    if (now >= stopAt) {
+                        break;
+                    }
+                    if (nextSend < measureEnd) {
+                        sendDue(now);
+                        timeout = Math.max(1, (nextSend - now) / NANOS_PER_MILLI);
+                    }
+                }
+                selector.select(this::treatKey, timeout);
+            }
+        } catch (IOException e) {
+            System.err.println("Générateur arrêté: " + e.getMessage());
+        } finally {
+            active.clear();
+            users.forEach(VirtualUser::close);
+        }
+    }
+
+    private void connectMore() {
+        while (pendingConnects < MAX_PENDING_CONNECTS && nextToConnect < users.size()) {
+            var user = users.get(nextToConnect++);
+            try {
+                user.connect();
+            } catch (IOException e) {
+                user.fail();
+            }
+        }
+    }
+
+    private void treatKey(SelectionKey key) {
+        var user = (VirtualUser) key.attachment();
+        try {
+            if (key.isValid() && key.isConnectable()) {
+                user.finishConnect();
+            }
+            if (key.isValid() && key.isWritable()) {
+                user.flush();
+            }
+            if (key.isValid() && key.isReadable()) {
+                user.read();
+            }
+        } catch (IOException e) {
+            user.fail();
+        }
+    }
+
+    private void sendDue(long now) {
+        while (nextSend <= now && nextSend < measureEnd && !active.isEmpty()) {
+            nextSender = (nextSender + 1) % active.size();
+            var user = active.get(nextSender);
+            var measured = nextSend >= measureStart;
+            var draw = random.nextDouble();
+            if (draw < config.privateRatio()) {
+                user.requestPrivate(nextSend);
+                if (measured) {
+                    stats.sentPrivateRequests.increment();
+                }
+            } else if (draw < config.privateRatio() + config.usersRatio()) {
+                user.requestUsers(nextSend);
+                if (measured) {
+                    stats.sentUserRequests.increment();
+                }
+            } else {
+                user.sendMessage(nextSend);
+                if (measured) {
+                    stats.sentMessages.increment();
+                }
+            }
+            nextSend += interval;
+        }
+        if (active.isEmpty()) {
+            nextSend = Math.max(nextSend, now + interval);
+        }
+    }
+
+    private boolean isMeasured(long scheduled) {
+        return started && scheduled >= measureStart && scheduled < measureEnd;
+    }
+
+    /**
+     * Utilisateur simulé : une connexion au serveur, sans console ni connexion privée.
+     * Les demandes de connexion privée reçues sont refusées, ce qui fournit la réponse
+     * dont l'aller-retour est mesuré côté demandeur.
+     */
+    private final class VirtualUser {
+        private final String login;
+        private ByteBuffer bufferIn;
+        private final OutboundQueue outQueue = new OutboundQueue();
+        private TrameReader trameReader = new TrameReader();
+        private final Map<String, Long> pendingPrivate = new HashMap<>();
+        private final Queue<Long> pendingUserLists = new ArrayDeque<>();
+
+        private SocketChannel sc;
+        private SelectionKey key;
+        private boolean connecting;
+        private boolean loginAnswered;
+        private boolean closed;
+
+        VirtualUser(String login) {
+            this.login = login;
+        }
+
+        void connect() throws IOException {
+            sc = SocketChannel.open();
+            bufferIn = bufferPool.acquire(BUFFER_SIZE);
+            sc.configureBlocking(false);
+            key = sc.register(selector, SelectionKey.OP_CONNECT, this);
+            connecting = true;
+            pendingConnects++;
+            if (sc.connect(server)) {
+                finishConnect();
+            }
+        }
+
+        void finishConnect() throws IOException {
+            if (!sc.finishConnect()) {
+                return;
+            }
+            connecting = false;
+            pendingConnects--;
+            queue(config.auth()
+                    ? Trame.clientMessage(OPCODE.LOGINAUTH, login, new LoginAuthMessage(login))
+                    : Trame.clientMessage(OPCODE.LOGIN, login, new LoginMessage()));
+            connectMore();
+        }
+
+        void sendMessage(long scheduled) {
+            var text = new StringBuilder(config.messageSize()).append(scheduled).append(' ');
+            text.append(padding, 0, config.messageSize() - text.length());
+            queue(Trame.clientMessage(OPCODE.MESSAGE, login, new PublicMessage(text.toString())));
+        }
+
+        void requestPrivate(long scheduled) {
+            String target;
+            do {
+                target = config.prefix() + random.nextInt(config.users());
+            } while (target.equals(login) && config.users() > 1);
+            pendingPrivate.putIfAbsent(target, scheduled);
+            queue(Trame.clientMessage(OPCODE.REQUEST_PRIVATE, login, new PrivateRequestMessage(target)));
+        }
+
+        void requestUsers(long scheduled) {
+            pendingUserLists.offer(scheduled);
+            queue(Trame.clientMessage(OPCODE.GET_CONNECTED_USERS, login, new GetUsersMessage()));
+        }
+
+        private void queue(Trame trame) {
+            if (closed) {
+                return;
+            }
+            outQueue.offer(trame.toByteBuffer());
+            try {
+                flush();
+            } catch (IOException e) {
+                fail();
+            }
+        }
+
+        void flush() throws IOException {
+            outQueue.flush(sc);
+            key.interestOps(outQueue.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+        void read() throws IOException {
+            if (sc.read(bufferIn) == -1) {
+                throw new IOException("connexion fermée par le serveur");
+            }
+            bufferIn.flip();
+            try {
+                while (true) {
+                    var status = trameReader.process(bufferIn);
+                    if (status == Reader.ProcessStatus.DONE) {
+                        var trame = trameReader.get();
+                        trameReader.reset();
+                        handleTrame(trame);
+                    } else if (status == Reader.ProcessStatus.REFILL) {
+                        break;
+                    } else {
+                        stats.protocolErrors.increment();
+                        throw new IOException("trame invalide");
+                    }
+                }
+            } finally {
+                bufferIn.compact();
+            }
+        }
+
+        private void handleTrame(Trame trame) {
+            var now = System.nanoTime();
+            switch (trame.opcode()) {
+                case LOGIN_ACCEPTED -> onLogin(true);
+                case LOGIN_REFUSED -> onLogin(false);
+                case LIMITS -> trameReader = new TrameReader(((LimitsMessage) trame.message()).maxStringSize());
+                case MESSAGE -> onMessage(trame, now);
+                case REQUEST_PRIVATE ->
+                        queue(Trame.clientMessage(OPCODE.KO_PRIVATE, login, new KOPrivateMessage(trame.sender())));
+                case KO_PRIVATE, OK_PRIVATE -> {
+                    var scheduled = pendingPrivate.remove(trame.sender());
+                    if (scheduled != null && isMeasured(scheduled)) {
+                        privateLatency.record(now - scheduled);
+                        stats.privateAnswers.increment();
+                    }
+                }
+                case CONNECTED_USERS_LIST -> {
+                    var scheduled = pendingUserLists.poll();
+                    if (scheduled != null && isMeasured(scheduled)) {
+                        userListLatency.record(now - scheduled);
+                        stats.userListAnswers.increment();
+                    }
+                }
+                default -> {
+                    // trames sans intérêt pour la mesure
+                }
+            }
+        }
+
+        private void onLogin(boolean accepted) {
+            if (loginAnswered) {
+                return;
+            }
+            loginAnswered = true;
+            if (accepted) {
+                active.add(this);
+                stats.loggedIn.increment();
+            } else {
+                stats.refused.increment();
+                close();
+            }
+            logins.countDown();
+        }
+
+        private void onMessage(Trame trame, long now) {
+            if (!trame.sender().startsWith(config.prefix())) {
+                return; // avis du serveur
+            }
+            var text = ((PublicMessage) trame.message()).text();
+            var separator = text.indexOf(' ');
+            if (separator < 0) {
+                return;
+            }
+            var scheduled = Long.parseLong(text, 0, separator, 10);
+            stats.deliveredTotal.increment();
+            if (isMeasured(scheduled)) {
+                broadcastLatency.record(now - scheduled);
+                stats.delivered.increment();
+            }
+        }
+
+        void fail() {
+            if (closed) {
+                return;
+            }
+            if (!loginAnswered) {
+                loginAnswered = true;
+                stats.connectFailures.increment();
+                logins.countDown();
+            } else {
+                stats.disconnected.increment();
+            }
+            close();
+            if (connecting) {
+                connecting = false;
+                pendingConnects--;
+                connectMore();
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            active.remove(this);
+            if (sc == null) {
+                return;
+            }
+            bufferPool.release(bufferIn);
+            try {
+                sc.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package fr.upem.net.chatvabien.loadgen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import fr.upem.net.chatvabien.server.ChatVaBienServer;
+import fr.upem.net.chatvabien.server.ServerConfig;
+
+/**
+ * Serveur ChatVaBien lancé dans ce processus pour une sonde.
+ * <p>
+ * Le serveur écoute sur un port choisi par le système, sans course avec un autre processus pour un
+ * port libre, et reçoit sa configuration explicitement plutôt que par les propriétés système.
+ * {@link #start(ServerConfig)} ne rend la main qu'une fois qu'une connexion a été acceptée et
+ * refermée par le serveur.
+ */
+final class EmbeddedServer implements AutoCloseable {
+    private static final long READY_TIMEOUT_MILLIS = 5000;
+
+    private final ChatVaBienServer server;
+    private final Thread thread;
+    private final InetSocketAddress address;
+
+    private EmbeddedServer(ChatVaBienServer server, Thread thread) {
+        this.server = server;
+        this.thread = thread;
+        this.address = new InetSocketAddress("localhost", server.port());
+    }
+
+    /**
+     * Lance un serveur de configuration {@code config} et attend qu'il accepte les connexions.
+     *
+     * @throws IOException si le serveur ne peut être créé ou n'accepte aucune connexion à temps
+     */
+    static EmbeddedServer start(ServerConfig config) throws IOException, InterruptedException {
+        var server = new ChatVaBienServer(0, null, config);
+        var thread = Thread.ofPlatform().name("chatvabien").daemon().start(() -> {
+            try {
+                server.launch();
+            } catch (IOException e) {
+                System.err.println("Serveur arrêté: " + e.getMessage());
+            }
+        });
+        var embedded = new EmbeddedServer(server, thread);
+        try {
+            embedded.awaitReady();
+        } catch (IOException | InterruptedException e) {
+            embedded.close();
+            throw e;
+        }
+        return embedded;
+    }
+
+    /**
+     * Ouvre une connexion d'essai, attend que le serveur l'ait acceptée puis qu'il l'ait fermée, pour
+     * que la sonde commence sur un serveur sans connexion.
+     */
+    private void awaitReady() throws IOException, InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(READY_TIMEOUT_MILLIS);
+        var sc = SocketChannel.open(address);
+        try {
+            await(() -> server.connectionCount() > 0, deadline);
+        } finally {
+            sc.close();
+        }
+        await(() -> server.connectionCount() == 0, deadline);
+    }
+
+    private interface Condition {
+        boolean holds();
+    }
+
+    private static void await(Condition condition, long deadline) throws IOException, InterruptedException {
+        while (!condition.holds()) {
+            if (System.nanoTime() > deadline) {
+                throw new IOException("serveur non prêt après " + READY_TIMEOUT_MILLIS + " ms");
+            }
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+    }
+
+    ChatVaBienServer server() {
+        return server;
+    }
+
+    InetSocketAddress address() {
+        return address;
+    }
+
+    /**
+     * Arrête le serveur et attend la fin de son thread ; une interruption de cette attente l'abrège et
+     * reste signalée au thread appelant.
+     */
+    @Override
+    public void close() {
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
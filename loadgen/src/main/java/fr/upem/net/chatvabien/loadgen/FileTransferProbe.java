@@ -0,0 +1,380 @@
+package fr.upem.net.chatvabien.loadgen;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32C;
+
+import fr.upem.net.chatvabien.protocol.*;
+
+/**
+ * Mesure le transfert d'un fichier de {@code transfer.bytes} octets sur une connexion locale, tel que
+ * fait par les connexions privées du client ChatVaBien, et le compare à deux lignes de base.
+ * <p>
+ * La première écrit en boucle un buffer direct dans la socket et le lecteur jette ce qu'il reçoit ; la
+ * seconde écrit le fichier depuis un buffer direct, sans réseau. Le récepteur faisant les deux, un
+ * transfert ne peut dépasser le débit de la socket suivie du fichier. Le transfert propose le fichier
+ * par {@link FileSender}, dont les morceaux sont reçus par {@link FileReceiver} dans un buffer direct de
+ * 64 Kio, comme le client, puis une seconde fois par projection du fichier, sans buffer. L'émetteur a
+ * son propre thread, comme le ferait le pair. Le débit, le temps CPU du récepteur par Mio,
+ * l'occupation maximale du tas du récepteur et le nombre de collections sont rapportés, puis les
+ * CRC32C des deux fichiers sont comparés.
+ * <p>
+ * Un second transfert est interrompu par le récepteur à la moitié du fichier puis repris sur une
+ * nouvelle connexion : seuls les morceaux manquants doivent être renvoyés.
+ */
+public class FileTransferProbe {
+    private static final int BLOCK_SIZE = 1 << 20;
+    private static final int RECEIVE_BUFFER_SIZE = 64 * 1024;
+    // itérations de la boucle de sélection entre deux relevés du tas
+    private static final int HEAP_SAMPLE_PERIOD = 64;
+    // fenêtre projetée par le récepteur en mode projection
+    private static final long MAP_WINDOW = 64L << 20;
+
+    private final long size;
+    private final Path directory;
+    private long maxHeapUsed;
+    private int iterations;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    // octets envoyés par le dernier transfert et repris par le dernier récepteur
+    private long lastSent;
+    private long lastResumed;
+
+    public FileTransferProbe(long size, Path directory) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size doit être >= 0: " + size);
+        }
+        this.size = size;
+        this.directory = directory;
+    }
+
+    public void run() throws IOException {
+        var workDir = Files.createTempDirectory(directory, "chatvabien-transfer");
+        try {
+            var source = workDir.resolve("source.bin");
+            var received = Files.createDirectory(workDir.resolve("recu"));
+            createSource(source);
+
+            var socket = measure("socket seule", () -> size, this::sendBlocks, this::discard);
+            var file = measure("fichier seul", () -> size, null, receiver -> writeFile(workDir.resolve("ecriture.bin")));
+            Files.delete(workDir.resolve("ecriture.bin"));
+            var transfer = measure("transfert FILE", () -> lastSent, sender -> sendFile(source, sender),
+                    receiver -> receiveFile(received, receiver, Long.MAX_VALUE, 0));
+            // le récepteur copie chaque octet de la socket puis vers le fichier : ses deux lignes de base s'ajoutent
+            System.out.printf(Locale.ROOT, "Transfert : %.0f %% du débit de la socket suivie du fichier%n",
+                    100.0 * (socket + file) / transfer);
+            checkCopy(source, received);
+            var mapped = Files.createDirectory(workDir.resolve("projete"));
+            measure("transfert mmap", () -> lastSent, sender -> sendFile(source, sender),
+                    receiver -> receiveFile(mapped, receiver, Long.MAX_VALUE, MAP_WINDOW));
+            checkCopy(source, mapped);
+            Files.delete(mapped.resolve(source.getFileName()));
+
+            var resumed = Files.createDirectory(workDir.resolve("reprise"));
+            measure("interrompu", () -> lastSent, sender -> {
+                try {
+                    sendFile(source, sender);
+                } catch (IOException e) {
+                    // fermeture attendue de la connexion par le récepteur
+                }
+            }, receiver -> receiveFile(resumed, receiver, size / 2, 0));
+            measure("reprise", () -> lastSent, sender -> sendFile(source, sender),
+                    receiver -> receiveFile(resumed, receiver, Long.MAX_VALUE, 0));
+            System.out.printf(Locale.ROOT, "Reprise : %,d octets gardés de la connexion interrompue, %,d renvoyés%n",
+                    lastResumed, lastSent);
+            checkCopy(source, resumed);
+        } finally {
+            try (var paths = Files.walk(workDir)) {
+                for (var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private interface Side {
+        void run(SocketChannel channel) throws IOException;
+    }
+
+    private void checkCopy(Path source, Path directory) throws IOException {
+        var copy = directory.resolve(source.getFileName());
+        var identical = Files.size(copy) == size && crc(source) == crc(copy);
+        System.out.println("Fichier reçu " + (identical ? "identique" : "DIFFÉRENT") + " (CRC32C)");
+    }
+
+    /**
+     * Exécute l'émetteur, s'il y en a un, sur son propre thread et le récepteur sur le thread courant.
+     *
+     * @param bytes nombre d'octets transférés, lu une fois les deux côtés terminés
+     * @return la durée de la réception en nanosecondes
+     */
+    private long measure(String label, LongSupplier bytes, Side senderSide, Side receiverSide) throws IOException {
+        try (var server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+             var sender = SocketChannel.open(server.getLocalAddress());
+             var receiver = server.accept()) {
+            sender.configureBlocking(false);
+            receiver.configureBlocking(false);
+            System.gc();
+            var heapBefore = heapUsed();
+            var gcBefore = gcCount();
+            maxHeapUsed = heapBefore;
+            iterations = 0;
+            var start = System.nanoTime();
+            var cpuStart = threads.getCurrentThreadCpuTime();
+            var senderThread = senderSide == null ? null : Thread.ofPlatform().name("emetteur").start(() -> {
+                try {
+                    senderSide.run(sender);
+                } catch (IOException e) {
+                    System.err.println("Émetteur arrêté: " + e.getMessage());
+                }
+            });
+            receiverSide.run(receiver);
+            var elapsed = System.nanoTime() - start;
+            var cpu = threads.getCurrentThreadCpuTime() - cpuStart;
+            if (senderThread != null) {
+                try {
+                    senderThread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            var transferred = bytes.getAsLong();
+            System.out.printf(Locale.ROOT, "%-14s : %,d octets en %d ms, %.1f Mio/s ; CPU %.2f ms/Mio ; "
+                            + "tas +%,d Kio au plus, %d collections%n",
+                    label, transferred, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                    transferred / (1024.0 * 1024.0) / (elapsed / 1e9), cpu / 1e6 / Math.max(1, transferred / (1024.0 * 1024.0)),
+                    (maxHeapUsed - heapBefore) / 1024, gcCount() - gcBefore);
+            return elapsed;
+        }
+    }
+
+    private void sendBlocks(SocketChannel sender) throws IOException {
+        var block = ByteBuffer.allocateDirect(BLOCK_SIZE);
+        var sent = 0L;
+        try (var selector = Selector.open()) {
+            sender.register(selector, SelectionKey.OP_WRITE);
+            while (sent < size) {
+                selector.select();
+                selector.selectedKeys().clear();
+                block.clear().limit((int) Math.min(BLOCK_SIZE, size - sent));
+                sent += sender.write(block);
+            }
+        }
+    }
+
+    private void discard(SocketChannel receiver) throws IOException {
+        var sink = ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE);
+        var read = 0L;
+        try (var selector = Selector.open()) {
+            receiver.register(selector, SelectionKey.OP_READ);
+            while (read < size) {
+                select(selector);
+                int n;
+                while ((n = receiver.read(sink.clear())) > 0) {
+                    read += n;
+                }
+            }
+        }
+    }
+
+    private void writeFile(Path path) throws IOException {
+        var block = ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE);
+        try (var file = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            for (var position = 0L; position < size; position += RECEIVE_BUFFER_SIZE) {
+                block.clear().limit((int) Math.min(RECEIVE_BUFFER_SIZE, size - position));
+                while (block.hasRemaining()) {
+                    file.write(block, position + block.position());
+                }
+            }
+        }
+    }
+
+    private void sendFile(Path source, SocketChannel sender) throws IOException {
+        var in = ByteBuffer.allocate(1024);
+        var frameReader = new PrivateFrameReader();
+        FileSender.Chunk chunk = null;
+        lastSent = 0;
+        try (var fileSender = new FileSender(source); var selector = Selector.open()) {
+            var key = sender.register(selector, SelectionKey.OP_WRITE);
+            while (!fileSender.isDone()) {
+                selector.select();
+                selector.selectedKeys().clear();
+                if (fileSender.awaitingResume()) {
+                    // réponse FILE_RESUME du récepteur, lue comme le fait PrivateContext
+                    if (sender.read(in) == -1) {
+                        throw new IOException("connexion fermée par le récepteur");
+                    }
+                    in.flip();
+                    var status = frameReader.process(in);
+                    in.compact();
+                    if (status == Reader.ProcessStatus.ERROR) {
+                        throw new IOException("trame invalide reçue du récepteur");
+                    }
+                    if (status == Reader.ProcessStatus.DONE) {
+                        fileSender.resume((FileResume) frameReader.get());
+                        frameReader.reset();
+                        key.interestOps(SelectionKey.OP_WRITE);
+                    }
+                    continue;
+                }
+                if (!fileSender.transferHeader(sender)) {
+                    continue;
+                }
+                if (fileSender.awaitingResume()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    continue;
+                }
+                while ((chunk != null || (chunk = fileSender.nextChunk()) != null) && chunk.transfer(sender)) {
+                    chunk = null;
+                }
+                lastSent = fileSender.sent();
+            }
+        }
+    }
+
+    /**
+     * Reçoit le fichier proposé, en abandonnant la connexion une fois {@code stopAfter} octets reçus,
+     * par projection si {@code mapWindow} est positif.
+     */
+    private void receiveFile(Path directory, SocketChannel receiver, long stopAfter, long mapWindow) throws IOException {
+        var in = ByteBuffer.allocateDirect(1024);
+        var scratch = ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE);
+        var frameReader = new PrivateFrameReader();
+        FileReceiver fileReceiver = null;
+        FileReceiver.Chunk chunk = null;
+        try (var selector = Selector.open()) {
+            receiver.register(selector, SelectionKey.OP_READ);
+            while (fileReceiver == null || !fileReceiver.isComplete() && fileReceiver.received() < stopAfter) {
+                select(selector);
+                if (chunk != null && in.position() == 0) {
+                    if (chunk.receive(receiver, scratch) == -1) {
+                        throw new IOException("connexion fermée par l'émetteur");
+                    }
+                    if (chunk.isComplete()) {
+                        chunk = null;
+                    }
+                    continue;
+                }
+                if (receiver.read(in) == -1) {
+                    throw new IOException("connexion fermée par l'émetteur");
+                }
+                // trames lues comme le fait PrivateContext, le début de morceau qui les suit écrit dans le fichier
+                in.flip();
+                while (in.hasRemaining()) {
+                    if (chunk != null) {
+                        chunk.write(in);
+                        if (chunk.isComplete()) {
+                            chunk = null;
+                        }
+                        continue;
+                    }
+                    var status = frameReader.process(in);
+                    if (status == Reader.ProcessStatus.REFILL) {
+                        break;
+                    }
+                    if (status == Reader.ProcessStatus.ERROR) {
+                        throw new IOException("trame invalide reçue de l'émetteur");
+                    }
+                    switch (frameReader.get()) {
+                        case FileHeader header -> {
+                            fileReceiver = new FileReceiver(directory, header, mapWindow, 0);
+                            lastResumed = fileReceiver.resumed();
+                            var resume = fileReceiver.resume().encode();
+                            while (resume.hasRemaining()) {
+                                receiver.write(resume);
+                            }
+                        }
+                        case ChunkHeader header -> chunk = fileReceiver.startChunk(header);
+                        case FileResume resume -> throw new IOException("FILE_RESUME reçu de l'émetteur");
+                        case PrivateMessage message -> throw new IOException("MESSAGE reçu de l'émetteur");
+                    }
+                    frameReader.reset();
+                }
+                in.compact();
+            }
+            if (fileReceiver.isComplete()) {
+                fileReceiver.complete();
+            } else {
+                // l'émetteur bloqué sur la socket pleine voit la connexion se fermer
+                receiver.close();
+            }
+        } finally {
+            if (fileReceiver != null) {
+                fileReceiver.close();
+            }
+        }
+    }
+
+    private void select(Selector selector) throws IOException {
+        selector.select();
+        selector.selectedKeys().clear();
+        if (++iterations % HEAP_SAMPLE_PERIOD == 0) {
+            maxHeapUsed = Math.max(maxHeapUsed, heapUsed());
+        }
+    }
+
+    /**
+     * Fichier de blocs aléatoires, chacun marqué de son numéro pour qu'un bloc mal placé change le CRC.
+     */
+    private void createSource(Path source) throws IOException {
+        var block = ByteBuffer.allocateDirect(BLOCK_SIZE);
+        var random = new Random(42);
+        var bytes = new byte[BLOCK_SIZE];
+        random.nextBytes(bytes);
+        block.put(bytes);
+        try (var file = FileChannel.open(source, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            for (var position = 0L; position < size; position += BLOCK_SIZE) {
+                block.clear().putLong(0, position).limit((int) Math.min(BLOCK_SIZE, size - position));
+                while (block.hasRemaining()) {
+                    file.write(block);
+                }
+            }
+        }
+    }
+
+    private static long crc(Path path) throws IOException {
+        var crc = new CRC32C();
+        var buffer = ByteBuffer.allocateDirect(BLOCK_SIZE);
+        try (var file = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (file.read(buffer.clear()) > 0) {
+                crc.update(buffer.flip());
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static long heapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(bean -> Math.max(0, bean.getCollectionCount())).sum();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 0) {
+            System.err.println("Usage: java [-Dtransfer.bytes=N] [-Dtransfer.dir=DIR] "
+                    + "-cp chatvabien-loadgen.jar fr.upem.net.chatvabien.loadgen.FileTransferProbe");
+            return;
+        }
+        new FileTransferProbe(Long.getLong("transfer.bytes", 4L << 30),
+                Path.of(System.getProperty("transfer.dir", System.getProperty("java.io.tmpdir")))).run();
+    }
+}
@@ -0,0 +1,206 @@
+package fr.upem.net.chatvabien.loadgen;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import fr.upem.net.chatvabien.protocol.LoginMessage;
+import fr.upem.net.chatvabien.protocol.OPCODE;
+import fr.upem.net.chatvabien.protocol.Trame;
+import fr.upem.net.chatvabien.server.ServerConfig;
+
+/**
+ * Mesure la mémoire occupée par connexion inactive dans le serveur ChatVaBien.
+ * <p>
+ * Le serveur est démarré dans ce processus, puis {@code footprint.connections} connexions y sont
+ * ouvertes et laissées inactives (identifiées si {@code footprint.login} est vrai). La hausse du tas
+ * et de la mémoire directe, mesurée après ramasse-miettes, est divisée par le nombre de connexions.
+ * La même mesure est faite sur un serveur NIO nu, qui se contente d'enregistrer les connexions
+ * acceptées auprès d'un sélecteur : la différence est le coût propre à ChatVaBien, les connexions
+ * clientes de ce processus étant comptées dans les deux mesures.
+ */
+public class FootprintProbe {
+    private static final long SETTLE_MILLIS = Long.getLong("footprint.settleMillis", 2000);
+
+    private record Footprint(long heapBytes, long directBytes) {
+        Footprint minus(Footprint other) {
+            return new Footprint(heapBytes - other.heapBytes, directBytes - other.directBytes);
+        }
+    }
+
+    private final int connections;
+    private final boolean login;
+
+    public FootprintProbe(int connections, boolean login) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("connections doit être >= 1: " + connections);
+        }
+        this.connections = connections;
+        this.login = login;
+    }
+
+    public void run() throws IOException, InterruptedException {
+        var bare = measure("NIO nu", this::startBareServer);
+        var chat = measure("ChatVaBien", this::startChatVaBien);
+        var overhead = chat.minus(bare);
+        System.out.printf(Locale.ROOT, "Surcoût ChatVaBien par connexion : %d octets de tas, %d octets directs%n",
+                overhead.heapBytes() / connections, overhead.directBytes() / connections);
+        System.out.printf(Locale.ROOT, "Soit pour 100 000 connexions : %.1f Mio de tas, %.1f Mio directs%n",
+                mebibytes(overhead.heapBytes() * 100_000 / connections),
+                mebibytes(overhead.directBytes() * 100_000 / connections));
+    }
+
+    private interface Stopper {
+        void stop() throws InterruptedException;
+    }
+
+    /**
+     * Serveur lancé et prêt à accepter des connexions à {@code address}.
+     */
+    private record Running(InetSocketAddress address, Stopper stopper) {}
+
+    private interface ServerStarter {
+        Running start() throws IOException, InterruptedException;
+    }
+
+    private Footprint measure(String label, ServerStarter starter) throws IOException, InterruptedException {
+        var server = starter.start();
+        var before = footprint();
+
+        var clients = new ArrayList<SocketChannel>(connections);
+        var drainer = Selector.open();
+        try {
+            var address = server.address();
+            for (var i = 0; i < connections; i++) {
+                var sc = SocketChannel.open(address);
+                if (login) {
+                    sc.write(Trame.clientMessage(OPCODE.LOGIN, "fp" + i, new LoginMessage()).toByteBuffer());
+                }
+                sc.configureBlocking(false);
+                sc.register(drainer, SelectionKey.OP_READ);
+                clients.add(sc);
+            }
+            // les diffusions d'arrivée sont lues pour ne pas s'accumuler dans les files du serveur
+            var sink = ByteBuffer.allocateDirect(64 * 1024);
+            var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SETTLE_MILLIS);
+            while (System.nanoTime() < deadline) {
+                drainer.select(key -> drain(key, sink), 50);
+            }
+            var after = footprint().minus(before);
+            System.out.printf(Locale.ROOT, "%-10s : %d connexions%s, %d octets de tas et %d octets directs par connexion%n",
+                    label, connections, login ? " identifiées" : " inactives",
+                    after.heapBytes() / connections, after.directBytes() / connections);
+            return after;
+        } finally {
+            for (var sc : clients) {
+                sc.close();
+            }
+            drainer.close();
+            server.stopper().stop();
+        }
+    }
+
+    private static void drain(SelectionKey key, ByteBuffer sink) {
+        try {
+            while (((SocketChannel) key.channel()).read(sink.clear()) > 0) {
+                // contenu ignoré
+            }
+        } catch (IOException e) {
+            key.cancel();
+        }
+    }
+
+    private Running startChatVaBien() throws IOException, InterruptedException {
+        var embedded = EmbeddedServer.start(ServerConfig.fromSystemProperties());
+        return new Running(embedded.address(), embedded::close);
+    }
+
+    /**
+     * Serveur de référence : accepte les connexions et les enregistre en lecture, sans autre état.
+     */
+    private Running startBareServer() throws IOException {
+        var ssc = ServerSocketChannel.open();
+        // lié avant le lancement du thread : les connexions sont acceptées dès le retour
+        ssc.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        var address = (InetSocketAddress) ssc.getLocalAddress();
+        var selector = Selector.open();
+        ssc.configureBlocking(false);
+        ssc.register(selector, SelectionKey.OP_ACCEPT);
+        var accepted = new ArrayList<SocketChannel>();
+        var sink = ByteBuffer.allocateDirect(64 * 1024);
+        var thread = Thread.ofPlatform().name("nio-nu").daemon().start(() -> {
+            try (ssc; selector) {
+                while (!Thread.interrupted()) {
+                    selector.select(key -> {
+                        try {
+                            if (key.isAcceptable()) {
+                                var sc = ssc.accept();
+                                sc.configureBlocking(false);
+                                sc.register(selector, SelectionKey.OP_READ);
+                                accepted.add(sc);
+                            } else if (((SocketChannel) key.channel()).read(sink.clear()) == -1) {
+                                key.channel().close();
+                            }
+                        } catch (IOException e) {
+                            key.cancel();
+                        }
+                    });
+                }
+                for (var sc : accepted) {
+                    sc.close();
+                }
+            } catch (IOException e) {
+                System.err.println("Serveur NIO nu arrêté: " + e.getMessage());
+            }
+        });
+        return new Running(address, () -> {
+            thread.interrupt();
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        });
+    }
+
+    private static Footprint footprint() throws InterruptedException {
+        for (var i = 0; i < 3; i++) {
+            System.gc();
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        var heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        var direct = directPools().stream().mapToLong(BufferPoolMXBean::getMemoryUsed).sum();
+        return new Footprint(heap, direct);
+    }
+
+    private static List<BufferPoolMXBean> directPools() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .toList();
+    }
+
+    private static double mebibytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 0) {
+            System.err.println("Usage: java [-Dfootprint.connections=N] [-Dfootprint.login=true] "
+                    + "-cp chatvabien-loadgen.jar fr.upem.net.chatvabien.loadgen.FootprintProbe");
+            return;
+        }
+        // les événements en attente d'écriture seraient comptés dans la mesure
+        for (var category : List.of("server", "connection", "auth", "flow")) {
+            var property = "chatvabien.log." + category;
+            System.setProperty(property, System.getProperty(property, "WARNING"));
+        }
+        new FootprintProbe(Integer.getInteger("footprint.connections", 5000), Boolean.getBoolean("footprint.login")).run();
+    }
+}
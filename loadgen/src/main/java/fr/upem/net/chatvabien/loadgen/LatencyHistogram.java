@@ -0,0 +1,107 @@
+package fr.upem.net.chatvabien.loadgen;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Histogramme de latences à précision relative bornée.
+ * <p>
+ * Les valeurs inférieures à 128 ns sont comptées exactement ; au-delà, chaque puissance de deux
+ * est découpée en 64 classes, soit une erreur relative inférieure à 1,6 %. L'enregistrement
+ * n'alloue rien et coûte quelques instructions, ce qui permet de mesurer chaque livraison.
+ * <p>
+ * Cette classe n'est pas thread-safe : chaque thread remplit son histogramme,
+ * fusionné ensuite avec {@link #add(LatencyHistogram)}.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int EXACT = 2 * SUB_BUCKETS;
+    private static final int BUCKETS = EXACT + (Long.SIZE - SUB_BUCKET_BITS - 2) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long max;
+    private double sum;
+
+    void record(long nanos) {
+        var value = Math.max(0, nanos);
+        counts[indexOf(value)]++;
+        count++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    void add(LatencyHistogram other) {
+        for (var i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    long count() {
+        return count;
+    }
+
+    long max() {
+        return max;
+    }
+
+    double mean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * Plus petite valeur telle qu'au moins {@code percentile} % des mesures lui sont inférieures ou égales,
+     * arrondie à la borne haute de sa classe.
+     */
+    long percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        var rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        var seen = 0L;
+        for (var i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Résumé sur une ligne, en millisecondes.
+     */
+    String summary() {
+        return String.format(Locale.ROOT, "p50=%s p99=%s p999=%s max=%s moy=%s (%d mesures)",
+                millis(percentile(50)), millis(percentile(99)), millis(percentile(99.9)),
+                millis(max), millis((long) mean()), count);
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3fms", (double) nanos / TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private static int indexOf(long value) {
+        if (value < EXACT) {
+            return (int) value;
+        }
+        var shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS - 1;
+        var mantissa = (int) (value >>> shift) - SUB_BUCKETS;
+        return EXACT + (shift - 1) * SUB_BUCKETS + mantissa;
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < EXACT) {
+            return index;
+        }
+        var shift = (index - EXACT) / SUB_BUCKETS + 1;
+        var mantissa = (index - EXACT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((long) (mantissa + 1) << shift) - 1;
+    }
+}
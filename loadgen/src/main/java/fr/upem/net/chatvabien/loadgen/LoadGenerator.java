@@ -0,0 +1,141 @@
+package fr.upem.net.chatvabien.loadgen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Générateur de charge sans console pour le serveur ChatVaBien.
+ * <p>
+ * Ouvre {@link LoadGeneratorConfig#users()} connexions non bloquantes depuis un seul processus,
+ * réparties sur {@link LoadGeneratorConfig#threads()} sélecteurs, puis émet des messages publics,
+ * des demandes de connexion privée et des demandes de liste des utilisateurs au débit demandé.
+ * Rapporte le débit émis et livré ainsi que les percentiles de latence de bout en bout de la
+ * diffusion (émission par un utilisateur jusqu'à la réception par chacun des autres).
+ * <p>
+ * Les horodatages étant pris avec {@link System#nanoTime()} dans ce processus,
+ * tous les utilisateurs simulés doivent appartenir au même générateur.
+ */
+public class LoadGenerator {
+    private static final long LOGIN_TIMEOUT_SECONDS = 60;
+
+    private final InetSocketAddress server;
+    private final LoadGeneratorConfig config;
+    private final LoadStats stats = new LoadStats();
+
+    public LoadGenerator(InetSocketAddress server, LoadGeneratorConfig config) {
+        this.server = server;
+        this.config = config;
+    }
+
+    public void run() throws IOException, InterruptedException {
+        var logins = new CountDownLatch(config.users());
+        var drivers = new ArrayList<Driver>(config.threads());
+        var threads = new ArrayList<Thread>(config.threads());
+        for (var i = 0; i < config.threads(); i++) {
+            var first = (int) ((long) i * config.users() / config.threads());
+            var last = (int) ((long) (i + 1) * config.users() / config.threads());
+            var driver = new Driver(i, first, last - first, server, config, stats, logins);
+            drivers.add(driver);
+            threads.add(Thread.ofPlatform().name("loadgen-" + i).start(driver));
+        }
+
+        System.out.printf(Locale.ROOT, "Connexion de %d utilisateurs à %s sur %d threads...%n",
+                config.users(), server, config.threads());
+        var connectStart = System.nanoTime();
+        if (!logins.await(LOGIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            System.out.println("Délai de connexion dépassé, poursuite avec les utilisateurs connectés");
+        }
+        System.out.printf(Locale.ROOT, "%d utilisateurs connectés en %.1f s (%d refusés, %d échecs)%n",
+                stats.loggedIn.sum(), seconds(System.nanoTime() - connectStart),
+                stats.refused.sum(), stats.connectFailures.sum());
+        if (stats.loggedIn.sum() == 0) {
+            threads.forEach(Thread::interrupt);
+            return;
+        }
+
+        var sendStart = System.nanoTime();
+        var measureStart = sendStart + TimeUnit.SECONDS.toNanos(config.warmupSeconds());
+        var measureEnd = measureStart + TimeUnit.SECONDS.toNanos(config.durationSeconds());
+        var stopAt = measureEnd + TimeUnit.SECONDS.toNanos(config.drainSeconds());
+        for (var driver : drivers) {
+            driver.startSending(sendStart, measureStart, measureEnd, stopAt);
+        }
+
+        printProgress(sendStart, stopAt);
+        for (var thread : threads) {
+            thread.join();
+        }
+        printReport(drivers);
+    }
+
+    private void printProgress(long sendStart, long stopAt) throws InterruptedException {
+        var previous = 0L;
+        var now = System.nanoTime();
+        while (now < stopAt) {
+            TimeUnit.NANOSECONDS.sleep(Math.min(TimeUnit.SECONDS.toNanos(1), stopAt - now));
+            now = System.nanoTime();
+            var delivered = stats.deliveredTotal.sum();
+            System.out.printf(Locale.ROOT, "[%5.1f s] %d livraisons (+%d), %d connectés, %d déconnectés%n",
+                    seconds(now - sendStart), delivered, delivered - previous,
+                    stats.loggedIn.sum() - stats.disconnected.sum(), stats.disconnected.sum());
+            previous = delivered;
+        }
+    }
+
+    private void printReport(List<Driver> drivers) {
+        var broadcast = new LatencyHistogram();
+        var privateRequests = new LatencyHistogram();
+        var userLists = new LatencyHistogram();
+        for (var driver : drivers) {
+            broadcast.add(driver.broadcastLatency);
+            privateRequests.add(driver.privateLatency);
+            userLists.add(driver.userListLatency);
+        }
+
+        var duration = (double) config.durationSeconds();
+        var messages = stats.sentMessages.sum();
+        var privates = stats.sentPrivateRequests.sum();
+        var lists = stats.sentUserRequests.sum();
+        var delivered = stats.delivered.sum();
+        var expected = messages * stats.loggedIn.sum();
+
+        System.out.println();
+        System.out.println("=== Résultats ===");
+        System.out.printf(Locale.ROOT, "Utilisateurs     : %d connectés / %d (%d refusés, %d échecs, %d déconnectés"
+                        + " dont %d sur trame invalide)%n",
+                stats.loggedIn.sum(), config.users(), stats.refused.sum(), stats.connectFailures.sum(),
+                stats.disconnected.sum(), stats.protocolErrors.sum());
+        System.out.printf(Locale.ROOT, "Requêtes émises  : %.1f/s sur %d s (%d messages, %d demandes privées, %d listes)%n",
+                (messages + privates + lists) / duration, config.durationSeconds(), messages, privates, lists);
+        System.out.printf(Locale.ROOT, "Livraisons       : %.1f/s (%d, %.2f %% des livraisons attendues)%n",
+                delivered / duration, delivered, expected == 0 ? 0 : 100.0 * delivered / expected);
+        System.out.println("Latence diffusion: " + broadcast.summary());
+        if (privates > 0) {
+            System.out.printf("Demande privée   : %s, %d/%d réponses%n",
+                    privateRequests.summary(), stats.privateAnswers.sum(), privates);
+        }
+        if (lists > 0) {
+            System.out.printf("Liste utilisateurs: %s, %d/%d réponses%n",
+                    userLists.summary(), stats.userListAnswers.sum(), lists);
+        }
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 2) {
+            System.err.println("Usage: java [-Dloadgen.users=N ...] LoadGenerator <host> <port>");
+            return;
+        }
+
+        var server = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+        new LoadGenerator(server, LoadGeneratorConfig.fromSystemProperties()).run();
+    }
+}
@@ -0,0 +1,77 @@
+package fr.upem.net.chatvabien.loadgen;
+
+/**
+ * Paramètres d'une campagne de charge.
+ * <p>
+ * Les valeurs par défaut peuvent être surchargées par propriétés système,
+ * par exemple {@code -Dloadgen.users=5000}.
+ *
+ * @param users           nombre d'utilisateurs simulés, chacun avec sa propre connexion
+ * @param threads         nombre de threads sélecteurs se répartissant les connexions
+ * @param rate            nombre total de requêtes émises par seconde, tous utilisateurs confondus
+ * @param privateRatio    part des requêtes qui sont des demandes de connexion privée
+ * @param usersRatio      part des requêtes qui sont des demandes de liste des utilisateurs
+ * @param messageSize     taille en octets du texte des messages publics
+ * @param warmupSeconds   durée de chauffe, dont les mesures sont ignorées
+ * @param durationSeconds durée de la mesure
+ * @param drainSeconds    délai laissé après la mesure pour recevoir les messages encore en transit
+ * @param prefix          préfixe des pseudos, suivi du numéro de l'utilisateur
+ * @param auth            connexion par LOGINAUTH avec un mot de passe égal au login, accepté par
+ *                        {@link StubMdpServer} sans fichier de mots de passe
+ */
+public record LoadGeneratorConfig(int users, int threads, double rate, double privateRatio, double usersRatio,
+                                  int messageSize, int warmupSeconds, int durationSeconds, int drainSeconds,
+                                  String prefix, boolean auth) {
+
+    /**
+     * Taille minimale du texte : l'horodatage d'émission y est écrit en décimal.
+     */
+    static final int MIN_MESSAGE_SIZE = 20;
+
+    public LoadGeneratorConfig {
+        if (users < 1 || threads < 1) {
+            throw new IllegalArgumentException("users et threads doivent être >= 1: " + users + ", " + threads);
+        }
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate doit être > 0: " + rate);
+        }
+        if (privateRatio < 0 || usersRatio < 0 || privateRatio + usersRatio > 1) {
+            throw new IllegalArgumentException("répartition invalide: privateRatio=" + privateRatio
+                    + ", usersRatio=" + usersRatio);
+        }
+        if (messageSize < MIN_MESSAGE_SIZE) {
+            throw new IllegalArgumentException("messageSize doit être >= " + MIN_MESSAGE_SIZE + ": " + messageSize);
+        }
+        if (warmupSeconds < 0 || durationSeconds < 1 || drainSeconds < 0) {
+            throw new IllegalArgumentException("durées invalides: " + warmupSeconds + "s, "
+                    + durationSeconds + "s, " + drainSeconds + "s");
+        }
+        if (prefix.isEmpty()) {
+            throw new IllegalArgumentException("prefix ne doit pas être vide");
+        }
+        threads = Math.min(threads, users);
+    }
+
+    /**
+     * Construit la configuration à partir des propriétés système {@code loadgen.*}.
+     */
+    public static LoadGeneratorConfig fromSystemProperties() {
+        return new LoadGeneratorConfig(
+                Integer.getInteger("loadgen.users", 1000),
+                Integer.getInteger("loadgen.threads", Math.min(4, Runtime.getRuntime().availableProcessors())),
+                doubleProperty("loadgen.rate", 200),
+                doubleProperty("loadgen.privateRatio", 0.0),
+                doubleProperty("loadgen.usersRatio", 0.0),
+                Integer.getInteger("loadgen.messageSize", 64),
+                Integer.getInteger("loadgen.warmup", 5),
+                Integer.getInteger("loadgen.duration", 30),
+                Integer.getInteger("loadgen.drain", 2),
+                System.getProperty("loadgen.prefix", "lg"),
+                Boolean.getBoolean("loadgen.auth"));
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        var value = System.getProperty(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+}
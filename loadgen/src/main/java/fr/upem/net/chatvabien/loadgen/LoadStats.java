@@ -0,0 +1,26 @@
+package fr.upem.net.chatvabien.loadgen;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compteurs partagés par tous les {@link Driver}, lus par le thread principal pendant la campagne.
+ * <p>
+ * Les compteurs {@code sent*} et {@code delivered} ne portent que sur la fenêtre de mesure ;
+ * {@code deliveredTotal} inclut la chauffe et sert à l'affichage de la progression.
+ */
+final class LoadStats {
+    final LongAdder loggedIn = new LongAdder();
+    final LongAdder refused = new LongAdder();
+    final LongAdder connectFailures = new LongAdder();
+    final LongAdder disconnected = new LongAdder();
+    final LongAdder protocolErrors = new LongAdder();
+
+    final LongAdder sentMessages = new LongAdder();
+    final LongAdder sentPrivateRequests = new LongAdder();
+    final LongAdder sentUserRequests = new LongAdder();
+
+    final LongAdder delivered = new LongAdder();
+    final LongAdder deliveredTotal = new LongAdder();
+    final LongAdder privateAnswers = new LongAdder();
+    final LongAdder userListAnswers = new LongAdder();
+}
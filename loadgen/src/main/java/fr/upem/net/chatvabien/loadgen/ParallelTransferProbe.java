@@ -0,0 +1,442 @@
+package fr.upem.net.chatvabien.loadgen;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+import fr.upem.net.chatvabien.protocol.*;
+
+/**
+ * Mesure le débit d'un transfert de fichier réparti sur K connexions, comme le font les flux d'une
+ * connexion privée du client ChatVaBien, au travers d'un relais local qui simule un lien lointain.
+ * <p>
+ * Le relais retarde chaque octet de {@code parallel.delay} ms dans chaque sens et ne garde en transit
+ * qu'environ {@code parallel.window} octets par connexion et par sens : comme une fenêtre TCP, il borne
+ * le débit d'une connexion à la fenêtre divisée par le délai, quelle que soit la bande passante. Pour
+ * chaque K de {@code parallel.streams}, l'émetteur, sur son propre thread, propose le fichier sur la
+ * première connexion puis distribue ses morceaux aux K connexions par {@link FileSender#nextChunk()} ;
+ * le récepteur les écrit par un seul {@link FileReceiver}. Le débit, son gain par rapport au premier K
+ * mesuré et la borne du relais sont rapportés, puis le CRC32C du fichier reçu est vérifié.
+ */
+public class ParallelTransferProbe {
+    private static final int BLOCK_SIZE = 1 << 20;
+    private static final int RECEIVE_BUFFER_SIZE = 64 * 1024;
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    private final long size;
+    private final int[] streams;
+    private final long delayMillis;
+    private final int window;
+    private final int chunkSize;
+    private final Path directory;
+    // récepteur partagé par les connexions du transfert en cours
+    private FileReceiver fileReceiver;
+
+    public ParallelTransferProbe(long size, int[] streams, long delayMillis, int window, int chunkSize, Path directory) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size doit être >= 0: " + size);
+        }
+        if (streams.length == 0 || Arrays.stream(streams).anyMatch(count -> count < 1)) {
+            throw new IllegalArgumentException("streams doit lister des entiers >= 1: " + Arrays.toString(streams));
+        }
+        if (delayMillis < 0 || window < 1) {
+            throw new IllegalArgumentException("delay doit être >= 0 et window >= 1");
+        }
+        this.size = size;
+        this.streams = streams;
+        this.delayMillis = delayMillis;
+        this.window = window;
+        this.chunkSize = chunkSize;
+        this.directory = directory;
+    }
+
+    public void run() throws IOException, InterruptedException {
+        var workDir = Files.createTempDirectory(directory, "chatvabien-parallel");
+        try {
+            var source = workDir.resolve("source.bin");
+            createSource(source);
+            var sourceCrc = crc(source);
+            System.out.printf(Locale.ROOT, "Fichier de %,d octets, morceaux de %,d octets, délai %d ms, fenêtre %,d octets%n",
+                    size, chunkSize, delayMillis, window);
+            var first = 0.0;
+            for (var count : streams) {
+                var received = Files.createDirectory(workDir.resolve("recu-" + count));
+                var nanos = transfer(source, received, count);
+                var rate = size / (nanos / 1e9) / (1 << 20);
+                if (first == 0) {
+                    first = rate;
+                }
+                var copy = received.resolve(source.getFileName());
+                var identical = Files.size(copy) == size && crc(copy) == sourceCrc;
+                System.out.printf(Locale.ROOT, "%2d flux : %8.1f Mio/s (x%.2f), borne du relais %8.1f Mio/s, fichier %s%n",
+                        count, rate, rate / first, bound(count), identical ? "identique" : "DIFFÉRENT");
+                Files.delete(copy);
+            }
+        } finally {
+            try (var paths = Files.walk(workDir)) {
+                for (var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Débit maximal du relais pour {@code count} connexions, en Mio/s.
+     */
+    private double bound(int count) {
+        return delayMillis == 0 ? Double.POSITIVE_INFINITY : count * (double) window / (delayMillis / 1e3) / (1 << 20);
+    }
+
+    /**
+     * Transfère le fichier sur {@code count} connexions relayées, l'émetteur sur son propre thread.
+     *
+     * @return la durée de la réception en nanosecondes
+     */
+    private long transfer(Path source, Path received, int count) throws IOException, InterruptedException {
+        var senders = new ArrayList<SocketChannel>();
+        var receivers = new ArrayList<SocketChannel>();
+        try (var server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+             var relay = new DelayRelay(server.getLocalAddress(), TimeUnit.MILLISECONDS.toNanos(delayMillis), window)) {
+            for (var i = 0; i < count; i++) {
+                senders.add(SocketChannel.open(relay.address()));
+                receivers.add(server.accept());
+            }
+            var failure = new IOException[1];
+            var senderThread = Thread.ofPlatform().name("sender").start(() -> {
+                try {
+                    send(source, senders);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            var start = System.nanoTime();
+            receive(received, receivers);
+            var nanos = System.nanoTime() - start;
+            senderThread.join();
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            return nanos;
+        } finally {
+            for (var channel : senders) {
+                channel.close();
+            }
+            for (var channel : receivers) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Propose le fichier sur la première connexion puis donne à chaque connexion prête le morceau
+     * suivant, comme le font les flux d'une connexion privée.
+     */
+    private void send(Path source, List<SocketChannel> channels) throws IOException {
+        var in = ByteBuffer.allocate(1024);
+        var frameReader = new PrivateFrameReader();
+        var chunks = new FileSender.Chunk[channels.size()];
+        try (var fileSender = new FileSender(source, chunkSize); var selector = Selector.open()) {
+            var keys = new SelectionKey[channels.size()];
+            for (var i = 0; i < keys.length; i++) {
+                channels.get(i).configureBlocking(false);
+                keys[i] = channels.get(i).register(selector, i == 0 ? SelectionKey.OP_WRITE : 0, i);
+            }
+            var primary = channels.getFirst();
+            while (!fileSender.isDone()) {
+                selector.select();
+                for (var key : selector.selectedKeys()) {
+                    var index = (int) key.attachment();
+                    var channel = channels.get(index);
+                    if (key.isReadable()) {
+                        // réponse FILE_RESUME du récepteur, sur la première connexion
+                        if (channel.read(in) == -1) {
+                            throw new IOException("connexion fermée par le récepteur");
+                        }
+                        in.flip();
+                        var status = frameReader.process(in);
+                        in.compact();
+                        if (status == Reader.ProcessStatus.ERROR) {
+                            throw new IOException("trame invalide reçue du récepteur");
+                        }
+                        if (status == Reader.ProcessStatus.DONE) {
+                            fileSender.resume((FileResume) frameReader.get());
+                            frameReader.reset();
+                            for (var other : keys) {
+                                other.interestOps(SelectionKey.OP_WRITE);
+                            }
+                        }
+                        continue;
+                    }
+                    if (channel == primary && !fileSender.transferHeader(channel)) {
+                        continue;
+                    }
+                    if (fileSender.awaitingResume()) {
+                        key.interestOps(SelectionKey.OP_READ);
+                        continue;
+                    }
+                    while ((chunks[index] != null || (chunks[index] = fileSender.nextChunk()) != null)
+                            && chunks[index].transfer(channel)) {
+                        chunks[index] = null;
+                    }
+                    if (chunks[index] == null) {
+                        key.interestOps(0); // plus aucun morceau à envoyer sur cette connexion
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        }
+    }
+
+    /**
+     * Trames et morceau en cours d'une connexion reçue.
+     */
+    private static final class Stream {
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocateDirect(1024);
+        private final PrivateFrameReader frameReader = new PrivateFrameReader();
+        private FileReceiver.Chunk chunk;
+
+        private Stream(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Reçoit par un seul {@link FileReceiver} les morceaux arrivant sur toutes les connexions.
+     */
+    private void receive(Path directory, List<SocketChannel> channels) throws IOException {
+        var scratch = ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE);
+        fileReceiver = null;
+        try (var selector = Selector.open()) {
+            for (var channel : channels) {
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, new Stream(channel));
+            }
+            while (fileReceiver == null || !fileReceiver.isComplete()) {
+                selector.select();
+                for (var key : selector.selectedKeys()) {
+                    receive(directory, (Stream) key.attachment(), scratch);
+                }
+                selector.selectedKeys().clear();
+            }
+            fileReceiver.complete();
+        } finally {
+            if (fileReceiver != null) {
+                fileReceiver.close();
+            }
+        }
+    }
+
+    private void receive(Path directory, Stream stream, ByteBuffer scratch) throws IOException {
+        if (stream.chunk != null && stream.in.position() == 0) {
+            if (stream.chunk.receive(stream.channel, scratch) == -1) {
+                throw new IOException("connexion fermée par l'émetteur");
+            }
+            if (stream.chunk.isComplete()) {
+                stream.chunk = null;
+            }
+            return;
+        }
+        if (stream.channel.read(stream.in) == -1) {
+            throw new IOException("connexion fermée par l'émetteur");
+        }
+        var in = stream.in.flip();
+        while (in.hasRemaining()) {
+            if (stream.chunk != null) {
+                stream.chunk.write(in);
+                if (stream.chunk.isComplete()) {
+                    stream.chunk = null;
+                }
+                continue;
+            }
+            var status = stream.frameReader.process(in);
+            if (status == Reader.ProcessStatus.REFILL) {
+                break;
+            }
+            if (status == Reader.ProcessStatus.ERROR) {
+                throw new IOException("trame invalide reçue de l'émetteur");
+            }
+            switch (stream.frameReader.get()) {
+                case FileHeader header -> {
+                    fileReceiver = new FileReceiver(directory, header);
+                    var resume = fileReceiver.resume().encode();
+                    while (resume.hasRemaining()) {
+                        stream.channel.write(resume);
+                    }
+                }
+                case ChunkHeader header -> {
+                    if (fileReceiver == null) {
+                        throw new IOException("FILE_CHUNK reçu avant FILE");
+                    }
+                    stream.chunk = fileReceiver.startChunk(header);
+                }
+                case FileResume resume -> throw new IOException("FILE_RESUME reçu de l'émetteur");
+                case PrivateMessage message -> throw new IOException("MESSAGE reçu de l'émetteur");
+            }
+            stream.frameReader.reset();
+        }
+        in.compact();
+    }
+
+    /**
+     * Relais TCP local qui retarde chaque sens de chaque connexion et y limite les octets en transit.
+     * Deux threads par sens : l'un lit et date les segments, l'autre les écrit à leur échéance.
+     */
+    private static final class DelayRelay implements Closeable {
+        private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+        private record Segment(long due, ByteBuffer data) { }
+
+        private final ServerSocketChannel server;
+        private final SocketAddress target;
+        private final long delayNanos;
+        private final int window;
+        private final List<SocketChannel> channels = new CopyOnWriteArrayList<>();
+
+        private DelayRelay(SocketAddress target, long delayNanos, int window) throws IOException {
+            this.server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            this.target = target;
+            this.delayNanos = delayNanos;
+            this.window = window;
+            Thread.ofPlatform().daemon().name("relay-accept").start(this::accept);
+        }
+
+        private SocketAddress address() throws IOException {
+            return server.getLocalAddress();
+        }
+
+        private void accept() {
+            try {
+                while (true) {
+                    var client = server.accept();
+                    channels.add(client);
+                    var upstream = SocketChannel.open(target);
+                    channels.add(upstream);
+                    pump(client, upstream);
+                    pump(upstream, client);
+                }
+            } catch (IOException e) {
+                // relais fermé
+            }
+        }
+
+        private void pump(SocketChannel from, SocketChannel to) {
+            var queue = new LinkedBlockingQueue<Segment>();
+            var inFlight = new Semaphore(window);
+            var segmentSize = Math.min(SEGMENT_SIZE, window);
+            Thread.ofPlatform().daemon().name("relay-read").start(() -> {
+                try {
+                    while (true) {
+                        var data = ByteBuffer.allocate(segmentSize);
+                        if (from.read(data) == -1) {
+                            break;
+                        }
+                        inFlight.acquire(data.position());
+                        queue.put(new Segment(System.nanoTime() + delayNanos, data.flip()));
+                    }
+                } catch (IOException | InterruptedException e) {
+                    // connexion fermée
+                }
+                queue.add(new Segment(0, END));
+            });
+            Thread.ofPlatform().daemon().name("relay-write").start(() -> {
+                try {
+                    while (true) {
+                        var segment = queue.take();
+                        if (segment.data() == END) {
+                            to.shutdownOutput();
+                            return;
+                        }
+                        var wait = segment.due() - System.nanoTime();
+                        if (wait > 0) {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        }
+                        var length = segment.data().remaining();
+                        while (segment.data().hasRemaining()) {
+                            to.write(segment.data());
+                        }
+                        inFlight.release(length);
+                    }
+                } catch (IOException | InterruptedException e) {
+                    // connexion fermée
+                }
+            });
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+            for (var channel : channels) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Fichier de blocs aléatoires, chacun marqué de son numéro pour qu'un bloc mal placé change le CRC.
+     */
+    private void createSource(Path source) throws IOException {
+        var block = ByteBuffer.allocateDirect(BLOCK_SIZE);
+        var random = new Random(42);
+        var bytes = new byte[BLOCK_SIZE];
+        random.nextBytes(bytes);
+        block.put(bytes);
+        try (var file = FileChannel.open(source, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            for (var position = 0L; position < size; position += BLOCK_SIZE) {
+                block.clear().putLong(0, position).limit((int) Math.min(BLOCK_SIZE, size - position));
+                while (block.hasRemaining()) {
+                    file.write(block);
+                }
+            }
+        }
+    }
+
+    private static long crc(Path path) throws IOException {
+        var crc = new CRC32C();
+        var buffer = ByteBuffer.allocateDirect(BLOCK_SIZE);
+        try (var file = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (file.read(buffer.clear()) > 0) {
+                crc.update(buffer.flip());
+            }
+        }
+        return crc.getValue();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 0) {
+            System.err.println("Usage: java [-Dparallel.bytes=N] [-Dparallel.streams=1,2,4,8] [-Dparallel.delay=MS] "
+                    + "[-Dparallel.window=N] [-Dparallel.chunkSize=N] [-Dparallel.dir=DIR] "
+                    + "-cp chatvabien-loadgen.jar fr.upem.net.chatvabien.loadgen.ParallelTransferProbe");
+            return;
+        }
+        var streams = Arrays.stream(System.getProperty("parallel.streams", "1,2,4,8").split(","))
+                .map(String::trim).mapToInt(Integer::parseInt).toArray();
+        new ParallelTransferProbe(Long.getLong("parallel.bytes", 128L << 20), streams,
+                Long.getLong("parallel.delay", 10), Integer.getInteger("parallel.window", 256 * 1024),
+                Integer.getInteger("parallel.chunkSize", FileHeader.DEFAULT_CHUNK_SIZE),
+                Path.of(System.getProperty("parallel.dir", System.getProperty("java.io.tmpdir")))).run();
+    }
+}
@@ -0,0 +1,221 @@
+package fr.upem.net.chatvabien.loadgen;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import fr.upem.net.chatvabien.protocol.*;
+
+/**
+ * Mesure la lecture des messages privés (MESSAGE) telle que faite par les connexions privées du client
+ * ChatVaBien : {@code private.messages} messages de {@code private.textSize} octets.
+ * <p>
+ * Les messages sont d'abord lus en mémoire, par fenêtres de 1024 octets comme le buffer de lecture
+ * d'une connexion privée, par {@link PrivateFrameReader} puis par deux {@link StringReader}, qui
+ * allouent un buffer par chaîne : le débit et les octets alloués par message sont comparés à la taille
+ * du texte décodé. Ils sont ensuite envoyés sur une connexion locale par un thread émetteur et lus par
+ * un sélecteur, pour le débit de bout en bout.
+ */
+public class PrivateMessageProbe {
+    private static final int BUFFER_SIZE = 1024;
+    private static final String SENDER = "alice";
+
+    private final int messages;
+    private final int textSize;
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public PrivateMessageProbe(int messages, int textSize) {
+        if (messages < 1 || textSize < 0 || textSize > StringReader.MAX_STRING_SIZE) {
+            throw new IllegalArgumentException("messages doit être >= 1 et textSize entre 0 et "
+                    + StringReader.MAX_STRING_SIZE);
+        }
+        this.messages = messages;
+        this.textSize = textSize;
+    }
+
+    public void run() throws IOException, InterruptedException {
+        var encoded = encode();
+        // un String de textSize caractères ASCII : en-tête et tableau d'octets alignés sur 8
+        var textBytes = 24 + align(16 + textSize);
+        System.out.printf(Locale.ROOT, "%,d messages de %d octets, texte décodé : %d octets%n",
+                messages, textSize, textBytes);
+        for (var round = 0; round < 3; round++) {
+            // les premiers tours chauffent le compilateur, seul le dernier est affiché
+            var last = round == 2;
+            decode("PrivateFrameReader", encoded, new PrivateFrameReader(), last);
+            decode("StringReader x2", encoded, new StringPairReader(), last);
+        }
+        transfer(encoded);
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private ByteBuffer encode() {
+        var text = "x".repeat(textSize);
+        var frame = new PrivateMessage(SENDER, text).encode();
+        var encoded = ByteBuffer.allocateDirect(frame.remaining() * messages);
+        for (var i = 0; i < messages; i++) {
+            encoded.put(frame.duplicate());
+        }
+        return encoded.flip();
+    }
+
+    /**
+     * Lit tous les messages de {@code encoded} par fenêtres de {@link #BUFFER_SIZE} octets.
+     */
+    private void decode(String label, ByteBuffer encoded, Reader<?> reader, boolean print) throws IOException {
+        var source = encoded.duplicate();
+        var bufferIn = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        var count = 0;
+        var allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        var start = System.nanoTime();
+        while (source.hasRemaining()) {
+            var limit = source.limit();
+            source.limit(source.position() + Math.min(source.remaining(), bufferIn.remaining()));
+            bufferIn.put(source);
+            source.limit(limit);
+            count += process(reader, bufferIn.flip());
+            bufferIn.compact();
+        }
+        var elapsed = System.nanoTime() - start;
+        var allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        if (count != messages) {
+            throw new IOException(count + " messages lus sur " + messages);
+        }
+        if (print) {
+            System.out.printf(Locale.ROOT, "%-18s : %,.0f messages/s, %.1f octets alloués par message%n",
+                    label, messages / (elapsed / 1e9), (double) allocated / messages);
+        }
+    }
+
+    /**
+     * Lit les messages complets de {@code bufferIn}, comme le fait PrivateContext, et vérifie la
+     * taille de chaque texte.
+     *
+     * @return le nombre de messages lus
+     */
+    private int process(Reader<?> reader, ByteBuffer bufferIn) throws IOException {
+        var count = 0;
+        while (bufferIn.hasRemaining()) {
+            var status = reader.process(bufferIn);
+            if (status == Reader.ProcessStatus.REFILL) {
+                break;
+            }
+            if (status == Reader.ProcessStatus.ERROR) {
+                throw new IOException("trame invalide");
+            }
+            var text = switch (reader.get()) {
+                case PrivateMessage message -> message.text();
+                case String string -> string;
+                default -> throw new IOException("trame inattendue");
+            };
+            if (text.length() != textSize) {
+                throw new IOException("texte de " + text.length() + " caractères reçu");
+            }
+            reader.reset();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Lecture d'un MESSAGE, opcode compris, par deux {@link StringReader}.
+     */
+    private static final class StringPairReader implements Reader<String> {
+        private final StringReader senderReader = new StringReader();
+        private final StringReader textReader = new StringReader();
+        private boolean opcodeRead;
+        private boolean senderRead;
+
+        @Override
+        public ProcessStatus process(ByteBuffer bb) {
+            if (!opcodeRead) {
+                if (bb.get() != OPCODE.MESSAGE.getCode()) {
+                    return ProcessStatus.ERROR;
+                }
+                opcodeRead = true;
+            }
+            if (!senderRead) {
+                var status = senderReader.process(bb);
+                if (status != ProcessStatus.DONE) {
+                    return status;
+                }
+                senderRead = true;
+            }
+            return textReader.process(bb);
+        }
+
+        @Override
+        public String get() {
+            return textReader.get();
+        }
+
+        @Override
+        public void reset() {
+            senderReader.reset();
+            textReader.reset();
+            opcodeRead = false;
+            senderRead = false;
+        }
+    }
+
+    /**
+     * Envoie les messages sur une connexion locale depuis un autre thread et les lit par un sélecteur.
+     */
+    private void transfer(ByteBuffer encoded) throws IOException, InterruptedException {
+        try (var server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+             var sender = SocketChannel.open(server.getLocalAddress());
+             var receiver = server.accept();
+             var selector = Selector.open()) {
+            var senderThread = Thread.ofPlatform().name("emetteur").start(() -> {
+                try {
+                    var source = encoded.duplicate();
+                    while (source.hasRemaining()) {
+                        sender.write(source);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Émetteur arrêté: " + e.getMessage());
+                }
+            });
+            receiver.configureBlocking(false);
+            receiver.register(selector, SelectionKey.OP_READ);
+            var reader = new PrivateFrameReader();
+            var bufferIn = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            var count = 0;
+            var start = System.nanoTime();
+            while (count < messages) {
+                selector.select();
+                selector.selectedKeys().clear();
+                while (receiver.read(bufferIn) > 0) {
+                    count += process(reader, bufferIn.flip());
+                    bufferIn.compact();
+                }
+            }
+            var elapsed = System.nanoTime() - start;
+            senderThread.join();
+            System.out.printf(Locale.ROOT, "Connexion locale   : %,.0f messages/s en %d ms%n",
+                    messages / (elapsed / 1e9), TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 0) {
+            System.err.println("Usage: java [-Dprivate.messages=N] [-Dprivate.textSize=N] "
+                    + "-cp chatvabien-loadgen.jar fr.upem.net.chatvabien.loadgen.PrivateMessageProbe");
+            return;
+        }
+        new PrivateMessageProbe(Integer.getInteger("private.messages", 1_000_000),
+                Integer.getInteger("private.textSize", 64)).run();
+    }
+}
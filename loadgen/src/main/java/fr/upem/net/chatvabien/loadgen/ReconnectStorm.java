@@ -0,0 +1,282 @@
+package fr.upem.net.chatvabien.loadgen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import fr.upem.net.chatvabien.protocol.*;
+import fr.upem.net.chatvabien.server.ChatVaBienServer;
+import fr.upem.net.chatvabien.server.ServerConfig;
+import fr.upem.net.chatvabien.server.ServerConfig.SlowConsumerPolicy;
+
+/**
+ * Compte les trames de présence reçues pendant une vague de reconnexions, pour chaque fenêtre de
+ * regroupement de {@code storm.windows}.
+ * <p>
+ * Pour chaque fenêtre, un serveur ChatVaBien est démarré dans ce processus et {@code storm.clients}
+ * clients s'y connectent (abonnés à la présence si {@code storm.subscribe} est vrai, sinon notifiés par
+ * messages). Une fois le trafic retombé, tous se déconnectent puis se reconnectent : les trames reçues
+ * jusqu'au retour au calme sont comptées, ainsi que celles abandonnées par le serveur pour clients lents.
+ * Sans regroupement (fenêtre 0), chaque arrivée ou départ est notifié à chaque client, soit de l'ordre
+ * de {@code 2 N²} trames.
+ * <p>
+ * Neuf clients sur dix se déconnectent ensuite, et un observateur s'abonne : l'état qu'il reçoit doit
+ * contenir exactement les clients restés, en pages compactées plutôt qu'en pages presque vides.
+ */
+public class ReconnectStorm {
+    private static final int BUFFER_SIZE = 4096;
+    private static final long QUIET_MILLIS = Long.getLong("storm.quietMillis", 1000);
+    private static final int KEPT_EVERY = 10;
+    private static final String OBSERVER = "observateur";
+
+    private static final class Client {
+        private final String login;
+        private final ByteBuffer bufferIn = ByteBuffer.allocate(BUFFER_SIZE);
+        private TrameReader trameReader = new TrameReader();
+        private SocketChannel sc;
+
+        Client(String login) {
+            this.login = login;
+        }
+    }
+
+    private final int clients;
+    private final boolean subscribe;
+    private long deltas;
+    private long notices;
+    private long other;
+    private long bytes;
+
+    public ReconnectStorm(int clients, boolean subscribe) {
+        if (clients < 1) {
+            throw new IllegalArgumentException("clients doit être >= 1: " + clients);
+        }
+        this.clients = clients;
+        this.subscribe = subscribe;
+    }
+
+    public void run(long windowMillis) throws IOException, InterruptedException {
+        var config = ServerConfig.fromSystemProperties().withPresenceWindowMillis(windowMillis);
+        var embedded = EmbeddedServer.start(config);
+        var server = embedded.server();
+        var address = embedded.address();
+        var population = new ArrayList<Client>(clients);
+        for (var i = 0; i < clients; i++) {
+            population.add(new Client("storm" + i));
+        }
+        try (var selector = Selector.open()) {
+            connectAll(population, address, selector);
+            drainUntilQuiet(selector);
+
+            var droppedBefore = dropped(server);
+            reset();
+            var start = System.nanoTime();
+            for (var client : population) {
+                client.sc.close();
+            }
+            selector.selectNow();
+            connectAll(population, address, selector);
+            drainUntilQuiet(selector);
+            var elapsed = System.nanoTime() - start - TimeUnit.MILLISECONDS.toNanos(QUIET_MILLIS);
+
+            System.out.printf(Locale.ROOT, "Fenêtre %4d ms : %,d trames USERS_DELTA, %,d avis MESSAGE, %,d autres "
+                            + "(%.1f par client, %.1f Mio) en %d ms, %,d abandonnées par le serveur%n",
+                    windowMillis, deltas, notices, other,
+                    (double) (deltas + notices) / clients, bytes / (1024.0 * 1024.0),
+                    TimeUnit.NANOSECONDS.toMillis(elapsed), dropped(server) - droppedBefore);
+
+            var kept = new HashSet<String>();
+            for (var i = 0; i < clients; i++) {
+                var client = population.get(i);
+                if (i % KEPT_EVERY == 0) {
+                    kept.add(client.login);
+                } else {
+                    client.sc.close();
+                    client.sc = null;
+                }
+            }
+            selector.selectNow();
+            drainUntilQuiet(selector);
+            checkSnapshot(address, kept, config.maxStringSize());
+        } finally {
+            for (var client : population) {
+                if (client.sc != null) {
+                    client.sc.close();
+                }
+            }
+            embedded.close();
+        }
+    }
+
+    /**
+     * Abonne un observateur et compare l'état reçu aux clients restés, et son nombre de pages à celui
+     * de pages pleines qui suffirait.
+     */
+    private static void checkSnapshot(InetSocketAddress address, Set<String> kept, int maxStringSize)
+            throws IOException {
+        var observer = new Client(OBSERVER);
+        var users = new HashSet<String>();
+        var pages = 0;
+        var duplicates = 0;
+        try (var sc = SocketChannel.open(address)) {
+            sc.write(Trame.clientMessage(OPCODE.LOGIN, OBSERVER, new LoginMessage()).toByteBuffer());
+            sc.write(Trame.clientMessage(OPCODE.SUBSCRIBE_USERS, OBSERVER, new SubscribeUsersMessage()).toByteBuffer());
+            var done = false;
+            while (!done) {
+                if (sc.read(observer.bufferIn) == -1) {
+                    throw new IOException("connexion fermée par le serveur");
+                }
+                observer.bufferIn.flip();
+                while (!done && observer.bufferIn.hasRemaining()) {
+                    var status = observer.trameReader.process(observer.bufferIn);
+                    if (status == Reader.ProcessStatus.REFILL) {
+                        break;
+                    }
+                    if (status == Reader.ProcessStatus.ERROR) {
+                        throw new IOException("trame invalide reçue par " + OBSERVER);
+                    }
+                    var trame = observer.trameReader.get();
+                    observer.trameReader.reset();
+                    switch (trame.message()) {
+                        case LimitsMessage limits -> observer.trameReader = new TrameReader(limits.maxStringSize());
+                        case UsersPageMessage page -> {
+                            pages++;
+                            for (var user : page.users()) {
+                                if (!users.add(user)) {
+                                    duplicates++;
+                                }
+                            }
+                        }
+                        // la première évolution termine l'état
+                        case UsersDeltaMessage delta -> done = true;
+                        default -> { }
+                    }
+                }
+                observer.bufferIn.compact();
+            }
+        }
+        // l'observateur lui-même n'est dans l'état que s'il a été publié avant son abonnement
+        users.remove(OBSERVER);
+        var bytes = 0L;
+        for (var user : kept) {
+            bytes += Integer.BYTES + user.getBytes(StandardCharsets.UTF_8).length;
+        }
+        var fullPages = (bytes + maxStringSize - Integer.BYTES - 1) / (maxStringSize - Integer.BYTES);
+        var coherent = duplicates == 0 && users.equals(kept) && pages <= 2 * fullPages;
+        System.out.printf(Locale.ROOT, "Après départ de %d clients sur %d : état de %,d pseudos en %,d pages "
+                        + "(%,d pages pleines suffiraient) (%s)%n",
+                KEPT_EVERY - 1, KEPT_EVERY, users.size(), pages, fullPages, coherent ? "cohérent" : "INCOHÉRENT");
+    }
+
+    private void connectAll(List<Client> population, InetSocketAddress address, Selector selector) throws IOException {
+        for (var client : population) {
+            client.sc = SocketChannel.open(address);
+            client.trameReader = new TrameReader();
+            client.bufferIn.clear();
+            var login = Trame.clientMessage(OPCODE.LOGIN, client.login, new LoginMessage()).toByteBuffer();
+            client.sc.write(login);
+            if (subscribe) {
+                client.sc.write(Trame.clientMessage(OPCODE.SUBSCRIBE_USERS, client.login, new SubscribeUsersMessage())
+                        .toByteBuffer());
+            }
+            client.sc.configureBlocking(false);
+            client.sc.register(selector, SelectionKey.OP_READ, client);
+            // les notifications sont lues au fil des connexions pour ne pas déclencher la politique des clients lents
+            selector.selectNow(this::read);
+        }
+    }
+
+    private void drainUntilQuiet(Selector selector) throws IOException {
+        var quietSince = System.nanoTime();
+        while (System.nanoTime() - quietSince < TimeUnit.MILLISECONDS.toNanos(QUIET_MILLIS)) {
+            if (selector.select(this::read, 50) > 0) {
+                quietSince = System.nanoTime();
+            }
+        }
+    }
+
+    private void read(SelectionKey key) {
+        var client = (Client) key.attachment();
+        try {
+            var read = client.sc.read(client.bufferIn);
+            if (read == -1) {
+                key.cancel();
+                return;
+            }
+            bytes += read;
+        } catch (IOException e) {
+            key.cancel();
+            return;
+        }
+        client.bufferIn.flip();
+        while (client.bufferIn.hasRemaining()) {
+            var status = client.trameReader.process(client.bufferIn);
+            if (status == Reader.ProcessStatus.REFILL) {
+                break;
+            }
+            if (status == Reader.ProcessStatus.ERROR) {
+                System.err.println("Trame invalide reçue par " + client.login);
+                key.cancel();
+                return;
+            }
+            var trame = client.trameReader.get();
+            client.trameReader.reset();
+            count(client, trame);
+        }
+        client.bufferIn.compact();
+    }
+
+    private void count(Client client, Trame trame) {
+        switch (trame.opcode()) {
+            case USERS_DELTA -> deltas++;
+            case MESSAGE -> {
+                if (trame.sender().equals("Server")) {
+                    notices++;
+                } else {
+                    other++;
+                }
+            }
+            case LIMITS -> client.trameReader = new TrameReader(((LimitsMessage) trame.message()).maxStringSize());
+            default -> other++;
+        }
+    }
+
+    private void reset() {
+        deltas = 0;
+        notices = 0;
+        other = 0;
+        bytes = 0;
+    }
+
+    private static long dropped(ChatVaBienServer server) {
+        return Arrays.stream(SlowConsumerPolicy.values()).mapToLong(server::droppedFrames).sum();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 0) {
+            System.err.println("Usage: java [-Dstorm.clients=N] [-Dstorm.windows=0,100] [-Dstorm.subscribe=false] "
+                    + "-cp chatvabien-loadgen.jar fr.upem.net.chatvabien.loadgen.ReconnectStorm");
+            return;
+        }
+        for (var category : List.of("server", "connection", "auth", "flow")) {
+            var property = "chatvabien.log." + category;
+            System.setProperty(property, System.getProperty(property, "WARNING"));
+        }
+        var storm = new ReconnectStorm(Integer.getInteger("storm.clients", 10_000),
+                Boolean.parseBoolean(System.getProperty("storm.subscribe", "true")));
+        for (var window : System.getProperty("storm.windows", "0,100").split(",")) {
+            storm.run(Long.parseLong(window.trim()));
+        }
+    }
+}
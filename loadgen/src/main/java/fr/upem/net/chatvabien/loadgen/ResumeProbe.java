@@ -0,0 +1,269 @@
+package fr.upem.net.chatvabien.loadgen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import fr.upem.net.chatvabien.protocol.*;
+import fr.upem.net.chatvabien.server.ServerConfig;
+import fr.upem.net.chatvabien.server.ServerConfig.SlowConsumerPolicy;
+
+/**
+ * Vérifie et mesure la reprise des messages publics manqués pendant une déconnexion, pour chaque
+ * taille d'historique de {@code resume.historyBytes}.
+ * <p>
+ * Pour chaque taille, un serveur ChatVaBien est démarré dans ce processus. Un lecteur s'identifie,
+ * obtient sa position par RESUME puis se déconnecte ; un émetteur envoie alors {@code resume.messages}
+ * messages publics. Le lecteur se reconnecte en demandant les messages suivant sa position : les
+ * messages renvoyés, ceux annoncés perdus et la position finale sont comparés aux messages envoyés.
+ * <p>
+ * Une dernière reprise a lieu sous la politique {@link SlowConsumerPolicy#DROP_OLDEST} avec une file de
+ * sortie de {@value #BROADCAST_QUEUE_FRAMES} trames, pendant que {@code resume.broadcast} messages sont
+ * diffusés et que le lecteur tarde à lire : les messages diffusés peuvent être abandonnés, mais chaque
+ * message manqué doit être renvoyé ou annoncé perdu, et la position finale doit tenir compte de tous.
+ */
+public class ResumeProbe {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long TIMEOUT_MILLIS = Long.getLong("resume.timeoutMillis", 10_000);
+    private static final int BROADCAST_QUEUE_FRAMES = 64;
+    // de quoi garder les messages à renvoyer malgré la diffusion qui précède la reprise
+    private static final long BROADCAST_HISTORY_BYTES = 32 << 20;
+    private static final long QUIET_MILLIS = 1000;
+    // des messages diffusés assez gros pour que la moitié d'entre eux déborde les tampons du noyau et
+    // remplisse la file de sortie avant la reprise
+    private static final String BROADCAST_PADDING = "x".repeat(900);
+
+    private final int messages;
+
+    private SocketChannel sc;
+    private final ByteBuffer bufferIn = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private TrameReader trameReader = new TrameReader();
+
+    public ResumeProbe(int messages) {
+        if (messages < 1) {
+            throw new IllegalArgumentException("messages doit être >= 1: " + messages);
+        }
+        this.messages = messages;
+    }
+
+    public void run(long historyBytes) throws IOException, InterruptedException {
+        var embedded = EmbeddedServer.start(ServerConfig.fromSystemProperties().withHistoryBytes(historyBytes));
+        var address = embedded.address();
+        try (var sender = SocketChannel.open(address)) {
+            sender.write(Trame.clientMessage(OPCODE.LOGIN, "emetteur", new LoginMessage()).toByteBuffer());
+            var first = connect(address, ResumeMessage.NO_EPOCH, -1);
+            var position = first.position;
+            sc.close();
+
+            for (var i = 0; i < messages; i++) {
+                var buffer = Trame.clientMessage(OPCODE.MESSAGE, "emetteur", new PublicMessage("message " + i))
+                        .toByteBuffer();
+                while (buffer.hasRemaining()) {
+                    sender.write(buffer);
+                }
+            }
+            // le dernier message est enregistré avant que la reconnexion ne soit traitée
+            TimeUnit.MILLISECONDS.sleep(500);
+
+            var start = System.nanoTime();
+            var resumed = connect(address, first.epoch, position);
+            var elapsed = System.nanoTime() - start;
+            sc.close();
+            var coherent = resumed.position == position + messages && resumed.replayed + resumed.lost == messages;
+            System.out.printf(Locale.ROOT, "Historique %,d octets : %,d/%,d messages renvoyés, %,d perdus, "
+                            + "position %d -> %d en %d ms (%s)%n",
+                    historyBytes, resumed.replayed, messages, resumed.lost, position, resumed.position,
+                    TimeUnit.NANOSECONDS.toMillis(elapsed), coherent ? "cohérent" : "INCOHÉRENT");
+        } finally {
+            embedded.close();
+        }
+    }
+
+    /**
+     * Reprise pendant une diffusion de {@code broadcast} messages, sous la politique DROP_OLDEST.
+     */
+    public void runUnderBroadcast(int broadcast) throws IOException, InterruptedException {
+        var config = ServerConfig.fromSystemProperties()
+                .withHistoryBytes(BROADCAST_HISTORY_BYTES)
+                .withOutputQueue(1 << 20, BROADCAST_QUEUE_FRAMES, SlowConsumerPolicy.DROP_OLDEST);
+        var embedded = EmbeddedServer.start(config);
+        var address = embedded.address();
+        try (var sender = SocketChannel.open(address)) {
+            sender.write(Trame.clientMessage(OPCODE.LOGIN, "emetteur", new LoginMessage()).toByteBuffer());
+            var first = connect(address, ResumeMessage.NO_EPOCH, -1);
+            var position = first.position;
+            sc.close();
+            send(sender, "message ", 0, messages);
+            TimeUnit.MILLISECONDS.sleep(500);
+
+            // le lecteur se reconnecte sans lire : la diffusion remplit sa file avant la reprise, puis
+            // continue derrière l'historique renvoyé
+            sc = SocketChannel.open();
+            sc.setOption(StandardSocketOptions.SO_RCVBUF, 4096);
+            sc.connect(address);
+            sc.write(Trame.clientMessage(OPCODE.LOGIN, "lecteur", new LoginMessage()).toByteBuffer());
+            TimeUnit.MILLISECONDS.sleep(100);
+            send(sender, BROADCAST_PADDING + "diffusion ", 0, broadcast / 2);
+            TimeUnit.MILLISECONDS.sleep(100);
+            sc.write(Trame.clientMessage(OPCODE.RESUME, "lecteur", new ResumeMessage(first.epoch, position))
+                    .toByteBuffer());
+            TimeUnit.MILLISECONDS.sleep(100);
+            send(sender, BROADCAST_PADDING + "diffusion ", broadcast / 2, broadcast - broadcast / 2);
+            TimeUnit.MILLISECONDS.sleep(500);
+
+            var replayed = new BitSet(messages);
+            var delivered = 0L;
+            var lost = 0L;
+            var reached = -1L;
+            var count = false;
+            bufferIn.clear();
+            trameReader = new TrameReader();
+            var quietSince = System.nanoTime();
+            while (System.nanoTime() - quietSince < TimeUnit.MILLISECONDS.toNanos(QUIET_MILLIS)) {
+                sc.configureBlocking(false);
+                var read = sc.read(bufferIn);
+                if (read == -1) {
+                    throw new IOException("connexion fermée par le serveur");
+                }
+                if (read == 0) {
+                    TimeUnit.MILLISECONDS.sleep(1);
+                    continue;
+                }
+                quietSince = System.nanoTime();
+                bufferIn.flip();
+                while (bufferIn.hasRemaining()) {
+                    var status = trameReader.process(bufferIn);
+                    if (status == Reader.ProcessStatus.REFILL) {
+                        break;
+                    }
+                    if (status == Reader.ProcessStatus.ERROR) {
+                        throw new IOException("trame invalide reçue");
+                    }
+                    var trame = trameReader.get();
+                    trameReader.reset();
+                    switch (trame.message()) {
+                        // comme le client : la position suit chaque RESUME, puis chaque message public reçu
+                        case ResumeMessage resume -> {
+                            reached = resume.sequence();
+                            count = true;
+                        }
+                        case LimitsMessage limits -> trameReader = new TrameReader(limits.maxStringSize());
+                        case PublicMessage notice when trame.sender().equals("Server") -> {
+                            if (notice.text().endsWith("trop anciens pour être renvoyés")) {
+                                lost = Long.parseLong(notice.text().substring(0, notice.text().indexOf(' ')));
+                            }
+                        }
+                        case PublicMessage message -> {
+                            if (message.text().startsWith("message ")) {
+                                replayed.set(Integer.parseInt(message.text().substring("message ".length())));
+                            } else {
+                                delivered++;
+                            }
+                            if (count) {
+                                reached++;
+                            }
+                        }
+                        default -> { }
+                    }
+                }
+                bufferIn.compact();
+            }
+            sc.close();
+            var expected = position + messages + broadcast;
+            var coherent = replayed.cardinality() + lost == messages
+                    && replayed.nextSetBit(0) == (int) lost && reached == expected;
+            System.out.printf(Locale.ROOT, "Reprise sous diffusion (DROP_OLDEST, %d trames) : %,d/%,d messages "
+                            + "renvoyés, %,d perdus, %,d/%,d diffusés reçus, position %d attendue %d (%s)%n",
+                    BROADCAST_QUEUE_FRAMES, replayed.cardinality(), messages, lost, delivered, broadcast,
+                    reached, expected, coherent ? "cohérent" : "INCOHÉRENT");
+        } finally {
+            embedded.close();
+        }
+    }
+
+    private static void send(SocketChannel sender, String prefix, int from, int count) throws IOException {
+        for (var i = from; i < from + count; i++) {
+            var buffer = Trame.clientMessage(OPCODE.MESSAGE, "emetteur", new PublicMessage(prefix + i))
+                    .toByteBuffer();
+            while (buffer.hasRemaining()) {
+                sender.write(buffer);
+            }
+        }
+    }
+
+    private static final class Resumed {
+        private long epoch;
+        private long position = -1;
+        private long replayed;
+        private long lost;
+    }
+
+    /**
+     * Identifie le lecteur en demandant les messages suivant {@code after} de l'époque {@code epoch}, et lit jusqu'à la réponse RESUME.
+     */
+    private Resumed connect(InetSocketAddress address, long epoch, long after) throws IOException {
+        sc = SocketChannel.open(address);
+        bufferIn.clear();
+        trameReader = new TrameReader();
+        sc.write(Trame.clientMessage(OPCODE.LOGIN, "lecteur", new LoginMessage()).toByteBuffer());
+        sc.write(Trame.clientMessage(OPCODE.RESUME, "lecteur", new ResumeMessage(epoch, after)).toByteBuffer());
+        var resumed = new Resumed();
+        var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        while (resumed.position < 0 && System.nanoTime() < deadline) {
+            if (sc.read(bufferIn) == -1) {
+                throw new IOException("connexion fermée par le serveur");
+            }
+            bufferIn.flip();
+            while (resumed.position < 0 && bufferIn.hasRemaining()) {
+                var status = trameReader.process(bufferIn);
+                if (status == Reader.ProcessStatus.REFILL) {
+                    break;
+                }
+                if (status == Reader.ProcessStatus.ERROR) {
+                    throw new IOException("trame invalide reçue");
+                }
+                var trame = trameReader.get();
+                trameReader.reset();
+                switch (trame.message()) {
+                    case ResumeMessage resume -> {
+                        resumed.epoch = resume.epoch();
+                        resumed.position = resume.sequence();
+                    }
+                    case LimitsMessage limits -> trameReader = new TrameReader(limits.maxStringSize());
+                    case PublicMessage notice when trame.sender().equals("Server") -> {
+                        if (notice.text().endsWith("trop anciens pour être renvoyés")) {
+                            resumed.lost = Long.parseLong(notice.text().substring(0, notice.text().indexOf(' ')));
+                        }
+                    }
+                    case PublicMessage message -> resumed.replayed++;
+                    default -> { }
+                }
+            }
+            bufferIn.compact();
+        }
+        return resumed;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 0) {
+            System.err.println("Usage: java [-Dresume.messages=N] [-Dresume.historyBytes=0,65536,1048576] "
+                    + "[-Dresume.broadcast=N] -cp chatvabien-loadgen.jar fr.upem.net.chatvabien.loadgen.ResumeProbe");
+            return;
+        }
+        for (var category : List.of("server", "connection", "auth", "flow", "users")) {
+            var property = "chatvabien.log." + category;
+            System.setProperty(property, System.getProperty(property, "WARNING"));
+        }
+        var probe = new ResumeProbe(Integer.getInteger("resume.messages", 10_000));
+        for (var historyBytes : System.getProperty("resume.historyBytes", "0,65536,1048576").split(",")) {
+            probe.run(Long.parseLong(historyBytes.trim()));
+        }
+        probe.runUnderBroadcast(Integer.getInteger("resume.broadcast", 20_000));
+    }
+}
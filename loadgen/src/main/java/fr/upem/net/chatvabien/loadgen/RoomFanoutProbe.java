@@ -0,0 +1,201 @@
+package fr.upem.net.chatvabien.loadgen;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import fr.upem.net.chatvabien.protocol.*;
+import fr.upem.net.chatvabien.server.ChatVaBienServer;
+import fr.upem.net.chatvabien.server.ServerConfig;
+
+/**
+ * Compare le coût d'un message public et d'un message de salon pour le serveur ChatVaBien.
+ * <p>
+ * Un serveur est démarré dans ce processus et {@code fanout.clients} clients s'y identifient, répartis
+ * dans {@code fanout.rooms} salons. Chaque client envoie ensuite {@code fanout.messages} messages,
+ * d'abord publics puis à son salon : le nombre de trames mises en file par le serveur et la durée de
+ * livraison sont rapportés au nombre de messages envoyés. Un message public coûte une trame par
+ * connecté, un message de salon une trame par membre du salon.
+ */
+public class RoomFanoutProbe {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long TIMEOUT_MILLIS = Long.getLong("fanout.timeoutMillis", 30_000);
+
+    private static final class Client {
+        private final String login;
+        private final String room;
+        private final ByteBuffer bufferIn = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private TrameReader trameReader = new TrameReader();
+        private SocketChannel sc;
+
+        Client(String login, String room) {
+            this.login = login;
+            this.room = room;
+        }
+    }
+
+    private final int clients;
+    private final int rooms;
+    private final int messages;
+    private long received;
+    private long joined;
+
+    public RoomFanoutProbe(int clients, int rooms, int messages) {
+        if (clients < 1 || rooms < 1 || rooms > clients || messages < 1) {
+            throw new IllegalArgumentException("paramètres invalides: clients=" + clients + ", rooms=" + rooms
+                    + ", messages=" + messages);
+        }
+        this.clients = clients;
+        this.rooms = rooms;
+        this.messages = messages;
+    }
+
+    public void run() throws IOException, InterruptedException {
+        var embedded = EmbeddedServer.start(ServerConfig.fromSystemProperties());
+        var server = embedded.server();
+        var address = embedded.address();
+        var population = new ArrayList<Client>(clients);
+        try (var selector = Selector.open()) {
+            for (var i = 0; i < clients; i++) {
+                var client = new Client("fanout" + i, "salon" + (i % rooms));
+                client.sc = SocketChannel.open(address);
+                client.sc.write(Trame.clientMessage(OPCODE.LOGIN, client.login, new LoginMessage()).toByteBuffer());
+                client.sc.write(Trame.clientMessage(OPCODE.JOIN_ROOM, client.login, new JoinRoomMessage(client.room))
+                        .toByteBuffer());
+                client.sc.configureBlocking(false);
+                client.sc.register(selector, SelectionKey.OP_READ, client);
+                population.add(client);
+                selector.selectNow(this::read);
+            }
+            awaitReceived(selector, () -> joined, clients);
+            // arrivées et notifications de présence écoulées avant la mesure
+            drainUntilQuiet(selector, 500);
+            System.out.printf(Locale.ROOT, "%,d clients répartis dans %,d salons%n", clients, server.roomCount());
+
+            measure("public", server, population, selector, (long) clients * messages * clients,
+                    client -> Trame.clientMessage(OPCODE.MESSAGE, client.login,
+                            new PublicMessage("message public de " + client.login)));
+            // chaque membre d'un salon reçoit les messages de tous les membres
+            var roomDeliveries = 0L;
+            for (var room = 0; room < rooms; room++) {
+                var members = clients / rooms + (room < clients % rooms ? 1 : 0);
+                roomDeliveries += (long) members * members;
+            }
+            measure("salon", server, population, selector, roomDeliveries * messages,
+                    client -> Trame.clientMessage(OPCODE.ROOM_MESSAGE, client.login,
+                            new RoomMessage(client.room, "message de salon de " + client.login)));
+        } finally {
+            for (var client : population) {
+                client.sc.close();
+            }
+            embedded.close();
+        }
+    }
+
+    private interface TrameFactory {
+        Trame create(Client client);
+    }
+
+    private interface Counter {
+        long value();
+    }
+
+    private void measure(String label, ChatVaBienServer server, List<Client> population, Selector selector,
+                         long expected, TrameFactory factory) throws IOException {
+        received = 0;
+        var framesBefore = server.queuedFrames();
+        var start = System.nanoTime();
+        for (var i = 0; i < messages; i++) {
+            for (var client : population) {
+                var buffer = factory.create(client).toByteBuffer();
+                while (buffer.hasRemaining()) {
+                    client.sc.write(buffer);
+                }
+            }
+            selector.selectNow(this::read);
+        }
+        awaitReceived(selector, () -> received, expected);
+        var elapsed = System.nanoTime() - start;
+        var frames = server.queuedFrames() - framesBefore;
+        var sent = (double) clients * messages;
+        System.out.printf(Locale.ROOT, "%-6s : %,d/%,d trames livrées en %d ms, %.1f trames mises en file "
+                        + "et %.1f µs par message envoyé%n",
+                label, received, expected, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                frames / sent, elapsed / 1000.0 / sent);
+    }
+
+    private void awaitReceived(Selector selector, Counter counter, long expected) throws IOException {
+        var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        while (counter.value() < expected && System.nanoTime() < deadline) {
+            selector.select(this::read, 50);
+        }
+    }
+
+    private void drainUntilQuiet(Selector selector, long quietMillis) throws IOException {
+        var quietSince = System.nanoTime();
+        while (System.nanoTime() - quietSince < TimeUnit.MILLISECONDS.toNanos(quietMillis)) {
+            if (selector.select(this::read, 50) > 0) {
+                quietSince = System.nanoTime();
+            }
+        }
+    }
+
+    private void read(SelectionKey key) {
+        var client = (Client) key.attachment();
+        try {
+            if (client.sc.read(client.bufferIn) == -1) {
+                key.cancel();
+                return;
+            }
+        } catch (IOException e) {
+            key.cancel();
+            return;
+        }
+        client.bufferIn.flip();
+        while (client.bufferIn.hasRemaining()) {
+            var status = client.trameReader.process(client.bufferIn);
+            if (status == Reader.ProcessStatus.REFILL) {
+                break;
+            }
+            if (status == Reader.ProcessStatus.ERROR) {
+                System.err.println("Trame invalide reçue par " + client.login);
+                key.cancel();
+                return;
+            }
+            var trame = client.trameReader.get();
+            client.trameReader.reset();
+            switch (trame.opcode()) {
+                case MESSAGE -> {
+                    if (!trame.sender().equals("Server")) {
+                        received++;
+                    }
+                }
+                case ROOM_MESSAGE -> received++;
+                case JOIN_ROOM -> joined++;
+                case LIMITS -> client.trameReader = new TrameReader(((LimitsMessage) trame.message()).maxStringSize());
+                default -> { }
+            }
+        }
+        client.bufferIn.compact();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 0) {
+            System.err.println("Usage: java [-Dfanout.clients=N] [-Dfanout.rooms=N] [-Dfanout.messages=N] "
+                    + "-cp chatvabien-loadgen.jar fr.upem.net.chatvabien.loadgen.RoomFanoutProbe");
+            return;
+        }
+        for (var category : List.of("server", "connection", "auth", "flow")) {
+            var property = "chatvabien.log." + category;
+            System.setProperty(property, System.getProperty(property, "WARNING"));
+        }
+        new RoomFanoutProbe(Integer.getInteger("fanout.clients", 1000), Integer.getInteger("fanout.rooms", 50),
+                Integer.getInteger("fanout.messages", 5)).run();
+    }
+}
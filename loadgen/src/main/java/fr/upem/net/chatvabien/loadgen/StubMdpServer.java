@@ -0,0 +1,150 @@
+package fr.upem.net.chatvabien.loadgen;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serveur MDP de substitution, compatible avec {@code ServerMDP.jar}, pour éprouver le client MDP du serveur.
+ * <p>
+ * Répond aux demandes AUTH (1) et LOGIN (2) d'après un fichier {@code login$motdepasse}, ou accepte
+ * tout mot de passe égal au login si aucun fichier n'est donné. Les propriétés système suivantes
+ * simulent un serveur MDP dégradé :
+ * <ul>
+ *     <li>{@code stubmdp.delayMillis} : délai avant chaque réponse (les réponses restent concurrentes) ;</li>
+ *     <li>{@code stubmdp.split} : chaque réponse est écrite en deux fois, au milieu de l'id ;</li>
+ *     <li>{@code stubmdp.dropEvery} : une demande sur N reste sans réponse ;</li>
+ *     <li>{@code stubmdp.closeAfter} : la connexion est fermée après N demandes.</li>
+ * </ul>
+ */
+public class StubMdpServer {
+    private static final byte AUTH = 1;
+    private static final byte LOGIN = 2;
+    private static final int MAX_STRING_SIZE = 1024;
+
+    private final int port;
+    private final Map<String, String> passwords;
+    private final long delayMillis = Long.getLong("stubmdp.delayMillis", 0);
+    private final boolean split = Boolean.getBoolean("stubmdp.split");
+    private final long dropEvery = Long.getLong("stubmdp.dropEvery", 0);
+    private final long closeAfter = Long.getLong("stubmdp.closeAfter", 0);
+    private final AtomicLong requests = new AtomicLong();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    public StubMdpServer(int port, Map<String, String> passwords) {
+        this.port = port;
+        this.passwords = passwords;
+    }
+
+    public void serve() throws IOException {
+        try (var server = new ServerSocket(port)) {
+            System.out.println("Serveur MDP de substitution sur le port " + port);
+            while (true) {
+                var socket = server.accept();
+                Thread.ofPlatform().name("stubmdp-" + socket.getPort()).start(() -> handle(socket));
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (socket) {
+            var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            var out = socket.getOutputStream();
+            var handled = 0L;
+            while (closeAfter == 0 || handled < closeAfter) {
+                var type = in.readByte();
+                var id = in.readLong();
+                var login = readString(in);
+                var accepted = switch (type) {
+                    case AUTH -> {
+                        var password = readString(in);
+                        yield passwords == null ? login.equals(password) : password.equals(passwords.get(login));
+                    }
+                    case LOGIN -> passwords == null || passwords.containsKey(login);
+                    default -> throw new IOException("demande inconnue: " + type);
+                };
+                handled++;
+                if (dropEvery > 0 && requests.incrementAndGet() % dropEvery == 0) {
+                    continue;
+                }
+                respond(out, accepted, id);
+            }
+        } catch (EOFException e) {
+            // fermeture par le client
+        } catch (IOException e) {
+            System.err.println("Connexion MDP fermée: " + e.getMessage());
+        }
+    }
+
+    private void respond(OutputStream out, boolean accepted, long id) {
+        var response = ByteBuffer.allocate(Byte.BYTES + Long.BYTES).put((byte) (accepted ? 1 : 0)).putLong(id).array();
+        Runnable write = () -> {
+            try {
+                synchronized (out) {
+                    if (split) {
+                        out.write(response, 0, 5);
+                        out.flush();
+                        out.write(response, 5, response.length - 5);
+                    } else {
+                        out.write(response);
+                    }
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // connexion déjà fermée
+            }
+        };
+        if (delayMillis > 0) {
+            scheduler.schedule(write, delayMillis, TimeUnit.MILLISECONDS);
+        } else {
+            write.run();
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        var size = in.readInt();
+        if (size < 0 || size > MAX_STRING_SIZE) {
+            throw new IOException("chaîne invalide: " + size + " octets");
+        }
+        var bytes = in.readNBytes(size);
+        if (bytes.length < size) {
+            throw new EOFException();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> readPasswords(Path file) throws IOException {
+        var passwords = new HashMap<String, String>();
+        for (var line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            var separator = line.indexOf('$');
+            if (separator > 0) {
+                passwords.put(line.substring(0, separator), line.substring(separator + 1));
+            }
+        }
+        return passwords;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java [-Dstubmdp.delayMillis=N ...] StubMdpServer <port> [passwords.txt]");
+            return;
+        }
+
+        var passwords = args.length == 2 ? readPasswords(Path.of(args[1])) : null;
+        new StubMdpServer(Integer.parseInt(args[0]), passwords).serve();
+    }
+}
@@ -0,0 +1,202 @@
+package fr.upem.net.chatvabien.loadgen;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import fr.upem.net.chatvabien.protocol.*;
+import fr.upem.net.chatvabien.server.ChatVaBienServer;
+import fr.upem.net.chatvabien.server.ServerConfig;
+
+/**
+ * Compte les appels système d'écriture du serveur par message diffusé, pour chaque délai
+ * d'accumulation de {@code probe.delays} (en microsecondes).
+ * <p>
+ * Pour chaque délai, un serveur ChatVaBien est démarré dans ce processus et {@code probe.clients}
+ * clients s'y identifient. Pendant {@code probe.rounds} tours, {@code probe.senders} d'entre eux
+ * envoient chacun une rafale de {@code probe.burst} messages publics, puis tous lisent jusqu'à avoir
+ * reçu l'ensemble des diffusions. Les compteurs du serveur (écritures, changements d'intérêt
+ * OP_WRITE, sélections) sont rapportés au nombre de trames livrées.
+ */
+public class SyscallProbe {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long TIMEOUT_MILLIS = Long.getLong("probe.timeoutMillis", 10_000);
+
+    private record Counters(long writes, long interestChanges, long selects) {
+        static Counters of(ChatVaBienServer server) {
+            return new Counters(server.writeCalls(), server.interestOpsChanges(), server.selectCalls());
+        }
+
+        Counters minus(Counters other) {
+            return new Counters(writes - other.writes, interestChanges - other.interestChanges, selects - other.selects);
+        }
+    }
+
+    private static final class Client {
+        private final String login;
+        private final ByteBuffer bufferIn = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private TrameReader trameReader = new TrameReader();
+        private SocketChannel sc;
+
+        Client(String login) {
+            this.login = login;
+        }
+    }
+
+    private final int clients;
+    private final int senders;
+    private final int burst;
+    private final int rounds;
+    private long received;
+
+    public SyscallProbe(int clients, int senders, int burst, int rounds) {
+        if (clients < 1 || senders < 1 || senders > clients || burst < 1 || rounds < 1) {
+            throw new IllegalArgumentException("paramètres invalides: clients=" + clients + ", senders=" + senders
+                    + ", burst=" + burst + ", rounds=" + rounds);
+        }
+        this.clients = clients;
+        this.senders = senders;
+        this.burst = burst;
+        this.rounds = rounds;
+    }
+
+    public void run(long delayMicros) throws IOException, InterruptedException {
+        var embedded = EmbeddedServer.start(ServerConfig.fromSystemProperties().withFlushDelayMicros(delayMicros));
+        var server = embedded.server();
+        var address = embedded.address();
+        var population = new ArrayList<Client>(clients);
+        try (var selector = Selector.open()) {
+            for (var i = 0; i < clients; i++) {
+                var client = new Client("probe" + i);
+                client.sc = SocketChannel.open(address);
+                client.sc.write(Trame.clientMessage(OPCODE.LOGIN, client.login, new LoginMessage()).toByteBuffer());
+                client.sc.configureBlocking(false);
+                client.sc.register(selector, SelectionKey.OP_READ, client);
+                population.add(client);
+                selector.selectNow(this::read);
+            }
+            // arrivées et notifications de présence écoulées avant la mesure
+            drainUntilQuiet(selector, 500);
+
+            var before = Counters.of(server);
+            received = 0;
+            var expected = (long) rounds * senders * burst * clients;
+            var start = System.nanoTime();
+            for (var round = 0; round < rounds; round++) {
+                for (var s = 0; s < senders; s++) {
+                    var sender = population.get(s);
+                    var frames = burstOf(sender.login, round);
+                    while (frames.hasRemaining()) {
+                        sender.sc.write(frames);
+                    }
+                }
+                var target = (long) (round + 1) * senders * burst * clients;
+                var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+                while (received < target && System.nanoTime() < deadline) {
+                    selector.select(this::read, 50);
+                }
+            }
+            var elapsed = System.nanoTime() - start;
+            var delta = Counters.of(server).minus(before);
+            var messages = (double) Math.max(1, received);
+
+            System.out.printf(Locale.ROOT, "Délai %5d µs : %,d/%,d trames livrées en %d ms, %,d écritures, "
+                            + "%,d changements d'intérêt, %,d sélections ; par trame : %.4f écritures, "
+                            + "%.4f changements d'intérêt, %.4f sélections%n",
+                    delayMicros, received, expected, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                    delta.writes(), delta.interestChanges(), delta.selects(),
+                    delta.writes() / messages, delta.interestChanges() / messages, delta.selects() / messages);
+        } finally {
+            for (var client : population) {
+                client.sc.close();
+            }
+            embedded.close();
+        }
+    }
+
+    private ByteBuffer burstOf(String login, int round) {
+        var trames = new ArrayList<ByteBuffer>(burst);
+        var size = 0;
+        for (var i = 0; i < burst; i++) {
+            var text = "tour " + round + " message " + i + " de " + login;
+            var trame = Trame.clientMessage(OPCODE.MESSAGE, login, new PublicMessage(text)).toByteBuffer();
+            size += trame.remaining();
+            trames.add(trame);
+        }
+        var frames = ByteBuffer.allocateDirect(size);
+        for (var trame : trames) {
+            frames.put(trame);
+        }
+        return frames.flip();
+    }
+
+    private void drainUntilQuiet(Selector selector, long quietMillis) throws IOException {
+        var quietSince = System.nanoTime();
+        while (System.nanoTime() - quietSince < TimeUnit.MILLISECONDS.toNanos(quietMillis)) {
+            if (selector.select(this::read, 50) > 0) {
+                quietSince = System.nanoTime();
+            }
+        }
+    }
+
+    private void read(SelectionKey key) {
+        var client = (Client) key.attachment();
+        try {
+            if (client.sc.read(client.bufferIn) == -1) {
+                key.cancel();
+                return;
+            }
+        } catch (IOException e) {
+            key.cancel();
+            return;
+        }
+        client.bufferIn.flip();
+        while (client.bufferIn.hasRemaining()) {
+            var status = client.trameReader.process(client.bufferIn);
+            if (status == Reader.ProcessStatus.REFILL) {
+                break;
+            }
+            if (status == Reader.ProcessStatus.ERROR) {
+                System.err.println("Trame invalide reçue par " + client.login);
+                key.cancel();
+                return;
+            }
+            var trame = client.trameReader.get();
+            client.trameReader.reset();
+            switch (trame.opcode()) {
+                case MESSAGE -> {
+                    if (!trame.sender().equals("Server")) {
+                        received++;
+                    }
+                }
+                case LIMITS -> client.trameReader = new TrameReader(((LimitsMessage) trame.message()).maxStringSize());
+                default -> { }
+            }
+        }
+        client.bufferIn.compact();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 0) {
+            System.err.println("Usage: java [-Dprobe.clients=N] [-Dprobe.senders=N] [-Dprobe.burst=N] "
+                    + "[-Dprobe.rounds=N] [-Dprobe.delays=0,200] "
+                    + "-cp chatvabien-loadgen.jar fr.upem.net.chatvabien.loadgen.SyscallProbe");
+            return;
+        }
+        for (var category : List.of("server", "connection", "auth", "flow")) {
+            var property = "chatvabien.log." + category;
+            System.setProperty(property, System.getProperty(property, "WARNING"));
+        }
+        var probe = new SyscallProbe(Integer.getInteger("probe.clients", 200), Integer.getInteger("probe.senders", 10),
+                Integer.getInteger("probe.burst", 10), Integer.getInteger("probe.rounds", 200));
+        for (var delay : System.getProperty("probe.delays", "0,200").split(",")) {
+            probe.run(Long.parseLong(delay.trim()));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pool of direct {@link ByteBuffer}s grouped in power-of-two size classes.
+ * <p>
+ * Buffers are carved out of larger direct slabs, so that a connection can borrow a buffer only
+ * while it has bytes in flight and give it back as soon as they have been consumed, instead of
+ * owning one for its whole lifetime. Each size class keeps at most {@code maxIdlePerClass}
+ * released buffers; further releases are left to the garbage collector.
+ * <p>
+ * This class is not thread-safe: a pool must only be used by the thread owning its connections,
+ * typically one pool per selector thread.
+ */
+public final class BufferPool {
+    private final int minShift;
+    private final int maxShift;
+    private final int slabSize;
+    private final int maxIdlePerClass;
+    private final List<ArrayDeque<ByteBuffer>> idle;
+    private long allocatedBytes;
+    private int borrowed;
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param minSize         the capacity of the smallest size class, a power of two
+     * @param maxSize         the capacity of the largest size class, a power of two
+     * @param slabSize        the size of the direct slabs buffers are carved from; classes larger
+     *                        than a slab get a slab of their own
+     * @param maxIdlePerClass the maximum number of released buffers kept for reuse in each class
+     */
+    public BufferPool(int minSize, int maxSize, int slabSize, int maxIdlePerClass) {
+        if (minSize < 1 || Integer.bitCount(minSize) != 1 || maxSize < minSize || Integer.bitCount(maxSize) != 1) {
+            throw new IllegalArgumentException("size classes must be powers of two: " + minSize + ", " + maxSize);
+        }
+        if (slabSize < 1 || maxIdlePerClass < 0) {
+            throw new IllegalArgumentException("invalid slab size or idle bound: " + slabSize + ", " + maxIdlePerClass);
+        }
+        this.minShift = Integer.numberOfTrailingZeros(minSize);
+        this.maxShift = Integer.numberOfTrailingZeros(maxSize);
+        this.slabSize = slabSize;
+        this.maxIdlePerClass = maxIdlePerClass;
+        this.idle = new ArrayList<>(maxShift - minShift + 1);
+        for (var shift = minShift; shift <= maxShift; shift++) {
+            idle.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Borrows a cleared direct buffer of at least {@code size} bytes. Its capacity is the
+     * smallest size class holding {@code size} bytes.
+     *
+     * @param size the minimum capacity
+     * @return a buffer in write mode, to be given back with {@link #release(ByteBuffer)}
+     * @throws IllegalArgumentException if {@code size} exceeds the largest size class
+     */
+    public ByteBuffer acquire(int size) {
+        var sizeClass = sizeClass(size);
+        var buffer = idle.get(sizeClass).poll();
+        if (buffer == null) {
+            buffer = carve(sizeClass);
+        }
+        borrowed++;
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer obtained from {@link #acquire(int)} back to the pool. The buffer must no
+     * longer be used by the caller.
+     *
+     * @param buffer the buffer to release
+     */
+    public void release(ByteBuffer buffer) {
+        var capacity = buffer.capacity();
+        var sizeClass = Integer.numberOfTrailingZeros(capacity) - minShift;
+        if (Integer.bitCount(capacity) != 1 || sizeClass < 0 || sizeClass >= idle.size()) {
+            throw new IllegalArgumentException("buffer not from this pool: capacity " + capacity);
+        }
+        borrowed--;
+        var free = idle.get(sizeClass);
+        if (free.size() < maxIdlePerClass) {
+            free.push(buffer.clear());
+        }
+    }
+
+    /**
+     * Returns the number of buffers currently borrowed from this pool.
+     *
+     * @return the number of buffers not yet released
+     */
+    public int borrowed() {
+        return borrowed;
+    }
+
+    /**
+     * Returns the number of direct bytes allocated by this pool since its creation.
+     *
+     * @return the total size of the slabs allocated
+     */
+    public long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    private int sizeClass(int size) {
+        if (size < 1 || size > 1 << maxShift) {
+            throw new IllegalArgumentException("no size class for " + size + " bytes");
+        }
+        var shift = Math.max(minShift, Integer.SIZE - Integer.numberOfLeadingZeros(size - 1));
+        return shift - minShift;
+    }
+
+    /**
+     * Allocates a slab for the size class, returns its first buffer and keeps the others idle.
+     */
+    private ByteBuffer carve(int sizeClass) {
+        var capacity = 1 << (sizeClass + minShift);
+        var count = Math.max(1, Math.min(slabSize / capacity, maxIdlePerClass + 1));
+        var slab = ByteBuffer.allocateDirect(capacity * count);
+        allocatedBytes += slab.capacity();
+        for (var i = 1; i < count; i++) {
+            idle.get(sizeClass).push(slab.slice(i * capacity, capacity));
+        }
+        return slab.slice(0, capacity);
+    }
+}
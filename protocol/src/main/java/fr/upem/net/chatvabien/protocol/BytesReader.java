@@ -0,0 +1,91 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@code Reader} implementation that reads a size-prefixed block of bytes from a {@link ByteBuffer}.
+ * <p>
+ * The block is serialized like a string, as a 4-byte size followed by {@code size} bytes, but its
+ * content is left undecoded: {@link #get()} returns it as a buffer in read mode.
+ */
+public class BytesReader implements Reader<ByteBuffer> {
+
+    private enum State {WAITING_SIZE, WAITING_BYTES, DONE, ERROR}
+
+    private final IntReader intReader = new IntReader();
+    private final int maxSize;
+    private State state = State.WAITING_SIZE;
+    private ByteBuffer internalBuffer;
+
+    /**
+     * Creates a reader accepting blocks of at most {@code maxSize} bytes.
+     *
+     * @param maxSize the maximum number of bytes of a block
+     * @throws IllegalArgumentException if {@code maxSize} is negative
+     */
+    public BytesReader(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must be >= 0: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public ProcessStatus process(ByteBuffer bb) {
+        if (state == State.DONE || state == State.ERROR) {
+            throw new IllegalStateException();
+        }
+
+        if (state == State.WAITING_SIZE) {
+            var status = intReader.process(bb);
+            if (status != ProcessStatus.DONE) {
+                return status;
+            }
+
+            var size = intReader.get();
+            intReader.reset();
+
+            if (size < 0 || size > maxSize) {
+                state = State.ERROR;
+                return ProcessStatus.ERROR;
+            }
+
+            internalBuffer = ByteBuffer.allocate(size);
+            state = State.WAITING_BYTES;
+        }
+
+        var toRead = Math.min(bb.remaining(), internalBuffer.remaining());
+        internalBuffer.put(internalBuffer.position(), bb, bb.position(), toRead);
+        internalBuffer.position(internalBuffer.position() + toRead);
+        bb.position(bb.position() + toRead);
+
+        if (internalBuffer.hasRemaining()) {
+            return ProcessStatus.REFILL;
+        }
+
+        internalBuffer.flip();
+        state = State.DONE;
+        return ProcessStatus.DONE;
+    }
+
+    /**
+     * Returns the block read by this reader.
+     *
+     * @return the bytes of the block, between position and limit
+     * @throws IllegalStateException if the block is not yet available or if an error occurred
+     */
+    @Override
+    public ByteBuffer get() {
+        if (state != State.DONE) {
+            throw new IllegalStateException();
+        }
+        return internalBuffer;
+    }
+
+    @Override
+    public void reset() {
+        state = State.WAITING_SIZE;
+        intReader.reset();
+        internalBuffer = null;
+    }
+}
@@ -0,0 +1,48 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The header of a FILE_CHUNK frame: the transfer id and the chunk offset as {@code long}s, then the
+ * chunk length and its CRC32C as {@code int}s.
+ * <p>
+ * The {@code length} bytes of the chunk follow the header as is, so that they can be streamed from
+ * and to the file without going through the heap; the receiver only records the chunk once their
+ * checksum matches.
+ *
+ * @param transferId the id given by the file offer
+ * @param offset     the offset of the chunk in the file
+ * @param length     the number of bytes following the header
+ * @param crc        the CRC32C of the chunk bytes
+ */
+public record ChunkHeader(long transferId, long offset, int length, int crc) implements PrivateFrame {
+    /**
+     * The number of bytes of an encoded header, opcode included.
+     */
+    public static final int BYTES = Byte.BYTES + 2 * Long.BYTES + 2 * Integer.BYTES;
+
+    public ChunkHeader {
+        if (offset < 0 || length <= 0) {
+            throw new IllegalArgumentException("invalid chunk: offset " + offset + ", length " + length);
+        }
+    }
+
+    @Override
+    public ByteBuffer encode() {
+        return encode(ByteBuffer.allocate(BYTES)).flip();
+    }
+
+    /**
+     * Writes the FILE_CHUNK opcode followed by this header into {@code buffer}.
+     *
+     * @param buffer a buffer in write mode with at least {@link #BYTES} bytes remaining
+     * @return {@code buffer}
+     */
+    public ByteBuffer encode(ByteBuffer buffer) {
+        return buffer.put(OPCODE.FILE_CHUNK.getCode())
+                .putLong(transferId)
+                .putLong(offset)
+                .putInt(length)
+                .putInt(crc);
+    }
+}
@@ -0,0 +1,58 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@code Reader} implementation that reads a {@link ChunkHeader}, the FILE_CHUNK opcode excluded.
+ * <p>
+ * Reading fails if the offset is negative or the length is not positive. The chunk bytes are left
+ * in the buffer for the caller.
+ */
+public class ChunkHeaderReader implements Reader<ChunkHeader> {
+
+    private enum State {WAITING, DONE, ERROR}
+
+    private final ByteBuffer internalBuffer = ByteBuffer.allocate(ChunkHeader.BYTES - Byte.BYTES); // write-mode
+    private State state = State.WAITING;
+    private ChunkHeader value;
+
+    @Override
+    public ProcessStatus process(ByteBuffer bb) {
+        if (state == State.DONE || state == State.ERROR) {
+            throw new IllegalStateException();
+        }
+        while (bb.hasRemaining() && internalBuffer.hasRemaining()) {
+            internalBuffer.put(bb.get());
+        }
+        if (internalBuffer.hasRemaining()) {
+            return ProcessStatus.REFILL;
+        }
+        internalBuffer.flip();
+        var transferId = internalBuffer.getLong();
+        var offset = internalBuffer.getLong();
+        var length = internalBuffer.getInt();
+        var crc = internalBuffer.getInt();
+        if (offset < 0 || length <= 0) {
+            state = State.ERROR;
+            return ProcessStatus.ERROR;
+        }
+        value = new ChunkHeader(transferId, offset, length, crc);
+        state = State.DONE;
+        return ProcessStatus.DONE;
+    }
+
+    @Override
+    public ChunkHeader get() {
+        if (state != State.DONE) {
+            throw new IllegalStateException();
+        }
+        return value;
+    }
+
+    @Override
+    public void reset() {
+        state = State.WAITING;
+        internalBuffer.clear();
+        value = null;
+    }
+}
@@ -0,0 +1,64 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * A {@link Trame} serialized once and ready to be written to any number of channels.
+ * <p>
+ * The encoded bytes are shared and never modified: {@link #buffer()} hands out independent
+ * read-only views, so sending the same trame to {@code N} recipients costs one encoding
+ * plus {@code N} small view objects instead of {@code N} encodings.
+ */
+public final class EncodedTrame {
+    private final OPCODE opcode;
+    private final ByteBuffer bytes;
+
+    /**
+     * Creates an encoded trame from already serialized bytes.
+     *
+     * @param opcode the opcode of the trame
+     * @param bytes  the serialized trame, between position and limit; it must not be modified afterwards
+     */
+    public EncodedTrame(OPCODE opcode, ByteBuffer bytes) {
+        this.opcode = Objects.requireNonNull(opcode);
+        this.bytes = bytes.asReadOnlyBuffer();
+    }
+
+    /**
+     * Serializes the given trame once.
+     *
+     * @param trame the trame to encode
+     * @return the encoded trame
+     */
+    public static EncodedTrame of(Trame trame) {
+        return new EncodedTrame(trame.opcode(), trame.toByteBuffer());
+    }
+
+    /**
+     * Returns the opcode of the encoded trame.
+     *
+     * @return the opcode
+     */
+    public OPCODE opcode() {
+        return opcode;
+    }
+
+    /**
+     * Returns the size in bytes of the encoded trame.
+     *
+     * @return the number of bytes
+     */
+    public int size() {
+        return bytes.remaining();
+    }
+
+    /**
+     * Returns a new read-only view over the encoded bytes, with its own position and limit.
+     *
+     * @return a read-only {@link ByteBuffer} positioned at the start of the trame
+     */
+    public ByteBuffer buffer() {
+        return bytes.duplicate();
+    }
+}
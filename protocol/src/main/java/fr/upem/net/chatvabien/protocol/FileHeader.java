@@ -0,0 +1,107 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * A FILE frame offering a file on a private connection: the transfer id as a {@code long}, the file
+ * name as a size-prefixed UTF-8 string, the file size and fingerprint as {@code long}s and the chunk
+ * size as an {@code int}.
+ * <p>
+ * The file is then sent in chunks of {@code chunkSize} bytes, the last one possibly shorter, each
+ * starting at a multiple of {@code chunkSize}, at most {@link #MAX_CHUNKS} of them. The receiver
+ * keeps the chunks of an interrupted transfer only if a later offer has the same name, size,
+ * fingerprint and chunk size.
+ *
+ * @param transferId  the id of the transfer, repeated in its chunks
+ * @param name        the file name, without any directory
+ * @param size        the number of bytes of the file
+ * @param fingerprint a value changing whenever the file content changes, such as its modification time
+ * @param chunkSize   the number of bytes of each chunk but the last
+ */
+public record FileHeader(long transferId, String name, long size, long fingerprint, int chunkSize)
+        implements PrivateFrame {
+    /**
+     * The chunk size used unless specified otherwise.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+    /**
+     * The largest accepted chunk size.
+     */
+    public static final int MAX_CHUNK_SIZE = 1 << 24;
+    /**
+     * The largest number of chunks of a file, which bounds the bitmap kept by the receiver.
+     */
+    public static final int MAX_CHUNKS = 1 << 20;
+
+    public FileHeader {
+        Objects.requireNonNull(name);
+        if (size < 0) {
+            throw new IllegalArgumentException("size must be >= 0: " + size);
+        }
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("chunkSize must be in ]0, " + MAX_CHUNK_SIZE + "]: " + chunkSize);
+        }
+        if (chunkCount(size, chunkSize) > MAX_CHUNKS) {
+            throw new IllegalArgumentException("more than " + MAX_CHUNKS + " chunks of " + chunkSize + " bytes");
+        }
+    }
+
+    /**
+     * Returns the number of chunks of {@code chunkSize} bytes of a file of {@code size} bytes.
+     *
+     * @param size      the number of bytes of the file, not negative
+     * @param chunkSize the number of bytes of each chunk but the last, positive
+     * @return the number of chunks, 0 for an empty file
+     */
+    public static long chunkCount(long size, int chunkSize) {
+        return size == 0 ? 0 : (size - 1) / chunkSize + 1;
+    }
+
+    /**
+     * Returns the smallest chunk size, at least {@code chunkSize}, cutting a file of {@code size}
+     * bytes into at most {@link #MAX_CHUNKS} chunks.
+     *
+     * @param size      the number of bytes of the file, not negative
+     * @param chunkSize the preferred chunk size
+     * @return the chunk size, possibly larger than {@link #MAX_CHUNK_SIZE} if the file is too large
+     */
+    public static long chunkSizeFor(long size, int chunkSize) {
+        return Math.max(chunkSize, chunkCount(size, MAX_CHUNKS));
+    }
+
+    /**
+     * Returns the number of chunks of the file, 0 for an empty file.
+     *
+     * @return the number of chunks, at most {@link #MAX_CHUNKS}
+     */
+    public int chunkCount() {
+        return (int) chunkCount(size, chunkSize);
+    }
+
+    /**
+     * Returns the number of bytes of the chunk starting at {@code offset}.
+     *
+     * @param offset the offset of the chunk, a multiple of the chunk size
+     * @return the length of the chunk
+     */
+    public int chunkLength(long offset) {
+        return (int) Math.min(chunkSize, size - offset);
+    }
+
+    @Override
+    public ByteBuffer encode() {
+        var nameBytes = StandardCharsets.UTF_8.encode(name);
+        return ByteBuffer.allocate(Byte.BYTES + Long.BYTES + Integer.BYTES + nameBytes.remaining()
+                        + 2 * Long.BYTES + Integer.BYTES)
+                .put(OPCODE.FILE.getCode())
+                .putLong(transferId)
+                .putInt(nameBytes.remaining())
+                .put(nameBytes)
+                .putLong(size)
+                .putLong(fingerprint)
+                .putInt(chunkSize)
+                .flip();
+    }
+}
@@ -0,0 +1,114 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@code Reader} implementation that reads a {@link FileHeader}, the FILE opcode excluded.
+ * <p>
+ * Reading fails if the name exceeds the maximum string size, the size is negative, the chunk size
+ * is out of bounds or the file would have more than {@link FileHeader#MAX_CHUNKS} chunks: a peer
+ * cannot make the receiver allocate a bitmap, or a sidecar, of more than 128 KiB.
+ */
+public class FileHeaderReader implements Reader<FileHeader> {
+
+    private enum State {WAITING_ID, WAITING_NAME, WAITING_SIZE, WAITING_FINGERPRINT, WAITING_CHUNK_SIZE, DONE, ERROR}
+
+    private final LongReader longReader = new LongReader();
+    private final StringReader nameReader;
+    private final IntReader chunkSizeReader = new IntReader();
+    private State state = State.WAITING_ID;
+    private long transferId;
+    private long size;
+    private long fingerprint;
+    private FileHeader value;
+
+    /**
+     * Creates a reader accepting names of at most {@link StringReader#MAX_STRING_SIZE} bytes.
+     */
+    public FileHeaderReader() {
+        this(StringReader.MAX_STRING_SIZE);
+    }
+
+    /**
+     * Creates a reader accepting names of at most {@code maxNameSize} bytes.
+     *
+     * @param maxNameSize the maximum number of bytes of an encoded name
+     */
+    public FileHeaderReader(int maxNameSize) {
+        this.nameReader = new StringReader(maxNameSize);
+    }
+
+    @Override
+    public ProcessStatus process(ByteBuffer bb) {
+        if (state == State.DONE || state == State.ERROR) {
+            throw new IllegalStateException();
+        }
+        if (state == State.WAITING_ID) {
+            if (longReader.process(bb) == ProcessStatus.REFILL) {
+                return ProcessStatus.REFILL;
+            }
+            transferId = longReader.get();
+            longReader.reset();
+            state = State.WAITING_NAME;
+        }
+        if (state == State.WAITING_NAME) {
+            var status = nameReader.process(bb);
+            if (status != ProcessStatus.DONE) {
+                if (status == ProcessStatus.ERROR) {
+                    state = State.ERROR;
+                }
+                return status;
+            }
+            state = State.WAITING_SIZE;
+        }
+        if (state == State.WAITING_SIZE) {
+            if (longReader.process(bb) == ProcessStatus.REFILL) {
+                return ProcessStatus.REFILL;
+            }
+            size = longReader.get();
+            longReader.reset();
+            if (size < 0) {
+                state = State.ERROR;
+                return ProcessStatus.ERROR;
+            }
+            state = State.WAITING_FINGERPRINT;
+        }
+        if (state == State.WAITING_FINGERPRINT) {
+            if (longReader.process(bb) == ProcessStatus.REFILL) {
+                return ProcessStatus.REFILL;
+            }
+            fingerprint = longReader.get();
+            longReader.reset();
+            state = State.WAITING_CHUNK_SIZE;
+        }
+        if (chunkSizeReader.process(bb) == ProcessStatus.REFILL) {
+            return ProcessStatus.REFILL;
+        }
+        var chunkSize = chunkSizeReader.get();
+        if (chunkSize <= 0 || chunkSize > FileHeader.MAX_CHUNK_SIZE
+                || FileHeader.chunkCount(size, chunkSize) > FileHeader.MAX_CHUNKS) {
+            state = State.ERROR;
+            return ProcessStatus.ERROR;
+        }
+        value = new FileHeader(transferId, nameReader.get(), size, fingerprint, chunkSize);
+        state = State.DONE;
+        return ProcessStatus.DONE;
+    }
+
+    @Override
+    public FileHeader get() {
+        if (state != State.DONE) {
+            throw new IllegalStateException();
+        }
+        return value;
+    }
+
+    @Override
+    public void reset() {
+        state = State.WAITING_ID;
+        longReader.reset();
+        nameReader.reset();
+        chunkSizeReader.reset();
+        value = null;
+    }
+}
@@ -0,0 +1,537 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Receives the chunks of an offered file into a directory.
+ * <p>
+ * Bytes are written with positional writes into a {@code name.part} file, renamed to its final
+ * name once complete, so that an interrupted transfer never leaves a truncated file under the
+ * expected name. An existing file is never replaced: the received file is then named
+ * {@code name (1)}, {@code name (2)} and so on, before the extension if any. Content is read from the channel through a caller-provided direct buffer: a
+ * file of any size is received in constant memory. Each chunk is received as a {@link Chunk}
+ * written at its own offset, so that the chunks of a file can arrive on several connections at once.
+ * <p>
+ * In mapped mode, the {@code .part} file is first extended to the size of the file, then each chunk
+ * is read from the channel straight into a read-write mapping of the file, without a scratch buffer
+ * nor a write call. The mapping covers a window of chunks that slides forward as chunks beyond it
+ * arrive; a chunk keeps the window it started in until its last byte. Mapped pages are written back
+ * by the operating system: the pages of the completed chunks are forced to the storage device every
+ * given number of bytes, bounding the dirty pages a large file accumulates, and before the file is
+ * renamed. Forced chunks are released, so that the mappings they belong to can be unmapped. The
+ * {@code .part} file being sparse, a storage device running out of space faults a mapped write
+ * instead of failing a write call: the fault is reported as an {@link IOException}.
+ * <p>
+ * A chunk is recorded in the {@code name.part.chunks} sidecar once all its bytes have been written
+ * and their CRC32C matches the one announced; a chunk whose checksum differs fails the transfer
+ * without being recorded. The sidecar starts with the size, fingerprint and chunk size of the
+ * offer, followed by one bit per chunk. An interrupted transfer keeps both files: a later offer of
+ * the same file resumes with the recorded chunks, answered by {@link #resume()}, while any other
+ * offer starts over.
+ * <p>
+ * This class is not thread-safe: a receiver must only be used by the thread owning its channel.
+ */
+public final class FileReceiver implements Closeable {
+    /**
+     * Suffix of the file receiving the content until it is complete.
+     */
+    public static final String PART_SUFFIX = ".part";
+    /**
+     * Suffix, after {@link #PART_SUFFIX}, of the sidecar recording the chunks received.
+     */
+    public static final String CHUNKS_SUFFIX = ".chunks";
+
+    // reads made by a single receive call while the channel fills the buffer
+    private static final int MAX_READS_PER_RECEIVE = 16;
+    private static final int SIDECAR_MAGIC = 0x43564243;
+    private static final int SIDECAR_HEADER_SIZE = Integer.BYTES + 2 * Long.BYTES + Integer.BYTES;
+    // names tried after the offered one when a file of that name already exists
+    private static final int MAX_RENAME_ATTEMPTS = 1000;
+
+    private final FileHeader header;
+    private final Path target;
+    private final Path part;
+    private final Path sidecar;
+    private final FileChannel file;
+    private final FileChannel chunks;
+    private final BitSet received;
+    private final ByteBuffer bitmapByte = ByteBuffer.allocate(1);
+    private final long resumedBytes;
+    private long receivedBytes;
+
+    // mapped mode: bytes mapped at once (0 for positional writes), current window, completed chunks not forced yet
+    private final long mapWindow;
+    private final long forceInterval;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private final List<MappedByteBuffer> unforced = new ArrayList<>();
+    private long unforcedBytes;
+
+    /**
+     * Opens the {@code .part} file and its sidecar for the offered file, keeping the chunks already
+     * received if the sidecar describes the same file, truncating both otherwise.
+     *
+     * @param directory the directory receiving the file
+     * @param header    the offer
+     * @throws IOException if the name is not a plain file name or the files cannot be opened
+     */
+    public FileReceiver(Path directory, FileHeader header) throws IOException {
+        this(directory, header, 0, 0);
+    }
+
+    /**
+     * Opens the {@code .part} file and its sidecar for the offered file, as
+     * {@link #FileReceiver(Path, FileHeader)}, to receive the chunks through a mapping of the file if
+     * {@code mapWindow} is positive.
+     *
+     * @param directory     the directory receiving the file
+     * @param header        the offer
+     * @param mapWindow     the number of bytes mapped at once, rounded down to a whole number of chunks
+     *                      but at least one, or 0 to receive with positional writes
+     * @param forceInterval the number of bytes of completed chunks after which they are forced to the
+     *                      storage device and released, or 0 for the mapping window
+     * @throws IOException if the name is not a plain file name or the files cannot be opened
+     */
+    public FileReceiver(Path directory, FileHeader header, long mapWindow, long forceInterval) throws IOException {
+        if (mapWindow < 0 || forceInterval < 0) {
+            throw new IllegalArgumentException("negative mapping window or force interval");
+        }
+        if (FileHeader.chunkCount(header.size(), header.chunkSize()) > FileHeader.MAX_CHUNKS) {
+            throw new IOException("offer of " + header.name() + " with too many chunks");
+        }
+        this.header = header;
+        var chunkSize = header.chunkSize();
+        this.mapWindow = mapWindow == 0 ? 0
+                : Math.max(1, Math.min(mapWindow, Integer.MAX_VALUE) / chunkSize) * chunkSize;
+        this.forceInterval = forceInterval == 0 ? this.mapWindow : forceInterval;
+        this.target = resolve(directory, header.name());
+        this.part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+        this.sidecar = part.resolveSibling(part.getFileName() + CHUNKS_SUFFIX);
+        var recorded = Files.exists(part) ? readSidecar() : null;
+        var resuming = recorded != null;
+        this.received = resuming ? recorded : new BitSet(header.chunkCount());
+        this.file = FileChannel.open(part, resuming ? openOptions() : truncateOptions());
+        try {
+            this.chunks = FileChannel.open(sidecar, resuming ? openOptions() : truncateOptions());
+            if (!resuming) {
+                writeSidecarHeader();
+            }
+            if (this.mapWindow > 0 && file.size() < header.size()) {
+                // sparse extension: the file is never grown chunk after chunk, nor past a mapping
+                file.write(ByteBuffer.allocate(1), header.size() - 1);
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        this.resumedBytes = completedBytes();
+    }
+
+    private static StandardOpenOption[] openOptions() {
+        return new StandardOpenOption[] {StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE};
+    }
+
+    private static StandardOpenOption[] truncateOptions() {
+        return new StandardOpenOption[] {StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING};
+    }
+
+    /**
+     * Resolves a received name in the directory, refusing anything but a plain file name.
+     */
+    private static Path resolve(Path directory, String name) throws IOException {
+        if (name.isEmpty() || name.equals(".") || name.equals("..") || name.indexOf('/') >= 0
+                || name.indexOf('\\') >= 0 || name.indexOf('\0') >= 0) {
+            throw new IOException("invalid file name: " + name);
+        }
+        return directory.resolve(name);
+    }
+
+    /**
+     * Chunks recorded by the sidecar if it describes the offered file, {@code null} otherwise.
+     */
+    private BitSet readSidecar() throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(sidecar);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        var buffer = ByteBuffer.wrap(bytes);
+        if (bytes.length != SIDECAR_HEADER_SIZE + bitmapSize() || buffer.getInt() != SIDECAR_MAGIC
+                || buffer.getLong() != header.size() || buffer.getLong() != header.fingerprint()
+                || buffer.getInt() != header.chunkSize()) {
+            return null;
+        }
+        var recorded = BitSet.valueOf(buffer);
+        return recorded.length() <= header.chunkCount() ? recorded : null;
+    }
+
+    private int bitmapSize() {
+        return (header.chunkCount() + Byte.SIZE - 1) / Byte.SIZE;
+    }
+
+    private void writeSidecarHeader() throws IOException {
+        var buffer = ByteBuffer.allocate(SIDECAR_HEADER_SIZE + bitmapSize())
+                .putInt(SIDECAR_MAGIC)
+                .putLong(header.size())
+                .putLong(header.fingerprint())
+                .putInt(header.chunkSize());
+        buffer.position(buffer.limit()).flip();
+        while (buffer.hasRemaining()) {
+            chunks.write(buffer, buffer.position());
+        }
+    }
+
+    public FileHeader header() {
+        return header;
+    }
+
+    /**
+     * Returns whether the chunks are received through a mapping of the file.
+     *
+     * @return {@code true} in mapped mode, where {@link Chunk#receive} needs no scratch buffer
+     */
+    public boolean isMapped() {
+        return mapWindow > 0;
+    }
+
+    /**
+     * Returns the number of chunk bytes received since this receiver was opened.
+     *
+     * @return the number of bytes written to the file, resumed chunks excluded
+     */
+    public long received() {
+        return receivedBytes;
+    }
+
+    /**
+     * Returns the number of bytes of the chunks recorded by the sidecar when this receiver was opened.
+     *
+     * @return the number of bytes kept from a previous transfer
+     */
+    public long resumed() {
+        return resumedBytes;
+    }
+
+    public boolean isComplete() {
+        return received.cardinality() == header.chunkCount();
+    }
+
+    /**
+     * Returns the answer to the offer: the ranges of the chunks already recorded, at most
+     * {@link FileResume#MAX_RANGES} of them.
+     *
+     * @return the frame to send back to the sender
+     */
+    public FileResume resume() {
+        var ranges = new ArrayList<FileResume.Range>();
+        for (var start = received.nextSetBit(0); start >= 0 && ranges.size() < FileResume.MAX_RANGES;
+             start = received.nextSetBit(start)) {
+            var end = received.nextClearBit(start);
+            ranges.add(new FileResume.Range((long) start * header.chunkSize(),
+                    Math.min((long) end * header.chunkSize(), header.size())));
+            start = end;
+        }
+        return new FileResume(header.transferId(), ranges);
+    }
+
+    private long completedBytes() {
+        var count = header.chunkCount();
+        var total = (long) received.cardinality() * header.chunkSize();
+        if (count > 0 && received.get(count - 1)) {
+            total -= header.chunkSize() - header.chunkLength((long) (count - 1) * header.chunkSize());
+        }
+        return total;
+    }
+
+    /**
+     * A chunk being received, from its FILE_CHUNK header to its last byte.
+     */
+    public final class Chunk {
+        private final long start;
+        private long position;
+        private final long end;
+        private final int expectedCrc;
+        private final CRC32C crc = new CRC32C();
+        // mapped mode: the chunk in the mapping, and a view of it over the bytes not checksummed yet
+        private final MappedByteBuffer region;
+        private final ByteBuffer crcView;
+
+        private Chunk(ChunkHeader chunk) throws IOException {
+            this.start = chunk.offset();
+            this.position = start;
+            this.end = start + chunk.length();
+            this.expectedCrc = chunk.crc();
+            this.region = isMapped() ? map(start, chunk.length()) : null;
+            this.crcView = region == null ? null : region.duplicate();
+        }
+
+        public long offset() {
+            return start;
+        }
+
+        /**
+         * Returns whether all the bytes of the chunk have been written.
+         *
+         * @return {@code true} once the chunk has been checked and recorded
+         */
+        public boolean isComplete() {
+            return position == end;
+        }
+
+        /**
+         * Writes the bytes of {@code src}, up to the end of the chunk, at their position.
+         *
+         * @param src the bytes received, between position and limit
+         * @return the number of bytes consumed from {@code src}
+         * @throws IOException if the write fails or the completed chunk has a wrong checksum
+         */
+        public int write(ByteBuffer src) throws IOException {
+            var count = (int) Math.min(src.remaining(), end - position);
+            var from = src.position();
+            var limit = src.limit();
+            src.limit(from + count);
+            try {
+                if (region != null) {
+                    try {
+                        region.put(src);
+                    } catch (InternalError e) {
+                        throw mappedWriteFailure(e);
+                    }
+                    position += count;
+                    crc.update(crcView.limit(region.position()));
+                } else {
+                    while (src.hasRemaining()) {
+                        position += file.write(src, position);
+                    }
+                    crc.update(src.position(from));
+                }
+            } finally {
+                src.limit(limit);
+            }
+            receivedBytes += count;
+            if (count > 0 && position == end) {
+                record();
+            }
+            return count;
+        }
+
+        /**
+         * Reads the chunk from the channel into the file through {@code scratch}, never past the end
+         * of the chunk, until the channel has no more bytes available.
+         *
+         * @param channel the non-blocking channel to read from
+         * @param scratch a buffer reused for each read, preferably direct, unused in mapped mode
+         * @return the number of bytes received, or -1 if the channel reached end of stream
+         * @throws IOException if the read or the write fails, or the completed chunk has a wrong checksum
+         */
+        public long receive(ReadableByteChannel channel, ByteBuffer scratch) throws IOException {
+            if (region != null) {
+                return receiveMapped(channel);
+            }
+            var total = 0L;
+            for (var i = 0; i < MAX_READS_PER_RECEIVE && !isComplete(); i++) {
+                scratch.clear().limit((int) Math.min(scratch.capacity(), end - position));
+                var read = channel.read(scratch);
+                if (read == -1) {
+                    return total == 0 ? -1 : total;
+                }
+                scratch.flip();
+                write(scratch);
+                total += read;
+                if (scratch.limit() < scratch.capacity()) {
+                    break; // the channel had nothing more
+                }
+            }
+            return total;
+        }
+
+        private long receiveMapped(ReadableByteChannel channel) throws IOException {
+            var total = 0L;
+            for (var i = 0; i < MAX_READS_PER_RECEIVE && !isComplete(); i++) {
+                int read;
+                try {
+                    read = channel.read(region);
+                } catch (InternalError e) {
+                    throw mappedWriteFailure(e);
+                }
+                if (read == -1) {
+                    return total == 0 ? -1 : total;
+                }
+                if (read == 0) {
+                    break; // the channel had nothing more
+                }
+                position += read;
+                receivedBytes += read;
+                total += read;
+                crc.update(crcView.limit(region.position()));
+                if (isComplete()) {
+                    record();
+                }
+            }
+            return total;
+        }
+
+        /**
+         * Checks the chunk just written and records it in the sidecar, after its bytes.
+         */
+        private void record() throws IOException {
+            if ((int) crc.getValue() != expectedCrc) {
+                throw new IOException("checksum mismatch for the chunk of " + header.name() + " at " + start);
+            }
+            recordChunk((int) (start / header.chunkSize()));
+            if (region != null) {
+                unforced.add(region);
+                unforcedBytes += end - start;
+                if (forceInterval > 0 && unforcedBytes >= forceInterval) {
+                    force();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the chunk at {@code offset} in the current window, first sliding the window to start at
+     * the chunk if it lies beyond.
+     */
+    private MappedByteBuffer map(long offset, int length) throws IOException {
+        if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+            windowStart = offset;
+            window = file.map(FileChannel.MapMode.READ_WRITE, offset, Math.min(mapWindow, header.size() - offset));
+        }
+        return window.slice((int) (offset - windowStart), length);
+    }
+
+    /**
+     * Forces the completed chunks not forced yet to the storage device, then releases them.
+     */
+    private void force() throws IOException {
+        try {
+            for (var region : unforced) {
+                region.force();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (InternalError e) {
+            throw mappedWriteFailure(e);
+        }
+        unforced.clear();
+        unforcedBytes = 0;
+    }
+
+    /**
+     * Converts the fault raised by an access to a mapped page that cannot be backed, typically when
+     * the storage device is full.
+     */
+    private IOException mappedWriteFailure(InternalError e) {
+        return new IOException("mapped write to " + part + " failed, storage device full?", e);
+    }
+
+    /**
+     * Expects the bytes of the announced chunk. Several chunks may be received at once, each on its
+     * own connection.
+     *
+     * @param chunk the header of the chunk
+     * @return the chunk, to which its bytes are to be written
+     * @throws IOException if the chunk does not belong to this transfer or is not a chunk of the file
+     */
+    public Chunk startChunk(ChunkHeader chunk) throws IOException {
+        if (chunk.transferId() != header.transferId()) {
+            throw new IOException("chunk of another transfer: " + chunk.transferId());
+        }
+        var offset = chunk.offset();
+        if (offset % header.chunkSize() != 0 || offset >= header.size() || chunk.length() != header.chunkLength(offset)) {
+            throw new IOException("invalid chunk of " + header.name() + ": offset " + offset
+                    + ", length " + chunk.length());
+        }
+        return new Chunk(chunk);
+    }
+
+    private void recordChunk(int index) throws IOException {
+        received.set(index);
+        var first = index - index % Byte.SIZE;
+        var bits = 0;
+        for (var bit = 0; bit < Byte.SIZE; bit++) {
+            if (received.get(first + bit)) {
+                bits |= 1 << bit;
+            }
+        }
+        bitmapByte.clear().put((byte) bits).flip();
+        while (bitmapByte.hasRemaining()) {
+            chunks.write(bitmapByte, SIDECAR_HEADER_SIZE + index / Byte.SIZE);
+        }
+    }
+
+    /**
+     * Closes the {@code .part} file and gives it its final name, or the first free numbered name if
+     * a file already has it, then deletes the sidecar.
+     *
+     * @return the received file
+     * @throws IOException if the file is incomplete or cannot be renamed
+     */
+    public Path complete() throws IOException {
+        if (!isComplete()) {
+            throw new IOException("incomplete file: " + completedBytes() + "/" + header.size() + " bytes");
+        }
+        force();
+        window = null;
+        file.close();
+        chunks.close();
+        var received = moveToFreeName();
+        Files.deleteIfExists(sidecar);
+        return received;
+    }
+
+    /**
+     * Renames the {@code .part} file to the target, or to the first numbered name not taken. The
+     * move is not atomic, since an atomic rename silently replaces an existing file on most systems:
+     * it fails instead when the name is taken, and the next one is tried.
+     */
+    private Path moveToFreeName() throws IOException {
+        var name = target.getFileName().toString();
+        var dot = name.lastIndexOf('.');
+        var base = dot > 0 ? name.substring(0, dot) : name;
+        var extension = dot > 0 ? name.substring(dot) : "";
+        var candidate = target;
+        for (var attempt = 1; ; attempt++) {
+            try {
+                return Files.move(part, candidate);
+            } catch (FileAlreadyExistsException e) {
+                if (attempt > MAX_RENAME_ATTEMPTS) {
+                    throw e;
+                }
+                candidate = target.resolveSibling(base + " (" + attempt + ")" + extension);
+            }
+        }
+    }
+
+    /**
+     * Closes the files; an incomplete {@code .part} file and its sidecar are kept for a later resume.
+     */
+    @Override
+    public void close() throws IOException {
+        window = null;
+        unforced.clear();
+        try {
+            file.close();
+        } finally {
+            chunks.close();
+        }
+    }
+}
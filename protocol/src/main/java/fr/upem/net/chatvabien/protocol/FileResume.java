@@ -0,0 +1,73 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A FILE_RESUME frame answering a file offer: the transfer id as a {@code long}, then the number of
+ * ranges as an {@code int} followed by each range as two {@code long}s.
+ * <p>
+ * The ranges are the bytes the receiver already holds, sorted and disjoint: the sender skips the
+ * chunks they contain. An empty list asks for the whole file.
+ *
+ * @param transferId the id of the offered transfer
+ * @param completed  the ranges already received
+ */
+public record FileResume(long transferId, List<Range> completed) implements PrivateFrame {
+    /**
+     * The largest number of ranges in a frame; a receiver holding more sends the first ones only.
+     */
+    public static final int MAX_RANGES = 1 << 16;
+
+    /**
+     * A range of bytes of the file.
+     *
+     * @param start the offset of the first byte
+     * @param end   the offset following the last byte
+     */
+    public record Range(long start, long end) {
+
+        public Range {
+            if (start < 0 || end <= start) {
+                throw new IllegalArgumentException("invalid range: [" + start + ", " + end + "[");
+            }
+        }
+    }
+
+    public FileResume {
+        completed = List.copyOf(completed);
+        if (completed.size() > MAX_RANGES) {
+            throw new IllegalArgumentException("too many ranges: " + completed.size());
+        }
+        for (var i = 1; i < completed.size(); i++) {
+            if (completed.get(i).start() < completed.get(i - 1).end()) {
+                throw new IllegalArgumentException("ranges must be sorted and disjoint");
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes in the ranges.
+     *
+     * @return the number of bytes already received
+     */
+    public long completedBytes() {
+        var total = 0L;
+        for (var range : completed) {
+            total += range.end() - range.start();
+        }
+        return total;
+    }
+
+    @Override
+    public ByteBuffer encode() {
+        var buffer = ByteBuffer.allocate(Byte.BYTES + Long.BYTES + Integer.BYTES + completed.size() * 2 * Long.BYTES)
+                .put(OPCODE.FILE_RESUME.getCode())
+                .putLong(transferId)
+                .putInt(completed.size());
+        for (var range : completed) {
+            buffer.putLong(range.start()).putLong(range.end());
+        }
+        return buffer.flip();
+    }
+}
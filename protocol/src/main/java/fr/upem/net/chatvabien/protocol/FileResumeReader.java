@@ -0,0 +1,89 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * A {@code Reader} implementation that reads a {@link FileResume}, the FILE_RESUME opcode excluded.
+ * <p>
+ * Reading fails if the number of ranges is negative or above {@link FileResume#MAX_RANGES}, or if the
+ * ranges are empty, unsorted or overlapping.
+ */
+public class FileResumeReader implements Reader<FileResume> {
+
+    private enum State {WAITING_ID, WAITING_COUNT, WAITING_START, WAITING_END, DONE, ERROR}
+
+    private final LongReader longReader = new LongReader();
+    private final IntReader countReader = new IntReader();
+    private final ArrayList<FileResume.Range> ranges = new ArrayList<>();
+    private State state = State.WAITING_ID;
+    private long transferId;
+    private int count;
+    private long start;
+    private FileResume value;
+
+    @Override
+    public ProcessStatus process(ByteBuffer bb) {
+        if (state == State.DONE || state == State.ERROR) {
+            throw new IllegalStateException();
+        }
+        if (state == State.WAITING_ID) {
+            if (longReader.process(bb) == ProcessStatus.REFILL) {
+                return ProcessStatus.REFILL;
+            }
+            transferId = longReader.get();
+            longReader.reset();
+            state = State.WAITING_COUNT;
+        }
+        if (state == State.WAITING_COUNT) {
+            if (countReader.process(bb) == ProcessStatus.REFILL) {
+                return ProcessStatus.REFILL;
+            }
+            count = countReader.get();
+            if (count < 0 || count > FileResume.MAX_RANGES) {
+                state = State.ERROR;
+                return ProcessStatus.ERROR;
+            }
+            state = State.WAITING_START;
+        }
+        while (ranges.size() < count) {
+            if (longReader.process(bb) == ProcessStatus.REFILL) {
+                return ProcessStatus.REFILL;
+            }
+            var offset = longReader.get();
+            longReader.reset();
+            if (state == State.WAITING_START) {
+                start = offset;
+                state = State.WAITING_END;
+                continue;
+            }
+            var previousEnd = ranges.isEmpty() ? 0 : ranges.getLast().end();
+            if (start < previousEnd || offset <= start) {
+                state = State.ERROR;
+                return ProcessStatus.ERROR;
+            }
+            ranges.add(new FileResume.Range(start, offset));
+            state = State.WAITING_START;
+        }
+        value = new FileResume(transferId, ranges);
+        state = State.DONE;
+        return ProcessStatus.DONE;
+    }
+
+    @Override
+    public FileResume get() {
+        if (state != State.DONE) {
+            throw new IllegalStateException();
+        }
+        return value;
+    }
+
+    @Override
+    public void reset() {
+        state = State.WAITING_ID;
+        longReader.reset();
+        countReader.reset();
+        ranges.clear();
+        value = null;
+    }
+}
@@ -0,0 +1,316 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32C;
+
+/**
+ * Sends a file on a private connection: its {@link FileHeader}, then, once the receiver has answered
+ * with a {@link FileResume}, the chunks it does not hold yet, each one a FILE_CHUNK frame.
+ * <p>
+ * Chunks are handed out one at a time by {@link #nextChunk()}, in increasing offsets, so that they
+ * can be sent on several connections to the same receiver at once; a chunk abandoned because its
+ * connection closed is handed out again first. The bytes of a chunk are handed to the channel with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which the operating system can
+ * perform without copying them to user space (sendfile on Linux). Their checksum is computed on a
+ * read-only mapping of the file, a window of 64 chunks at a time: sending a file of any size uses
+ * no heap beyond the frame headers.
+ * <p>
+ * This class is not thread-safe: a sender and its chunks must only be used by the thread owning
+ * their channels.
+ */
+public final class FileSender implements Closeable {
+    // chunks covered by each mapping used to compute the checksums
+    private static final int WINDOW_CHUNKS = 64;
+
+    private final Path path;
+    private final FileChannel file;
+    private final FileHeader header;
+    private final ByteBuffer headerBuffer;
+    private final CRC32C crc = new CRC32C();
+
+    // ranges held by the receiver, null until it has answered
+    private List<FileResume.Range> completed;
+    private int completedIndex;
+    private long nextOffset;
+    private final ArrayDeque<Long> abandoned = new ArrayDeque<>();
+    private int inFlight;
+    private long sent;
+    private long skipped;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    /**
+     * A chunk handed out by {@link #nextChunk()}: its FILE_CHUNK header, then its bytes.
+     */
+    public final class Chunk {
+        private final ByteBuffer headerBuffer;
+        private final long offset;
+        private long position;
+        private final long end;
+        private boolean finished;
+
+        private Chunk(long offset) throws IOException {
+            var length = header.chunkLength(offset);
+            this.headerBuffer = new ChunkHeader(header.transferId(), offset, length, checksum(offset, length)).encode();
+            this.offset = offset;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        public long offset() {
+            return offset;
+        }
+
+        /**
+         * Writes the header then the bytes of the chunk, as far as the channel accepts.
+         *
+         * @param channel the non-blocking channel to write to
+         * @return {@code true} once the whole frame has been written
+         * @throws IOException if the write fails or the file was truncated since it was opened
+         */
+        public boolean transfer(WritableByteChannel channel) throws IOException {
+            if (finished) {
+                return true;
+            }
+            if (headerBuffer.hasRemaining()) {
+                channel.write(headerBuffer);
+                if (headerBuffer.hasRemaining()) {
+                    return false;
+                }
+            }
+            while (position < end) {
+                var written = file.transferTo(position, end - position, channel);
+                if (written == 0) {
+                    if (file.size() < header.size()) {
+                        throw new IOException("file truncated while being sent: " + header.name());
+                    }
+                    return false; // the channel is full
+                }
+                position += written;
+                sent += written;
+            }
+            finished = true;
+            inFlight--;
+            return true;
+        }
+
+        /**
+         * Gives the chunk back, to be handed out again, if it has not been entirely written.
+         */
+        public void abandon() {
+            if (!finished) {
+                finished = true;
+                inFlight--;
+                abandoned.addFirst(offset);
+            }
+        }
+    }
+
+    /**
+     * Opens the file for reading, to be sent in chunks of {@link FileHeader#DEFAULT_CHUNK_SIZE} bytes.
+     *
+     * @param path the file to send
+     * @throws IOException if the file cannot be opened
+     */
+    public FileSender(Path path) throws IOException {
+        this(path, FileHeader.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Opens the file for reading. The file is sent under its own name, without its directory, and
+     * its modification time as fingerprint. The chunk size is enlarged if the file would otherwise
+     * have more than {@link FileHeader#MAX_CHUNKS} chunks.
+     *
+     * @param path      the file to send
+     * @param chunkSize the number of bytes of each chunk but the last
+     * @throws IOException if the file cannot be opened or is too large to be cut into chunks
+     */
+    public FileSender(Path path, int chunkSize) throws IOException {
+        this.path = path;
+        this.file = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            var size = file.size();
+            var actualChunkSize = FileHeader.chunkSizeFor(size, chunkSize);
+            if (actualChunkSize > FileHeader.MAX_CHUNK_SIZE) {
+                throw new IOException("file too large: " + size + " bytes");
+            }
+            this.header = new FileHeader(ThreadLocalRandom.current().nextLong(), path.getFileName().toString(),
+                    size, Files.getLastModifiedTime(path).toMillis(), (int) actualChunkSize);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        this.headerBuffer = header.encode();
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public FileHeader header() {
+        return header;
+    }
+
+    /**
+     * Returns the number of chunk bytes already handed to the channels.
+     *
+     * @return the number of bytes sent, frame headers excluded
+     */
+    public long sent() {
+        return sent;
+    }
+
+    /**
+     * Returns the number of bytes skipped because the receiver already held them.
+     *
+     * @return the number of bytes not sent again
+     */
+    public long skipped() {
+        return skipped;
+    }
+
+    /**
+     * Returns whether the header has been partially written: it must be completed before anything
+     * else is written to the channel.
+     *
+     * @return {@code true} while the header is being written
+     */
+    public boolean inHeader() {
+        return headerBuffer.position() > 0 && headerBuffer.hasRemaining();
+    }
+
+    /**
+     * Returns whether the header has been written and the receiver has not answered yet.
+     *
+     * @return {@code true} while no chunk can be sent
+     */
+    public boolean awaitingResume() {
+        return !headerBuffer.hasRemaining() && completed == null;
+    }
+
+    /**
+     * Returns whether a chunk remains to be handed out.
+     *
+     * @return {@code true} if {@link #nextChunk()} would return a chunk
+     */
+    public boolean hasNextChunk() {
+        return completed != null && (!abandoned.isEmpty() || nextMissingChunk() >= 0);
+    }
+
+    /**
+     * Returns whether every chunk missing from the receiver has been handed to a channel.
+     *
+     * @return {@code true} once the transfer is done
+     */
+    public boolean isDone() {
+        return completed != null && inFlight == 0 && !hasNextChunk();
+    }
+
+    /**
+     * Takes the answer of the receiver into account: the chunks contained in its ranges are skipped.
+     *
+     * @param resume the answer to the header
+     * @throws IOException if the answer is not for this transfer or comes twice
+     */
+    public void resume(FileResume resume) throws IOException {
+        if (resume.transferId() != header.transferId()) {
+            throw new IOException("FILE_RESUME for another transfer: " + resume.transferId());
+        }
+        if (!awaitingResume()) {
+            throw new IOException("unexpected FILE_RESUME for " + header.name());
+        }
+        completed = resume.completed();
+    }
+
+    /**
+     * Writes the header as far as the channel accepts.
+     *
+     * @param channel the non-blocking channel to write to
+     * @return {@code true} once the header has been written whole
+     * @throws IOException if the write fails
+     */
+    public boolean transferHeader(WritableByteChannel channel) throws IOException {
+        if (headerBuffer.hasRemaining()) {
+            channel.write(headerBuffer);
+        }
+        return !headerBuffer.hasRemaining();
+    }
+
+    /**
+     * Hands out the next chunk to send, an abandoned one first.
+     *
+     * @return the chunk, or {@code null} if none remains or the receiver has not answered yet
+     * @throws IOException if the file was truncated since it was opened
+     */
+    public Chunk nextChunk() throws IOException {
+        if (completed == null) {
+            return null;
+        }
+        long offset;
+        if (!abandoned.isEmpty()) {
+            offset = abandoned.poll();
+        } else {
+            offset = nextMissingChunk();
+            if (offset < 0) {
+                return null;
+            }
+            nextOffset = offset + header.chunkLength(offset);
+        }
+        var chunk = new Chunk(offset);
+        inFlight++;
+        return chunk;
+    }
+
+    /**
+     * Returns the offset of the next chunk not contained in the receiver ranges, -1 if none is left.
+     */
+    private long nextMissingChunk() {
+        var size = header.size();
+        while (nextOffset < size) {
+            while (completedIndex < completed.size() && completed.get(completedIndex).end() <= nextOffset) {
+                completedIndex++;
+            }
+            var end = nextOffset + header.chunkLength(nextOffset);
+            if (completedIndex == completed.size() || completed.get(completedIndex).start() > nextOffset
+                    || completed.get(completedIndex).end() < end) {
+                return nextOffset;
+            }
+            skipped += end - nextOffset;
+            nextOffset = end;
+        }
+        return -1;
+    }
+
+    private int checksum(long offset, int length) throws IOException {
+        if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+            // reading a mapping past the end of a truncated file would crash the virtual machine
+            if (file.size() < header.size()) {
+                throw new IOException("file truncated while being sent: " + header.name());
+            }
+            windowStart = offset;
+            window = file.map(FileChannel.MapMode.READ_ONLY, offset,
+                    Math.min((long) WINDOW_CHUNKS * header.chunkSize(), header.size() - offset));
+        }
+        crc.reset();
+        crc.update(window.slice((int) (offset - windowStart), length));
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        file.close();
+    }
+}
@@ -35,6 +35,11 @@ public class IntReader implements Reader<Integer> {
         if (state == State.DONE || state == State.ERROR) {
             throw new IllegalStateException();
         }
+        if (internalBuffer.position() == 0 && buffer.remaining() >= Integer.BYTES) {
+            value = buffer.getInt();
+            state = State.DONE;
+            return ProcessStatus.DONE;
+        }
         while (buffer.hasRemaining() && internalBuffer.hasRemaining()) {
             internalBuffer.put(buffer.get());
         }
@@ -61,6 +66,19 @@ public class IntReader implements Reader<Integer> {
         return value;
     }
 
+    /**
+     * Returns the integer value read by this reader, without boxing it.
+     *
+     * @return the integer value
+     * @throws IllegalStateException if the value is not yet available
+     */
+    public int getInt() {
+        if (state != State.DONE) {
+            throw new IllegalStateException();
+        }
+        return value;
+    }
+
     /**
      * Resets the reader, clearing any accumulated bytes and making it ready to read another integer.
      */
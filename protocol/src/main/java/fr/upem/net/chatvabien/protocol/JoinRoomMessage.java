@@ -0,0 +1,36 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Entrée dans un salon (JOIN_ROOM) ; le serveur renvoie le même message pour confirmer l'entrée.
+ */
+public record JoinRoomMessage(String room) implements Message {
+    /**
+     * Taille maximale en octets d'un nom de salon.
+     */
+    public static final int MAX_ROOM_NAME_SIZE = 64;
+
+    /**
+     * Nom de salon non vide, sans espace et d'au plus {@link #MAX_ROOM_NAME_SIZE} octets.
+     */
+    public static boolean isValidRoomName(String room) {
+        return !room.isEmpty() && room.getBytes(StandardCharsets.UTF_8).length <= MAX_ROOM_NAME_SIZE
+                && room.codePoints().noneMatch(Character::isWhitespace);
+    }
+
+    @Override
+    public ByteBuffer serialize() {
+        var roomBytes = StandardCharsets.UTF_8.encode(room);
+        return ByteBuffer.allocate(Integer.BYTES + roomBytes.remaining())
+                .putInt(roomBytes.remaining())
+                .put(roomBytes)
+                .flip();
+    }
+
+    @Override
+    public void process(ServerMessageProcessor processor) {
+        processor.processJoinRoom(room);
+    }
+}
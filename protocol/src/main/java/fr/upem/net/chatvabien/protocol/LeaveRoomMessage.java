@@ -0,0 +1,23 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sortie d'un salon (LEAVE_ROOM) ; le serveur renvoie le même message pour confirmer la sortie.
+ */
+public record LeaveRoomMessage(String room) implements Message {
+    @Override
+    public ByteBuffer serialize() {
+        var roomBytes = StandardCharsets.UTF_8.encode(room);
+        return ByteBuffer.allocate(Integer.BYTES + roomBytes.remaining())
+                .putInt(roomBytes.remaining())
+                .put(roomBytes)
+                .flip();
+    }
+
+    @Override
+    public void process(ServerMessageProcessor processor) {
+        processor.processLeaveRoom(room);
+    }
+}
@@ -0,0 +1,21 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Limites du serveur (LIMITS), annoncées au client une fois sa connexion acceptée :
+ * taille maximale en octets d'une chaîne encodée, dans un sens comme dans l'autre.
+ */
+public record LimitsMessage(int maxStringSize) implements Message {
+    @Override
+    public ByteBuffer serialize() {
+        return ByteBuffer.allocate(Integer.BYTES)
+                .putInt(maxStringSize)
+                .flip();
+    }
+
+    @Override
+    public void process(ServerMessageProcessor processor) {
+        // envoyé par le serveur uniquement, ignoré s'il est reçu
+    }
+}
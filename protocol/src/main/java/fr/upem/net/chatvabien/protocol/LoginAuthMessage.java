@@ -0,0 +1,29 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Connexion avec mot de passe (LOGINAUTH) : le login est l'expéditeur de la trame,
+ * le mot de passe est vérifié par le serveur MDP.
+ */
+public record LoginAuthMessage(String password) implements Message {
+    @Override
+    public ByteBuffer serialize() {
+        var passwordBytes = StandardCharsets.UTF_8.encode(password);
+        return ByteBuffer.allocate(Integer.BYTES + passwordBytes.remaining())
+                .putInt(passwordBytes.remaining())
+                .put(passwordBytes)
+                .flip();
+    }
+
+    @Override
+    public void process(ServerMessageProcessor processor) {
+        processor.processLoginAuth(password);
+    }
+
+    @Override
+    public String toString() {
+        return "LoginAuthMessage[password=***]";
+    }
+}
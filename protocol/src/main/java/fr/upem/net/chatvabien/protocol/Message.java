@@ -7,8 +7,10 @@ import java.nio.ByteBuffer;
  * Utilise le polymorphisme au lieu de instanceof
  */
 public sealed interface Message
-        permits LoginMessage, PublicMessage, PrivateRequestMessage,
-        OKPrivateMessage, KOPrivateMessage, GetUsersMessage {
+        permits LoginMessage, LoginAuthMessage, PublicMessage, PrivateRequestMessage,
+        OKPrivateMessage, KOPrivateMessage, GetUsersMessage, LimitsMessage,
+        UsersPageMessage, UsersDeltaMessage, SubscribeUsersMessage,
+        JoinRoomMessage, LeaveRoomMessage, RoomMessage, ResumeMessage {
 
     /**
      * Sérialise le message dans un ByteBuffer
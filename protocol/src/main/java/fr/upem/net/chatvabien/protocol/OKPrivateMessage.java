@@ -0,0 +1,78 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Acceptation d'une connexion privée (OK_PRIVATE) : pseudo du demandeur, adresse IP (famille sur un
+ * octet puis 4 ou 16 octets), port et jeton à présenter par OPEN, le tout formant un contenu préfixé
+ * par sa taille.
+ */
+public record OKPrivateMessage(String targetPseudo, InetSocketAddress address, long token) implements Message {
+    private static final byte IPV4 = 0x04;
+    private static final byte IPV6 = 0x06;
+
+    /**
+     * Décode le contenu d'une acceptation, sans son entier de taille.
+     *
+     * @throws IllegalArgumentException si le contenu est mal formé
+     */
+    public static OKPrivateMessage decode(ByteBuffer content) {
+        if (content.remaining() < Integer.BYTES) {
+            throw new IllegalArgumentException("missing target size");
+        }
+        var size = content.getInt();
+        if (size < 0 || size > content.remaining()) {
+            throw new IllegalArgumentException("invalid target size: " + size);
+        }
+        var target = StandardCharsets.UTF_8.decode(content.slice(content.position(), size)).toString();
+        content.position(content.position() + size);
+        if (!content.hasRemaining()) {
+            throw new IllegalArgumentException("missing address family");
+        }
+        var addressBytes = switch (content.get()) {
+            case IPV4 -> new byte[4];
+            case IPV6 -> new byte[16];
+            default -> throw new IllegalArgumentException("invalid address family");
+        };
+        if (content.remaining() != addressBytes.length + Integer.BYTES + Long.BYTES) {
+            throw new IllegalArgumentException("invalid private acceptance size");
+        }
+        content.get(addressBytes);
+        var port = content.getInt();
+        var token = content.getLong();
+        try {
+            return new OKPrivateMessage(target, new InetSocketAddress(InetAddress.getByAddress(addressBytes), port), token);
+        } catch (UnknownHostException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid address: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public ByteBuffer serialize() {
+        var targetBytes = StandardCharsets.UTF_8.encode(targetPseudo);
+        var addressBytes = address.getAddress().getAddress();
+        var size = Integer.BYTES + targetBytes.remaining()  // target
+                + Byte.BYTES + addressBytes.length            // IP
+                + Integer.BYTES                               // port
+                + Long.BYTES;                                 // token
+
+        return ByteBuffer.allocate(Integer.BYTES + size)
+                .putInt(size)
+                .putInt(targetBytes.remaining())
+                .put(targetBytes)
+                .put(addressBytes.length == 4 ? IPV4 : IPV6)
+                .put(addressBytes)
+                .putInt(address.getPort())
+                .putLong(token)
+                .flip();
+    }
+
+    @Override
+    public void process(ServerMessageProcessor processor) {
+        processor.processOKPrivate(targetPseudo, address, token);
+    }
+}
@@ -43,9 +43,17 @@ public enum OPCODE {
      */
     OPEN((byte) 0x08),
     /**
-     * File data transfer opcode.
+     * File offer opcode, sent on a private connection before the file chunks.
      */
     FILE((byte) 0x09),
+    /**
+     * Reply to a file offer listing the byte ranges the receiver already holds.
+     */
+    FILE_RESUME((byte) 0x0A),
+    /**
+     * File chunk opcode: an offset, a length and a checksum, followed by the chunk bytes.
+     */
+    FILE_CHUNK((byte) 0x0B),
     /**
      * General refusal or "not allowed" opcode.
      */
@@ -57,7 +65,50 @@ public enum OPCODE {
     /**
      * Response containing the list of connected users opcode.
      */
-    CONNECTED_USERS_LIST((byte) 0x12);
+    CONNECTED_USERS_LIST((byte) 0x12),
+    /**
+     * Server limits advertisement opcode, sent after the login is accepted.
+     */
+    LIMITS((byte) 0x13),
+    /**
+     * Page of the connected users snapshot opcode.
+     */
+    USERS_SNAPSHOT((byte) 0x14),
+    /**
+     * Connected users change (joins, leaves and version) opcode.
+     */
+    USERS_DELTA((byte) 0x15),
+    /**
+     * Subscription to the connected users snapshot and changes opcode.
+     */
+    SUBSCRIBE_USERS((byte) 0x16),
+    /**
+     * Room join request opcode, echoed by the server once the room is joined.
+     */
+    JOIN_ROOM((byte) 0x20),
+    /**
+     * Room leave request opcode, echoed by the server once the room is left.
+     */
+    LEAVE_ROOM((byte) 0x21),
+    /**
+     * Message addressed to the members of a room opcode.
+     */
+    ROOM_MESSAGE((byte) 0x22),
+    /**
+     * Public message history resume opcode, carrying a message sequence number.
+     */
+    RESUME((byte) 0x23);
+
+    /**
+     * OPCODE indexed by unsigned byte code, {@code null} for unassigned codes.
+     */
+    private static final OPCODE[] BY_CODE = new OPCODE[1 << Byte.SIZE];
+
+    static {
+        for (var op : values()) {
+            BY_CODE[Byte.toUnsignedInt(op.code)] = op;
+        }
+    }
 
     private final byte code;
 
@@ -80,17 +131,12 @@ public enum OPCODE {
     }
 
     /**
-     * Retrieves the OPCODE corresponding to the given byte code.
+     * Retrieves the OPCODE corresponding to the given byte code with a single table lookup.
      *
      * @param code the byte code to look up
      * @return the matching {@link OPCODE}, or {@code null} if not found
      */
     public static OPCODE fromCode(byte code) {
-        for (OPCODE op : values()) {
-            if (op.code == code) {
-                return op;
-            }
-        }
-        return null;
+        return BY_CODE[Byte.toUnsignedInt(code)];
     }
 }
@@ -0,0 +1,183 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * A queue of outgoing buffers written to a {@link SocketChannel} with gathering writes.
+ * <p>
+ * Queued buffers are written in place, without being copied into an intermediate buffer,
+ * and at most {@link #MAX_BUFFERS_PER_WRITE} of them are handed to each
+ * {@link SocketChannel#write(ByteBuffer[], int, int)} call. The underlying deque is only
+ * allocated while buffers are queued and dropped once they have all been written, so that an
+ * idle connection does not keep a deque sized for its largest burst.
+ * <p>
+ * This class is not thread-safe: a queue must only be used by the thread owning its channel.
+ */
+public class OutboundQueue {
+    /**
+     * Maximum number of buffers passed to a single gathering write.
+     */
+    public static final int MAX_BUFFERS_PER_WRITE = 64;
+
+    private static final ThreadLocal<ByteBuffer[]> BATCH =
+            ThreadLocal.withInitial(() -> new ByteBuffer[MAX_BUFFERS_PER_WRITE]);
+
+    private static final int INITIAL_CAPACITY = 4;
+    private static final ArrayDeque<ByteBuffer> EMPTY = new ArrayDeque<>(0);
+
+    // shared empty deque while nothing is queued; never modified
+    private ArrayDeque<ByteBuffer> queue = EMPTY;
+    private long queuedBytes;
+
+    /**
+     * Appends a buffer to the queue. The buffer must not be modified until it has been written.
+     *
+     * @param buffer the bytes to send, between position and limit
+     */
+    public void offer(ByteBuffer buffer) {
+        if (queue == EMPTY) {
+            queue = new ArrayDeque<>(INITIAL_CAPACITY);
+        }
+        queue.offer(buffer);
+        queuedBytes += buffer.remaining();
+    }
+
+    /**
+     * Returns whether all queued bytes have been written.
+     *
+     * @return {@code true} if nothing is left to write
+     */
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    /**
+     * Returns the number of buffers waiting to be fully written.
+     *
+     * @return the number of queued buffers
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the number of bytes waiting to be written.
+     *
+     * @return the number of queued bytes
+     */
+    public long queuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * Removes the oldest queued buffer matching the filter. The buffer at the head of the
+     * queue is never removed since it may already be partially written.
+     *
+     * @param filter selects the buffers that may be discarded
+     * @return {@code true} if a buffer was removed
+     */
+    public boolean removeOldest(Predicate<ByteBuffer> filter) {
+        var iterator = queue.iterator();
+        if (iterator.hasNext()) {
+            iterator.next();
+        }
+        while (iterator.hasNext()) {
+            var buffer = iterator.next();
+            if (filter.test(buffer)) {
+                iterator.remove();
+                queuedBytes -= buffer.remaining();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes every queued buffer matching the filter, except the buffer at the head
+     * of the queue which may already be partially written.
+     *
+     * @param filter selects the buffers that may be discarded
+     * @return the number of buffers removed
+     */
+    public int removeAll(Predicate<ByteBuffer> filter) {
+        var removed = 0;
+        var iterator = queue.iterator();
+        if (iterator.hasNext()) {
+            iterator.next();
+        }
+        while (iterator.hasNext()) {
+            var buffer = iterator.next();
+            if (filter.test(buffer)) {
+                iterator.remove();
+                queuedBytes -= buffer.remaining();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Writes as many queued bytes as the channel accepts, batching up to
+     * {@link #MAX_BUFFERS_PER_WRITE} buffers per system call. Fully written buffers
+     * are removed from the queue.
+     *
+     * @param sc the channel to write to
+     * @return the number of bytes written
+     * @throws IOException if the write fails
+     */
+    public long flush(SocketChannel sc) throws IOException {
+        return flush(sc, null);
+    }
+
+    /**
+     * Same as {@link #flush(SocketChannel)}, also counting the write system calls made.
+     *
+     * @param sc         the channel to write to
+     * @param writeCalls incremented once per gathering write, or {@code null}
+     * @return the number of bytes written
+     * @throws IOException if the write fails
+     */
+    public long flush(SocketChannel sc, LongAdder writeCalls) throws IOException {
+        var batch = BATCH.get();
+        var total = 0L;
+        while (!queue.isEmpty()) {
+            var count = 0;
+            var expected = 0L;
+            for (var buffer : queue) {
+                if (count == batch.length) {
+                    break;
+                }
+                batch[count++] = buffer;
+                expected += buffer.remaining();
+            }
+
+            long written;
+            try {
+                if (writeCalls != null) {
+                    writeCalls.increment();
+                }
+                written = sc.write(batch, 0, count);
+            } finally {
+                Arrays.fill(batch, 0, count, null);
+            }
+            total += written;
+            queuedBytes -= written;
+            while (!queue.isEmpty() && !queue.peek().hasRemaining()) {
+                queue.poll();
+            }
+            if (written < expected) {
+                break; // the socket send buffer is full
+            }
+        }
+        if (queue.isEmpty()) {
+            queue = EMPTY;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,20 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A frame of the protocol spoken on a private connection once it has been opened.
+ * <p>
+ * Text is sent as {@link PrivateMessage}s. A file is offered by a {@link FileHeader}, answered by a
+ * {@link FileResume} listing the ranges the receiver already holds, then sent as
+ * {@link ChunkHeader}-prefixed chunks covering the other ranges.
+ */
+public sealed interface PrivateFrame permits PrivateMessage, FileHeader, FileResume, ChunkHeader {
+
+    /**
+     * Encodes the opcode followed by this frame.
+     *
+     * @return a buffer in read mode
+     */
+    ByteBuffer encode();
+}
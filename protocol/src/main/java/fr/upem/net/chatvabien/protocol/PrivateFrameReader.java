@@ -0,0 +1,107 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@code Reader} implementation that reads a {@link PrivateFrame}, opcode included.
+ * <p>
+ * Reading fails on an opcode that does not start a private frame or on an invalid frame. After a
+ * {@link ChunkHeader}, the chunk bytes are left in the buffer: the caller consumes them before
+ * reading the next frame.
+ */
+public class PrivateFrameReader implements Reader<PrivateFrame> {
+
+    private enum State {WAITING_OPCODE, WAITING_FRAME, DONE, ERROR}
+
+    private final PrivateMessageReader messageReader;
+    private final FileHeaderReader fileHeaderReader;
+    private final FileResumeReader fileResumeReader = new FileResumeReader();
+    private final ChunkHeaderReader chunkHeaderReader = new ChunkHeaderReader();
+    private State state = State.WAITING_OPCODE;
+    private Reader<? extends PrivateFrame> frameReader;
+    private PrivateFrame value;
+
+    /**
+     * Creates a reader accepting strings of at most {@link StringReader#MAX_STRING_SIZE} bytes.
+     */
+    public PrivateFrameReader() {
+        this(StringReader.MAX_STRING_SIZE);
+    }
+
+    /**
+     * Creates a reader accepting message senders and texts, and file names, of at most
+     * {@code maxStringSize} bytes.
+     *
+     * @param maxStringSize the maximum number of bytes of an encoded string
+     */
+    public PrivateFrameReader(int maxStringSize) {
+        this.messageReader = new PrivateMessageReader(maxStringSize);
+        this.fileHeaderReader = new FileHeaderReader(maxStringSize);
+    }
+
+    /**
+     * Returns whether no byte of the next frame has been read yet.
+     *
+     * @return {@code true} if the reader waits for an opcode
+     */
+    public boolean isIdle() {
+        return state == State.WAITING_OPCODE;
+    }
+
+    @Override
+    public ProcessStatus process(ByteBuffer bb) {
+        if (state == State.DONE || state == State.ERROR) {
+            throw new IllegalStateException();
+        }
+        if (state == State.WAITING_OPCODE) {
+            if (!bb.hasRemaining()) {
+                return ProcessStatus.REFILL;
+            }
+            var opcode = OPCODE.fromCode(bb.get());
+            if (opcode == null) {
+                state = State.ERROR;
+                return ProcessStatus.ERROR;
+            }
+            frameReader = switch (opcode) {
+                case MESSAGE -> messageReader;
+                case FILE -> fileHeaderReader;
+                case FILE_RESUME -> fileResumeReader;
+                case FILE_CHUNK -> chunkHeaderReader;
+                default -> null;
+            };
+            if (frameReader == null) {
+                state = State.ERROR;
+                return ProcessStatus.ERROR;
+            }
+            state = State.WAITING_FRAME;
+        }
+        var status = frameReader.process(bb);
+        switch (status) {
+            case DONE -> {
+                value = frameReader.get();
+                state = State.DONE;
+            }
+            case ERROR -> state = State.ERROR;
+            default -> { }
+        }
+        return status;
+    }
+
+    @Override
+    public PrivateFrame get() {
+        if (state != State.DONE) {
+            throw new IllegalStateException();
+        }
+        return value;
+    }
+
+    @Override
+    public void reset() {
+        state = State.WAITING_OPCODE;
+        if (frameReader != null) {
+            frameReader.reset();
+            frameReader = null;
+        }
+        value = null;
+    }
+}
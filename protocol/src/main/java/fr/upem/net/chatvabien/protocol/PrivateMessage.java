@@ -0,0 +1,33 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * A MESSAGE frame sent on a private connection: the pseudo of the sender then the text, each as an
+ * {@code int} size followed by its UTF-8 bytes.
+ *
+ * @param sender the pseudo of the sender
+ * @param text   the text of the message
+ */
+public record PrivateMessage(String sender, String text) implements PrivateFrame {
+
+    public PrivateMessage {
+        Objects.requireNonNull(sender);
+        Objects.requireNonNull(text);
+    }
+
+    @Override
+    public ByteBuffer encode() {
+        var senderBytes = sender.getBytes(StandardCharsets.UTF_8);
+        var textBytes = text.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(Byte.BYTES + 2 * Integer.BYTES + senderBytes.length + textBytes.length)
+                .put(OPCODE.MESSAGE.getCode())
+                .putInt(senderBytes.length)
+                .put(senderBytes)
+                .putInt(textBytes.length)
+                .put(textBytes)
+                .flip();
+    }
+}
@@ -0,0 +1,116 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A {@code Reader} implementation that reads a {@link PrivateMessage}, the MESSAGE opcode excluded.
+ * <p>
+ * Both strings are read into a single array reused from one message to the next, grown to the
+ * largest string received. The sender is only decoded when it differs from the previous one: on a
+ * private connection, where it never changes, reading a message allocates nothing but its text and
+ * the frame. Reading fails if a string is larger than the maximum size.
+ */
+public class PrivateMessageReader implements Reader<PrivateMessage> {
+
+    private enum State {WAITING_SENDER_SIZE, WAITING_SENDER, WAITING_TEXT_SIZE, WAITING_TEXT, DONE, ERROR}
+
+    private final IntReader intReader = new IntReader();
+    private final int maxSize;
+    private State state = State.WAITING_SENDER_SIZE;
+    private byte[] bytes = new byte[0];
+    private int size;
+    private int filled;
+    // encoded and decoded sender of the previous message
+    private byte[] senderBytes;
+    private String sender;
+    private PrivateMessage value;
+
+    /**
+     * Creates a reader accepting strings of at most {@link StringReader#MAX_STRING_SIZE} bytes.
+     */
+    public PrivateMessageReader() {
+        this(StringReader.MAX_STRING_SIZE);
+    }
+
+    /**
+     * Creates a reader accepting strings of at most {@code maxSize} bytes.
+     *
+     * @param maxSize the maximum number of bytes of the encoded sender or text
+     * @throws IllegalArgumentException if {@code maxSize} is negative
+     */
+    public PrivateMessageReader(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must be >= 0: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public ProcessStatus process(ByteBuffer bb) {
+        if (state == State.DONE || state == State.ERROR) {
+            throw new IllegalStateException();
+        }
+        while (true) {
+            switch (state) {
+                case WAITING_SENDER_SIZE, WAITING_TEXT_SIZE -> {
+                    var status = intReader.process(bb);
+                    if (status != ProcessStatus.DONE) {
+                        return status;
+                    }
+                    size = intReader.getInt();
+                    intReader.reset();
+                    if (size < 0 || size > maxSize) {
+                        state = State.ERROR;
+                        return ProcessStatus.ERROR;
+                    }
+                    if (bytes.length < size) {
+                        bytes = new byte[size];
+                    }
+                    filled = 0;
+                    state = state == State.WAITING_SENDER_SIZE ? State.WAITING_SENDER : State.WAITING_TEXT;
+                }
+                case WAITING_SENDER, WAITING_TEXT -> {
+                    var count = Math.min(bb.remaining(), size - filled);
+                    bb.get(bytes, filled, count);
+                    filled += count;
+                    if (filled < size) {
+                        return ProcessStatus.REFILL;
+                    }
+                    if (state == State.WAITING_SENDER) {
+                        decodeSender();
+                        state = State.WAITING_TEXT_SIZE;
+                    } else {
+                        value = new PrivateMessage(sender, new String(bytes, 0, size, StandardCharsets.UTF_8));
+                        state = State.DONE;
+                        return ProcessStatus.DONE;
+                    }
+                }
+                default -> throw new AssertionError();
+            }
+        }
+    }
+
+    private void decodeSender() {
+        if (senderBytes == null || !Arrays.equals(bytes, 0, size, senderBytes, 0, senderBytes.length)) {
+            senderBytes = Arrays.copyOf(bytes, size);
+            sender = new String(bytes, 0, size, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Override
+    public PrivateMessage get() {
+        if (state != State.DONE) {
+            throw new IllegalStateException();
+        }
+        return value;
+    }
+
+    @Override
+    public void reset() {
+        state = State.WAITING_SENDER_SIZE;
+        intReader.reset();
+        value = null;
+    }
+}
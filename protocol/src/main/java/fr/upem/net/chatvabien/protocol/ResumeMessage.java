@@ -0,0 +1,48 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reprise de l'historique des messages publics (RESUME), portant l'époque du serveur et un numéro
+ * de séquence.
+ * <p>
+ * L'époque identifie une exécution du serveur, dont les numéros repartent de zéro à chaque
+ * démarrage. Envoyé par le client, le numéro est celui du dernier message public reçu et l'époque
+ * celle de la dernière réponse du serveur ({@link #NO_EPOCH} si aucune) : le serveur renvoie les
+ * messages suivants encore dans son historique si l'époque est la sienne. Un numéro négatif ne
+ * demande aucun message. Le serveur répond par un RESUME portant son époque et le numéro du dernier
+ * message public envoyé à la connexion ; chaque message public d'un utilisateur reçu ensuite
+ * incrémente ce numéro de un.
+ */
+public record ResumeMessage(long epoch, long sequence) implements Message {
+    /**
+     * Époque d'un client qui n'a encore reçu aucune réponse RESUME ; jamais celle d'un serveur.
+     */
+    public static final long NO_EPOCH = 0;
+
+    /**
+     * Décode le contenu d'une reprise, sans son entier de taille.
+     *
+     * @throws IllegalArgumentException si le contenu est mal formé
+     */
+    public static ResumeMessage decode(ByteBuffer content) {
+        if (content.remaining() != 2 * Long.BYTES) {
+            throw new IllegalArgumentException("invalid resume size: " + content.remaining());
+        }
+        return new ResumeMessage(content.getLong(), content.getLong());
+    }
+
+    @Override
+    public ByteBuffer serialize() {
+        return ByteBuffer.allocate(Integer.BYTES + 2 * Long.BYTES)
+                .putInt(2 * Long.BYTES)
+                .putLong(epoch)
+                .putLong(sequence)
+                .flip();
+    }
+
+    @Override
+    public void process(ServerMessageProcessor processor) {
+        processor.processResume(epoch, sequence);
+    }
+}
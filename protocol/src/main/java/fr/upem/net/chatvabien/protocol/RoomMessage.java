@@ -0,0 +1,63 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Message adressé aux membres d'un salon (ROOM_MESSAGE) : nom du salon puis texte, chacun
+ * préfixé par sa taille, le tout formant un seul contenu soumis à la taille maximale des chaînes.
+ */
+public record RoomMessage(String room, String text) implements Message {
+
+    /**
+     * Décode le contenu d'un message de salon, sans son entier de taille.
+     *
+     * @throws IllegalArgumentException si le contenu est mal formé
+     */
+    public static RoomMessage decode(ByteBuffer content) {
+        var room = getString(content, "room");
+        var text = getString(content, "text");
+        if (content.hasRemaining()) {
+            throw new IllegalArgumentException("trailing bytes in room message");
+        }
+        return new RoomMessage(room, text);
+    }
+
+    private static String getString(ByteBuffer content, String field) {
+        if (content.remaining() < Integer.BYTES) {
+            throw new IllegalArgumentException("missing " + field + " size");
+        }
+        var size = content.getInt();
+        if (size < 0 || size > content.remaining()) {
+            throw new IllegalArgumentException("invalid " + field + " size: " + size);
+        }
+        var value = StandardCharsets.UTF_8.decode(content.slice(content.position(), size)).toString();
+        content.position(content.position() + size);
+        return value;
+    }
+
+    /**
+     * Taille en octets du contenu encodé, à comparer à la taille maximale des chaînes.
+     */
+    public int contentSize() {
+        return 2 * Integer.BYTES + room.getBytes(StandardCharsets.UTF_8).length
+                + text.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    @Override
+    public ByteBuffer serialize() {
+        var roomBytes = room.getBytes(StandardCharsets.UTF_8);
+        var textBytes = text.getBytes(StandardCharsets.UTF_8);
+        var size = 2 * Integer.BYTES + roomBytes.length + textBytes.length;
+        return ByteBuffer.allocate(Integer.BYTES + size)
+                .putInt(size)
+                .putInt(roomBytes.length).put(roomBytes)
+                .putInt(textBytes.length).put(textBytes)
+                .flip();
+    }
+
+    @Override
+    public void process(ServerMessageProcessor processor) {
+        processor.processRoomMessage(room, text);
+    }
+}
@@ -8,9 +8,15 @@ import java.net.InetSocketAddress;
  */
 public interface ServerMessageProcessor {
     void processLogin();
+    void processLoginAuth(String password);
     void processPublicMessage(String text);
     void processPrivateRequest(String targetPseudo);
     void processOKPrivate(String targetPseudo, InetSocketAddress address, long token);
     void processKOPrivate(String targetPseudo);
     void processGetUsers();
+    void processSubscribeUsers();
+    void processJoinRoom(String room);
+    void processLeaveRoom(String room);
+    void processRoomMessage(String room, String text);
+    void processResume(long epoch, long sequence);
 }
\ No newline at end of file
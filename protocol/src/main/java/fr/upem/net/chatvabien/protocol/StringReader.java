@@ -15,6 +15,11 @@ import java.nio.charset.StandardCharsets;
  */
 public class StringReader implements Reader<String> {
 
+    /**
+     * The default maximum number of bytes accepted for an encoded string.
+     */
+    public static final int MAX_STRING_SIZE = 1024;
+
     /**
      * The internal states for reading a string.
      */
@@ -22,11 +27,32 @@ public class StringReader implements Reader<String> {
 
     private static final Charset UTF8 = StandardCharsets.UTF_8;
     private final IntReader intReader = new IntReader();
+    private final int maxSize;
     private State state = State.WAITING_SIZE;
     private int size;
     private ByteBuffer internalBuffer;
     private String value;
 
+    /**
+     * Creates a reader accepting strings of at most {@link #MAX_STRING_SIZE} bytes.
+     */
+    public StringReader() {
+        this(MAX_STRING_SIZE);
+    }
+
+    /**
+     * Creates a reader accepting strings of at most {@code maxSize} bytes.
+     *
+     * @param maxSize the maximum number of bytes of an encoded string
+     * @throws IllegalArgumentException if {@code maxSize} is negative
+     */
+    public StringReader(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must be >= 0: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
     /**
      * Processes bytes from the provided {@link ByteBuffer} to read a UTF-8 string.
      * First reads the length (as an integer), then reads the string bytes,
@@ -53,7 +79,7 @@ public class StringReader implements Reader<String> {
             size = intReader.get();
             intReader.reset();
 
-            if (size < 0 || size > 1024) {
+            if (size < 0 || size > maxSize) {
                 state = State.ERROR;
                 return ProcessStatus.ERROR;
             }
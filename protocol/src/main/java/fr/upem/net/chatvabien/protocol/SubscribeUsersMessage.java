@@ -0,0 +1,19 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Abonnement à la présence (SUBSCRIBE_USERS) : le serveur répond par l'état courant puis
+ * envoie ses évolutions.
+ */
+public record SubscribeUsersMessage() implements Message {
+    @Override
+    public ByteBuffer serialize() {
+        return ByteBuffer.allocate(0);
+    }
+
+    @Override
+    public void process(ServerMessageProcessor processor) {
+        processor.processSubscribeUsers();
+    }
+}
@@ -24,6 +24,13 @@ public record Trame(OPCODE opcode, String sender, Message message) {
                 .flip();
     }
 
+    /**
+     * Sérialise la trame une seule fois pour l'envoyer à plusieurs destinataires
+     */
+    public EncodedTrame encode() {
+        return EncodedTrame.of(this);
+    }
+
     /**
      * Factory pour créer des trames de réponse du serveur
      */
@@ -0,0 +1,358 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Reader unifié pour lire les trames complètes
+ * <p>
+ * Lorsqu'une trame entière est déjà présente dans le buffer, elle est décodée en place
+ * par lectures absolues, sans passer par les readers intermédiaires ; la machine à états
+ * incrémentale ne sert que pour les trames réparties sur plusieurs lectures.
+ * <p>
+ * Le contenu de chaque trame est décodé par le {@link PayloadParser} de son opcode,
+ * trouvé par indexation d'une table ; un opcode sans parseur est une erreur.
+ * <p>
+ * La taille maximale des chaînes est fixée à la construction ; une chaîne plus longue est une erreur.
+ */
+public class TrameReader implements Reader<Trame> {
+
+    /**
+     * Décodage du contenu propre à un opcode : aucun contenu, une chaîne, un entier ou un bloc
+     * d'octets. Un bloc est préfixé par sa taille comme une chaîne et soumis à la même limite ;
+     * son décodeur lève {@link IllegalArgumentException} si le bloc est mal formé.
+     */
+    private record PayloadParser(Supplier<Message> empty, Function<String, Message> text,
+                                 IntFunction<Message> number, Function<ByteBuffer, Message> bytes) {
+        static PayloadParser noPayload(Supplier<Message> factory) {
+            return new PayloadParser(factory, null, null, null);
+        }
+
+        static PayloadParser stringPayload(Function<String, Message> factory) {
+            return new PayloadParser(null, factory, null, null);
+        }
+
+        static PayloadParser intPayload(IntFunction<Message> factory) {
+            return new PayloadParser(null, null, factory, null);
+        }
+
+        static PayloadParser bytesPayload(Function<ByteBuffer, Message> decoder) {
+            return new PayloadParser(null, null, null, decoder);
+        }
+
+        /**
+         * Contenu préfixé par sa taille : chaîne ou bloc d'octets.
+         */
+        boolean hasSizedPayload() {
+            return text != null || bytes != null;
+        }
+
+        boolean hasIntPayload() {
+            return number != null;
+        }
+    }
+
+    private static final PayloadParser[] PARSERS = new PayloadParser[OPCODE.values().length];
+
+    static {
+        register(PayloadParser.noPayload(LoginMessage::new), OPCODE.LOGIN, OPCODE.LOGIN_ACCEPTED, OPCODE.LOGIN_REFUSED);
+        register(PayloadParser.noPayload(GetUsersMessage::new), OPCODE.GET_CONNECTED_USERS);
+        register(PayloadParser.stringPayload(LoginAuthMessage::new), OPCODE.LOGINAUTH);
+        register(PayloadParser.stringPayload(PublicMessage::new), OPCODE.MESSAGE, OPCODE.CONNECTED_USERS_LIST);
+        register(PayloadParser.bytesPayload(OKPrivateMessage::decode), OPCODE.OK_PRIVATE);
+        register(PayloadParser.stringPayload(PrivateRequestMessage::new), OPCODE.REQUEST_PRIVATE);
+        register(PayloadParser.stringPayload(KOPrivateMessage::new), OPCODE.KO_PRIVATE);
+        register(PayloadParser.intPayload(LimitsMessage::new), OPCODE.LIMITS);
+        register(PayloadParser.bytesPayload(UsersPageMessage::decode), OPCODE.USERS_SNAPSHOT);
+        register(PayloadParser.bytesPayload(UsersDeltaMessage::decode), OPCODE.USERS_DELTA);
+        register(PayloadParser.noPayload(SubscribeUsersMessage::new), OPCODE.SUBSCRIBE_USERS);
+        register(PayloadParser.stringPayload(JoinRoomMessage::new), OPCODE.JOIN_ROOM);
+        register(PayloadParser.stringPayload(LeaveRoomMessage::new), OPCODE.LEAVE_ROOM);
+        register(PayloadParser.bytesPayload(RoomMessage::decode), OPCODE.ROOM_MESSAGE);
+        register(PayloadParser.bytesPayload(ResumeMessage::decode), OPCODE.RESUME);
+    }
+
+    private static void register(PayloadParser parser, OPCODE... opcodes) {
+        for (var op : opcodes) {
+            PARSERS[op.ordinal()] = parser;
+        }
+    }
+
+    private enum State {
+        WAITING_OPCODE, WAITING_SENDER, WAITING_MESSAGE, DONE, ERROR
+    }
+
+    private State state = State.WAITING_OPCODE;
+    private final int maxStringSize;
+    private final ByteReader opcodeReader = new ByteReader();
+    private final StringReader senderReader;
+    private final StringReader messageReader;
+    private final BytesReader bytesReader;
+    private final IntReader intReader = new IntReader();
+
+    private OPCODE opcode;
+    private PayloadParser parser;
+    private String sender;
+    private Message message;
+    private byte[] scratch = new byte[0];
+
+    /**
+     * Lecteur acceptant des chaînes d'au plus {@link StringReader#MAX_STRING_SIZE} octets.
+     */
+    public TrameReader() {
+        this(StringReader.MAX_STRING_SIZE);
+    }
+
+    /**
+     * @param maxStringSize taille maximale en octets de l'expéditeur et du contenu textuel d'une trame
+     */
+    public TrameReader(int maxStringSize) {
+        this.maxStringSize = maxStringSize;
+        this.senderReader = new StringReader(maxStringSize);
+        this.messageReader = new StringReader(maxStringSize);
+        this.bytesReader = new BytesReader(maxStringSize);
+    }
+
+    /**
+     * Taille maximale en octets d'une trame dont les chaînes ont au plus {@code maxStringSize} octets.
+     */
+    public static int maxFrameSize(int maxStringSize) {
+        return Byte.BYTES + 2 * (Integer.BYTES + maxStringSize);
+    }
+
+    @Override
+    public ProcessStatus process(ByteBuffer bb) {
+        if (state == State.DONE || state == State.ERROR) {
+            throw new IllegalStateException();
+        }
+
+        if (state == State.WAITING_OPCODE && decodeContiguous(bb)) {
+            state = State.DONE;
+            return ProcessStatus.DONE;
+        }
+
+        while (true) {
+            switch (state) {
+                case WAITING_OPCODE -> {
+                    var status = opcodeReader.process(bb);
+                    if (status == ProcessStatus.DONE) {
+                        opcode = OPCODE.fromCode(opcodeReader.get());
+                        parser = opcode == null ? null : PARSERS[opcode.ordinal()];
+                        if (parser == null) {
+                            state = State.ERROR;
+                            return ProcessStatus.ERROR;
+                        }
+                        opcodeReader.reset();
+                        state = State.WAITING_SENDER;
+                    } else {
+                        return status;
+                    }
+                }
+
+                case WAITING_SENDER -> {
+                    var status = senderReader.process(bb);
+                    if (status == ProcessStatus.DONE) {
+                        sender = senderReader.get();
+                        senderReader.reset();
+                        state = State.WAITING_MESSAGE;
+                    } else {
+                        return status;
+                    }
+                }
+
+                case WAITING_MESSAGE -> {
+                    var messageStatus = parseMessage(bb);
+                    if (messageStatus == ProcessStatus.DONE) {
+                        state = State.DONE;
+                        return ProcessStatus.DONE;
+                    } else {
+                        return messageStatus;
+                    }
+                }
+
+                default -> throw new IllegalStateException();
+            }
+        }
+    }
+
+    /**
+     * Décode la trame directement dans {@code bb} si elle y est entièrement présente.
+     * Le buffer n'est avancé qu'en cas de succès ; sinon la machine à états prend le relais,
+     * y compris pour signaler les trames invalides.
+     *
+     * @return {@code true} si une trame complète a été décodée
+     */
+    private boolean decodeContiguous(ByteBuffer bb) {
+        var start = bb.position();
+        var limit = bb.limit();
+        if (limit - start < Byte.BYTES + Integer.BYTES) {
+            return false;
+        }
+
+        var op = OPCODE.fromCode(bb.get(start));
+        var payloadParser = op == null ? null : PARSERS[op.ordinal()];
+        if (payloadParser == null) {
+            return false;
+        }
+        var senderSize = bb.getInt(start + Byte.BYTES);
+        var senderOffset = start + Byte.BYTES + Integer.BYTES;
+        if (senderSize < 0 || senderSize > maxStringSize || senderSize > limit - senderOffset) {
+            return false;
+        }
+
+        var end = senderOffset + senderSize;
+        var payloadOffset = -1;
+        var payloadSize = 0;
+        if (payloadParser.hasSizedPayload()) {
+            if (limit - end < Integer.BYTES) {
+                return false;
+            }
+            payloadSize = bb.getInt(end);
+            payloadOffset = end + Integer.BYTES;
+            if (payloadSize < 0 || payloadSize > maxStringSize || payloadSize > limit - payloadOffset) {
+                return false;
+            }
+            end = payloadOffset + payloadSize;
+        } else if (payloadParser.hasIntPayload()) {
+            if (limit - end < Integer.BYTES) {
+                return false;
+            }
+            payloadOffset = end;
+            end += Integer.BYTES;
+        }
+
+        Message decoded;
+        if (payloadOffset < 0) {
+            decoded = payloadParser.empty().get();
+        } else if (payloadParser.hasIntPayload()) {
+            decoded = payloadParser.number().apply(bb.getInt(payloadOffset));
+        } else if (payloadParser.text() != null) {
+            decoded = payloadParser.text().apply(decodeString(bb, payloadOffset, payloadSize));
+        } else {
+            try {
+                decoded = payloadParser.bytes().apply(bb.slice(payloadOffset, payloadSize));
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+        opcode = op;
+        parser = payloadParser;
+        sender = decodeString(bb, senderOffset, senderSize);
+        message = decoded;
+        bb.position(end);
+        return true;
+    }
+
+    /**
+     * Taille de la trame commençant à la position de {@code bb}, lue sans avancer le buffer :
+     * exacte dès que ses longueurs sont présentes, sinon un minorant. Permet à l'appelant d'agrandir
+     * son buffer pour que la trame y tienne entière et soit décodée en place.
+     *
+     * @return la taille (ou un minorant) en octets, ou -1 si l'en-tête est invalide,
+     *         erreur que signalera {@link #process(ByteBuffer)}
+     */
+    public int frameSize(ByteBuffer bb) {
+        var start = bb.position();
+        var available = bb.remaining();
+        var header = Byte.BYTES + Integer.BYTES;
+        if (available < Byte.BYTES) {
+            return header;
+        }
+        var op = OPCODE.fromCode(bb.get(start));
+        var payloadParser = op == null ? null : PARSERS[op.ordinal()];
+        if (payloadParser == null) {
+            return -1;
+        }
+        if (available < header) {
+            return header;
+        }
+        var senderSize = bb.getInt(start + Byte.BYTES);
+        if (senderSize < 0 || senderSize > maxStringSize) {
+            return -1;
+        }
+        var size = header + senderSize;
+        if (payloadParser.hasIntPayload()) {
+            return size + Integer.BYTES;
+        }
+        if (!payloadParser.hasSizedPayload()) {
+            return size;
+        }
+        if (available < size + Integer.BYTES) {
+            return size + Integer.BYTES;
+        }
+        var payloadSize = bb.getInt(start + size);
+        if (payloadSize < 0 || payloadSize > maxStringSize) {
+            return -1;
+        }
+        return size + Integer.BYTES + payloadSize;
+    }
+
+    private String decodeString(ByteBuffer bb, int index, int size) {
+        if (bb.hasArray()) {
+            return new String(bb.array(), bb.arrayOffset() + index, size, StandardCharsets.UTF_8);
+        }
+        if (scratch.length < size) {
+            scratch = new byte[Math.max(size, 2 * scratch.length)];
+        }
+        bb.get(index, scratch, 0, size);
+        return new String(scratch, 0, size, StandardCharsets.UTF_8);
+    }
+
+    private ProcessStatus parseMessage(ByteBuffer bb) {
+        if (parser.hasIntPayload()) {
+            var status = intReader.process(bb);
+            if (status == ProcessStatus.DONE) {
+                message = parser.number().apply(intReader.get());
+                intReader.reset();
+            }
+            return status;
+        }
+        if (!parser.hasSizedPayload()) {
+            message = parser.empty().get();
+            return ProcessStatus.DONE;
+        }
+        if (parser.bytes() != null) {
+            var status = bytesReader.process(bb);
+            if (status == ProcessStatus.DONE) {
+                try {
+                    message = parser.bytes().apply(bytesReader.get());
+                } catch (IllegalArgumentException e) {
+                    return ProcessStatus.ERROR;
+                }
+                bytesReader.reset();
+            }
+            return status;
+        }
+        var status = messageReader.process(bb);
+        if (status == ProcessStatus.DONE) {
+            message = parser.text().apply(messageReader.get());
+            messageReader.reset();
+        }
+        return status;
+    }
+
+    @Override
+    public Trame get() {
+        if (state != State.DONE) {
+            throw new IllegalStateException();
+        }
+        return new Trame(opcode, sender, message);
+    }
+
+    @Override
+    public void reset() {
+        state = State.WAITING_OPCODE;
+        opcodeReader.reset();
+        senderReader.reset();
+        messageReader.reset();
+        bytesReader.reset();
+        intReader.reset();
+        opcode = null;
+        parser = null;
+        sender = null;
+        message = null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,63 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encoding of a list of pseudos shared by the presence messages: a 4-byte count followed by
+ * each pseudo as a size-prefixed UTF-8 string.
+ */
+final class UserNames {
+    private UserNames() {}
+
+    static byte[][] encode(List<String> names) {
+        var encoded = new byte[names.size()][];
+        for (var i = 0; i < encoded.length; i++) {
+            encoded[i] = names.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        return encoded;
+    }
+
+    static int size(byte[][] names) {
+        var size = Integer.BYTES;
+        for (var name : names) {
+            size += Integer.BYTES + name.length;
+        }
+        return size;
+    }
+
+    static void put(ByteBuffer buffer, byte[][] names) {
+        buffer.putInt(names.length);
+        for (var name : names) {
+            buffer.putInt(name.length).put(name);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the buffer does not hold a well-formed list
+     */
+    static List<String> get(ByteBuffer buffer) {
+        if (buffer.remaining() < Integer.BYTES) {
+            throw new IllegalArgumentException("missing pseudo count");
+        }
+        var count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / Integer.BYTES) {
+            throw new IllegalArgumentException("invalid pseudo count: " + count);
+        }
+        var names = new ArrayList<String>(count);
+        for (var i = 0; i < count; i++) {
+            if (buffer.remaining() < Integer.BYTES) {
+                throw new IllegalArgumentException("truncated pseudo list");
+            }
+            var size = buffer.getInt();
+            if (size < 0 || size > buffer.remaining()) {
+                throw new IllegalArgumentException("invalid pseudo size: " + size);
+            }
+            names.add(StandardCharsets.UTF_8.decode(buffer.slice(buffer.position(), size)).toString());
+            buffer.position(buffer.position() + size);
+        }
+        return names;
+    }
+}
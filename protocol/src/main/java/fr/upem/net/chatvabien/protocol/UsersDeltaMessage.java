@@ -0,0 +1,51 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Évolution de l'état de présence (USERS_DELTA) : pseudos arrivés et partis, et version atteinte.
+ * <p>
+ * Les versions sont croissantes ; un client ignore les évolutions d'une version inférieure ou égale
+ * à celle de son état. Sans arrivée ni départ, le message termine les pages d'un état.
+ */
+public record UsersDeltaMessage(long version, List<String> joined, List<String> left) implements Message {
+    public UsersDeltaMessage {
+        joined = List.copyOf(joined);
+        left = List.copyOf(left);
+    }
+
+    /**
+     * Décode le contenu d'une évolution, sans son entier de taille.
+     *
+     * @throws IllegalArgumentException si le contenu est mal formé
+     */
+    public static UsersDeltaMessage decode(ByteBuffer content) {
+        if (content.remaining() < Long.BYTES) {
+            throw new IllegalArgumentException("missing presence version");
+        }
+        var version = content.getLong();
+        var joined = UserNames.get(content);
+        var left = UserNames.get(content);
+        if (content.hasRemaining()) {
+            throw new IllegalArgumentException("trailing bytes in users delta");
+        }
+        return new UsersDeltaMessage(version, joined, left);
+    }
+
+    @Override
+    public ByteBuffer serialize() {
+        var joinedNames = UserNames.encode(joined);
+        var leftNames = UserNames.encode(left);
+        var size = Long.BYTES + UserNames.size(joinedNames) + UserNames.size(leftNames);
+        var buffer = ByteBuffer.allocate(Integer.BYTES + size).putInt(size).putLong(version);
+        UserNames.put(buffer, joinedNames);
+        UserNames.put(buffer, leftNames);
+        return buffer.flip();
+    }
+
+    @Override
+    public void process(ServerMessageProcessor processor) {
+        // envoyé par le serveur uniquement, ignoré s'il est reçu
+    }
+}
@@ -0,0 +1,42 @@
+package fr.upem.net.chatvabien.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Une page de l'état de présence (USERS_SNAPSHOT) : une partie des pseudos connectés.
+ * <p>
+ * Les pages d'un état sont suivies d'un {@link UsersDeltaMessage} vide qui en donne la version.
+ */
+public record UsersPageMessage(List<String> users) implements Message {
+    public UsersPageMessage {
+        users = List.copyOf(users);
+    }
+
+    /**
+     * Décode le contenu d'une page, sans son entier de taille.
+     *
+     * @throws IllegalArgumentException si le contenu est mal formé
+     */
+    public static UsersPageMessage decode(ByteBuffer content) {
+        var users = UserNames.get(content);
+        if (content.hasRemaining()) {
+            throw new IllegalArgumentException("trailing bytes in users page");
+        }
+        return new UsersPageMessage(users);
+    }
+
+    @Override
+    public ByteBuffer serialize() {
+        var names = UserNames.encode(users);
+        var size = UserNames.size(names);
+        var buffer = ByteBuffer.allocate(Integer.BYTES + size).putInt(size);
+        UserNames.put(buffer, names);
+        return buffer.flip();
+    }
+
+    @Override
+    public void process(ServerMessageProcessor processor) {
+        // envoyé par le serveur uniquement, ignoré s'il est reçu
+    }
+}
@@ -0,0 +1,186 @@
+package fr.upem.net.chatvabien.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Handler de journalisation asynchrone : les {@link LogRecord} sont déposés dans un tampon circulaire
+ * borné, puis formatés et écrits par un thread dédié vers le handler délégué.
+ * <p>
+ * Le dépôt ne prend aucun verrou et n'attend jamais : lorsque le tampon est plein, l'événement est
+ * abandonné et compté, et le nombre d'événements perdus est journalisé dès que le tampon se vide.
+ * Un réacteur n'est ainsi jamais bloqué par l'écriture sur la console. Le thread d'écriture dort
+ * sans délai tant que le tampon est vide, et n'est réveillé que par le dépôt qui le rend non vide.
+ */
+final class AsyncLogHandler extends Handler {
+    private final Handler delegate;
+    private final LogRecord[] slots;
+    // numéro de séquence attendu dans chaque case (file bornée multi-producteurs)
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    // le thread d'écriture a trouvé le tampon vide et va dormir, ou dort
+    private final AtomicBoolean idle = new AtomicBoolean();
+    private volatile boolean closed;
+
+    private AsyncLogHandler(Handler delegate, int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("la capacité doit être une puissance de 2: " + capacity);
+        }
+        this.delegate = delegate;
+        this.slots = new LogRecord[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (var i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = capacity - 1;
+        setLevel(Level.ALL);
+        this.writer = Thread.ofPlatform().name("log-writer").daemon().start(this::drain);
+    }
+
+    /**
+     * Remplace les handlers de {@code logger} par un handler asynchrone écrivant sur la console,
+     * sauf si un handler asynchrone y est déjà attaché.
+     *
+     * @param capacity taille du tampon circulaire, puissance de 2
+     */
+    static synchronized void install(Logger logger, int capacity) {
+        for (var handler : logger.getHandlers()) {
+            if (handler instanceof AsyncLogHandler) {
+                return;
+            }
+        }
+        var console = new ConsoleHandler();
+        console.setLevel(Level.ALL);
+        logger.addHandler(new AsyncLogHandler(console, capacity));
+        logger.setUseParentHandlers(false);
+    }
+
+    /**
+     * Nombre d'événements abandonnés faute de place dans le tampon.
+     */
+    long dropped() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (!isLoggable(record)) {
+            return;
+        }
+        if (closed || !offer(record)) {
+            dropped.increment();
+        } else if (idle.get() && idle.compareAndSet(true, false)) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private boolean offer(LogRecord record) {
+        var position = tail.get();
+        while (true) {
+            var index = (int) position & mask;
+            var gap = sequences.getAcquire(index) - position;
+            if (gap == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots[index] = record;
+                    // écriture volatile : ordonnée avec la lecture de idle qui suit dans publish
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (gap < 0) {
+                return false; // tampon plein
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    private boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+
+    private LogRecord poll() {
+        var index = (int) head & mask;
+        if (sequences.getAcquire(index) != head + 1) {
+            return null;
+        }
+        var record = slots[index];
+        slots[index] = null;
+        sequences.setRelease(index, head + slots.length);
+        head++;
+        return record;
+    }
+
+    /**
+     * Écrit les événements du tampon, vide le délégué après chaque série d'écritures, puis dort
+     * jusqu'au prochain dépôt. Le drapeau {@code idle} est levé avant de vérifier une dernière fois
+     * que le tampon est vide : un dépôt concurrent voit le drapeau et réveille le thread, ou est vu
+     * par cette vérification.
+     */
+    private void drain() {
+        var reported = 0L;
+        var written = false;
+        while (true) {
+            var record = poll();
+            if (record != null) {
+                delegate.publish(record);
+                written = true;
+                continue;
+            }
+
+            var lost = dropped.sum();
+            if (lost != reported) {
+                delegate.publish(new LogRecord(Level.WARNING,
+                        (lost - reported) + " messages de journal perdus (tampon plein)"));
+                reported = lost;
+                written = true;
+            }
+            if (written) {
+                delegate.flush();
+                written = false;
+            }
+            if (closed) {
+                return;
+            }
+            idle.set(true);
+            if (isEmpty() && !closed) {
+                LockSupport.park(this);
+            }
+            idle.set(false);
+        }
+    }
+
+    @Override
+    public void flush() {
+        // l'écriture est faite par le thread log-writer, qui vide le délégué après chaque série d'écritures
+    }
+
+    /**
+     * Écrit les événements encore en tampon puis ferme le délégué ; appelé notamment par
+     * {@link java.util.logging.LogManager} à l'arrêt de la JVM.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        delegate.close();
+    }
+}
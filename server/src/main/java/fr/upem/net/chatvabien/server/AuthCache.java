@@ -0,0 +1,137 @@
+package fr.upem.net.chatvabien.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache des vérifications de mot de passe acceptées par le serveur MDP, consulté avant de l'interroger.
+ * <p>
+ * Seule une empreinte SHA-256 du couple login / mot de passe, salée par un sel tiré au démarrage,
+ * est conservée : le mot de passe en clair n'est jamais stocké. Une entrée expire après
+ * {@link ServerConfig#authCacheTtlSeconds()} ; au-delà de {@link ServerConfig#authCacheSize()} entrées,
+ * la moins récemment utilisée est évincée. Un refus du serveur MDP invalide l'entrée du login.
+ * <p>
+ * Partagé par tous les réacteurs : les accès sont synchronisés, le hachage est fait hors verrou.
+ */
+final class AuthCache {
+    private static final int SALT_SIZE = 16;
+
+    private record Entry(byte[] digest, long expiresAt) {}
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final byte[] salt = new byte[SALT_SIZE];
+    private final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(AuthCache::sha256);
+    // ordre d'accès : la première entrée est la moins récemment utilisée
+    private final Map<String, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    AuthCache(ServerConfig config) {
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(config.authCacheTtlSeconds());
+        this.maxEntries = config.authCacheSize();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        new SecureRandom().nextBytes(salt);
+    }
+
+    /**
+     * Indique si ce mot de passe a été accepté pour ce login depuis moins de la durée de validité.
+     */
+    boolean isValid(String login, String password) {
+        var digest = digest(login, password);
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(login);
+            if (entry != null && entry.expiresAt() - System.nanoTime() <= 0) {
+                entries.remove(login);
+                entry = null;
+            }
+        }
+        if (entry != null && MessageDigest.isEqual(entry.digest(), digest)) {
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Enregistre le mot de passe que le serveur MDP vient d'accepter pour ce login.
+     */
+    void put(String login, String password) {
+        var entry = new Entry(digest(login, password), System.nanoTime() + ttlNanos);
+        synchronized (entries) {
+            entries.put(login, entry);
+        }
+    }
+
+    /**
+     * Oublie la vérification enregistrée pour ce login, par exemple après un changement de mot de passe.
+     */
+    void invalidate(String login) {
+        synchronized (entries) {
+            entries.remove(login);
+        }
+    }
+
+    void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    long evictions() {
+        return evictions.sum();
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private byte[] digest(String login, String password) {
+        var sha = digests.get();
+        var loginBytes = login.getBytes(StandardCharsets.UTF_8);
+        sha.update(salt);
+        // longueur du login en tête : ("ab", "c") et ("a", "bc") ont des empreintes distinctes
+        sha.update(ByteBuffer.allocate(Integer.BYTES).putInt(loginBytes.length).flip());
+        sha.update(loginBytes);
+        sha.update(password.getBytes(StandardCharsets.UTF_8));
+        return sha.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 est fourni par toute JVM", e);
+        }
+    }
+}
@@ -0,0 +1,1386 @@
+package fr.upem.net.chatvabien.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+import fr.upem.net.chatvabien.protocol.*;
+import fr.upem.net.chatvabien.server.ServerConfig.SlowConsumerPolicy;
+
+/**
+ * Serveur ChatVaBien
+ * <p>
+ * Le thread principal (accepteur) accepte les connexions ; chaque connexion cliente est ensuite
+ * confiée à l'un des {@link Reactor}, qui possède son propre sélecteur et ses propres {@link Context}.
+ * Les trames mises en file pendant un tour de boucle d'un réacteur sont écrites en fin de tour, en
+ * aussi peu d'appels système que possible. Les mots de passe sont vérifiés auprès du serveur MDP par
+ * le {@link MdpClient}, précédé si configuré d'un {@link AuthCache} des vérifications récentes. La
+ * liste des connectés est tenue à jour par {@link Presence}, dont les évolutions sont diffusées aux
+ * connexions abonnées.
+ * <p>
+ * Un message de salon n'est transmis qu'aux réacteurs ayant des membres de ce salon, qui ne parcourent
+ * que ces membres : son coût dépend de l'audience du salon et non du nombre de connectés.
+ */
+
+public class ChatVaBienServer {
+    private static final int BUFFER_SIZE = 1024;
+    // buffers directs de lecture empruntés par les contextes, par réacteur
+    private static final int POOL_MAX_BUFFER_SIZE = 64 * 1024;
+    private static final int POOL_SLAB_SIZE = 64 * 1024;
+    private static final int POOL_MAX_IDLE = 256;
+    private static final int MAX_SPARE_READERS = 256;
+    // place gardée en fin de liste de pseudos pour indiquer ceux omis
+    private static final int USER_LIST_SUFFIX_SIZE = 32;
+    // place gardée dans un avis de présence pour son texte autour des listes de pseudos
+    private static final int PRESENCE_NOTICE_TEXT_SIZE = 64;
+    private static final EncodedTrame LOGIN_ACCEPTED =
+            Trame.serverResponse(OPCODE.LOGIN_ACCEPTED, new LoginMessage()).encode();
+    private static final EncodedTrame LOGIN_REFUSED =
+            Trame.serverResponse(OPCODE.LOGIN_REFUSED, new LoginMessage()).encode();
+    // pseudo des avis du serveur, que les clients ne comptent pas parmi les messages publics
+    private static final String SERVER_PSEUDO = "Server";
+    // reprise pas encore demandée par la connexion
+    private static final long NO_RESUME = Long.MIN_VALUE;
+
+    private final ServerSocketChannel serverSocketChannel;
+    private final int port;
+    private final Selector selector;
+    private final ServerConfig config;
+    private final List<Reactor> reactors;
+    private int nextReactor;
+    private final Map<String, Context> connectedUsers = new ConcurrentHashMap<>();
+    // réacteurs ayant au moins un membre de chaque salon, listes remplacées à chaque changement
+    private final Map<String, List<Reactor>> roomReactors = new ConcurrentHashMap<>();
+    private final Map<SlowConsumerPolicy, LongAdder> droppedFrames = new EnumMap<>(SlowConsumerPolicy.class);
+    // appels système liés aux écritures, rapportés au nombre de trames mises en file
+    private final LongAdder queuedFrames = new LongAdder();
+    private final LongAdder writeCalls = new LongAdder();
+    private final LongAdder interestOpsChanges = new LongAdder();
+    private final LongAdder selectCalls = new LongAdder();
+
+    private final MdpClient mdpClient;
+    private final AuthCache authCache;
+    private final EncodedTrame limitsTrame;
+    private final Presence presence;
+    private final MessageHistory history;
+    private volatile UserListCache userListCache = new UserListCache(-1, null);
+
+    /**
+     * Réponse à GET_CONNECTED_USERS encodée pour une version de la présence, reconstruite au plus
+     * une fois par évolution.
+     */
+    private record UserListCache(long version, EncodedTrame trame) {}
+
+    public ChatVaBienServer(int port, InetSocketAddress mdpAddress) throws IOException {
+        this(port, mdpAddress, ServerConfig.fromSystemProperties());
+    }
+
+    public ChatVaBienServer(int port, InetSocketAddress mdpAddress, ServerConfig config) throws IOException {
+        LogCategory.configure();
+        this.config = Objects.requireNonNull(config);
+        this.limitsTrame = Trame.serverResponse(OPCODE.LIMITS, new LimitsMessage(config.maxStringSize())).encode();
+        this.reactors = new ArrayList<>(config.reactorCount());
+        for (var i = 0; i < config.reactorCount(); i++) {
+            reactors.add(new Reactor(i));
+        }
+        for (var policy : SlowConsumerPolicy.values()) {
+            droppedFrames.put(policy, new LongAdder());
+        }
+        this.presence = new Presence(config.maxStringSize(), config.presenceWindowMillis(), this::publishPresence);
+        this.history = new MessageHistory(config.historyBytes());
+
+        this.serverSocketChannel = ServerSocketChannel.open();
+        this.serverSocketChannel.bind(new InetSocketAddress(port));
+        this.port = ((InetSocketAddress) serverSocketChannel.getLocalAddress()).getPort();
+        this.serverSocketChannel.configureBlocking(false);
+
+        this.selector = Selector.open();
+        this.serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        this.mdpClient = mdpAddress == null ? null : new MdpClient(mdpAddress, config);
+        this.authCache = mdpClient == null || config.authCacheTtlSeconds() == 0 ? null : new AuthCache(config);
+    }
+
+    public void launch() throws IOException {
+        LogCategory.SERVER.info("Serveur ChatVaBien démarré ("
+                + reactors.size() + " réacteurs, " + config.balancing() + ")");
+        reactors.forEach(Reactor::start);
+        if (mdpClient != null) {
+            mdpClient.start();
+        }
+
+        try {
+            while (!Thread.interrupted()) {
+                selector.select(this::treatKey);
+            }
+        } finally {
+            reactors.forEach(Reactor::shutdown);
+            presence.shutdown();
+            LogCategory.FLOW.info(queuedFrames.sum() + " trames écrites en " + writeCalls.sum() + " écritures, "
+                    + interestOpsChanges.sum() + " changements d'intérêt et " + selectCalls.sum() + " sélections");
+            if (mdpClient != null) {
+                mdpClient.shutdown();
+            }
+            if (authCache != null) {
+                LogCategory.AUTH.info("Cache d'authentification: " + authCache.hits() + " succès, "
+                        + authCache.misses() + " échecs, " + authCache.evictions() + " évictions");
+            }
+        }
+    }
+
+    private void treatKey(SelectionKey key) {
+        try {
+            if (key.isValid() && key.isAcceptable()) {
+                doAccept();
+            }
+        } catch (IOException e) {
+            LogCategory.CONNECTION.warning("Connexion fermée: " + e.getMessage());
+            try {
+                key.channel().close();
+            } catch (IOException ignored) {
+                // ignore
+            }
+        } catch (RuntimeException e) {
+            // la connexion acceptée est perdue, pas l'écoute
+            LogCategory.SERVER.severe("Erreur inattendue à l'acceptation", e);
+        }
+    }
+
+    private void doAccept() throws IOException {
+        var clientChannel = serverSocketChannel.accept();
+        if (clientChannel == null) return;
+
+        clientChannel.configureBlocking(false);
+        nextReactor().register(clientChannel);
+
+        LogCategory.CONNECTION.info("Nouvelle connexion acceptée");
+    }
+
+    /**
+     * Port d'écoute, choisi par le système si le serveur a été créé avec le port 0.
+     */
+    public int port() {
+        return port;
+    }
+
+    /**
+     * Nombre de connexions clientes acceptées et pas encore fermées.
+     */
+    public int connectionCount() {
+        return reactors.stream().mapToInt(Reactor::load).sum();
+    }
+
+    /**
+     * Nombre de trames abandonnées depuis le démarrage par la politique de consommateur lent donnée.
+     */
+    public long droppedFrames(SlowConsumerPolicy policy) {
+        return droppedFrames.get(policy).sum();
+    }
+
+    /**
+     * Nombre de trames mises en file d'envoi depuis le démarrage.
+     */
+    public long queuedFrames() {
+        return queuedFrames.sum();
+    }
+
+    /**
+     * Nombre d'appels système d'écriture sur les connexions clientes depuis le démarrage.
+     */
+    public long writeCalls() {
+        return writeCalls.sum();
+    }
+
+    /**
+     * Nombre d'ajouts ou de retraits de {@link SelectionKey#OP_WRITE}, chacun répercuté sur le sélecteur.
+     */
+    public long interestOpsChanges() {
+        return interestOpsChanges.sum();
+    }
+
+    /**
+     * Nombre de sélections effectuées par les réacteurs depuis le démarrage.
+     */
+    public long selectCalls() {
+        return selectCalls.sum();
+    }
+
+    /**
+     * Nombre de salons ayant au moins un membre.
+     */
+    public int roomCount() {
+        return roomReactors.size();
+    }
+
+    /**
+     * Nombre de connexions avec mot de passe vérifiées par le cache d'authentification, sans le serveur MDP.
+     */
+    public long authCacheHits() {
+        return authCache == null ? 0 : authCache.hits();
+    }
+
+    /**
+     * Nombre de connexions avec mot de passe absentes du cache d'authentification et transmises au serveur MDP.
+     */
+    public long authCacheMisses() {
+        return authCache == null ? 0 : authCache.misses();
+    }
+
+    /**
+     * Oublie le mot de passe accepté en cache pour ce login : la prochaine connexion sera vérifiée
+     * par le serveur MDP. À appeler lorsque le mot de passe est changé ou révoqué.
+     */
+    public void invalidateCredentials(String login) {
+        if (authCache != null) {
+            authCache.invalidate(login);
+        }
+    }
+
+    /**
+     * Vide le cache d'authentification.
+     */
+    public void invalidateAllCredentials() {
+        if (authCache != null) {
+            authCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Messages publics et messages de salon, que la politique de consommateur lent peut abandonner.
+     */
+    private static boolean isPublicMessage(ByteBuffer buffer) {
+        var code = buffer.get(buffer.position());
+        return code == OPCODE.MESSAGE.getCode() || code == OPCODE.ROOM_MESSAGE.getCode();
+    }
+
+    private static boolean isResume(ByteBuffer buffer) {
+        return buffer.get(buffer.position()) == OPCODE.RESUME.getCode();
+    }
+
+    private Reactor nextReactor() {
+        return switch (config.balancing()) {
+            case ROUND_ROBIN -> {
+                var reactor = reactors.get(nextReactor);
+                nextReactor = (nextReactor + 1) % reactors.size();
+                yield reactor;
+            }
+            case LEAST_LOADED -> Collections.min(reactors, Comparator.comparingInt(Reactor::load));
+        };
+    }
+
+    /**
+     * Boucle de sélection dédiée à un sous-ensemble des connexions clientes.
+     * <p>
+     * Les {@link Context} d'un réacteur ne sont manipulés que par son thread ;
+     * les autres threads lui soumettent du travail via {@link #execute(Runnable)}.
+     */
+    private final class Reactor {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean wakeupPending = new AtomicBoolean();
+        private final AtomicInteger load = new AtomicInteger();
+        private final Set<Context> contexts = new HashSet<>();
+        private final Queue<Context> closing = new ArrayDeque<>();
+        private final BufferPool pool;
+        private final ArrayDeque<TrameReader> spareReaders = new ArrayDeque<>();
+        // contextes ayant des trames à écrire en fin de tour de boucle
+        private final ArrayDeque<Context> dirty = new ArrayDeque<>();
+        private final long flushDelayNanos = TimeUnit.MICROSECONDS.toNanos(config.flushDelayMicros());
+        private long dirtySince;
+        // membres locaux de chaque salon
+        private final Map<String, Room> rooms = new HashMap<>();
+
+        Reactor(int index) throws IOException {
+            // la plus grande classe du pool doit contenir la plus grande trame acceptée
+            var maxFrameSize = TrameReader.maxFrameSize(config.maxStringSize());
+            var maxBufferSize = Math.max(POOL_MAX_BUFFER_SIZE, Integer.highestOneBit(maxFrameSize - 1) << 1);
+            this.pool = new BufferPool(BUFFER_SIZE, maxBufferSize, POOL_SLAB_SIZE, POOL_MAX_IDLE);
+            this.selector = Selector.open();
+            this.thread = Thread.ofPlatform().name("reactor-" + index).unstarted(this::run);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void shutdown() {
+            thread.interrupt();
+        }
+
+        /**
+         * Nombre de connexions confiées à ce réacteur, utilisé pour {@link ServerConfig.Balancing#LEAST_LOADED}.
+         */
+        int load() {
+            return load.get();
+        }
+
+        /**
+         * Exécute la tâche sur le thread du réacteur ; appelable depuis n'importe quel thread.
+         */
+        void execute(Runnable task) {
+            if (Thread.currentThread() == thread) {
+                task.run();
+                return;
+            }
+            post(task);
+        }
+
+        /**
+         * Met la tâche en file même depuis le thread du réacteur : les tâches postées s'exécutent
+         * dans l'ordre où elles ont été postées.
+         */
+        void post(Runnable task) {
+            tasks.offer(task);
+            if (wakeupPending.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+
+        void register(SocketChannel sc) {
+            load.incrementAndGet();
+            execute(() -> {
+                try {
+                    var key = sc.register(selector, SelectionKey.OP_READ);
+                    var context = new Context(key, this);
+                    key.attach(context);
+                    contexts.add(context);
+                } catch (IOException e) {
+                    LogCategory.SERVER.warning("Enregistrement impossible: " + e.getMessage());
+                    load.decrementAndGet();
+                    try {
+                        sc.close();
+                    } catch (IOException ignored) {
+                        // ignore
+                    }
+                }
+            });
+        }
+
+        /**
+         * Ferme le contexte à la fin de l'itération courante de la boucle de sélection,
+         * ce qui permet de l'appeler pendant un parcours de {@code contexts}.
+         */
+        void closeLater(Context context) {
+            context.closed = true;
+            closing.offer(context);
+        }
+
+        TrameReader borrowReader() {
+            var reader = spareReaders.poll();
+            return reader == null ? new TrameReader(config.maxStringSize()) : reader;
+        }
+
+        /**
+         * Rend un lecteur de trames réinitialisé, conservé pour le prochain contexte qui recevra des données.
+         */
+        void returnReader(TrameReader reader) {
+            if (spareReaders.size() < MAX_SPARE_READERS) {
+                spareReaders.push(reader);
+            }
+        }
+
+        void markDirty(Context context) {
+            if (dirty.isEmpty()) {
+                dirtySince = System.nanoTime();
+            }
+            dirty.offer(context);
+        }
+
+        /**
+         * Ajoute le contexte au salon ; le réacteur est inscrit pour ce salon à l'arrivée de son premier membre local.
+         */
+        void joinRoom(Context context, String name) {
+            var room = rooms.get(name);
+            if (room == null) {
+                room = new Room(name);
+                rooms.put(name, room);
+                roomReactors.compute(name, (k, current) -> {
+                    var updated = current == null ? new ArrayList<Reactor>() : new ArrayList<>(current);
+                    updated.add(this);
+                    return List.copyOf(updated);
+                });
+            }
+            context.enterRoom(room, room.add(context));
+        }
+
+        /**
+         * Retire le contexte du salon d'indice {@code index} parmi les siens ; le réacteur est désinscrit
+         * au départ du dernier membre local.
+         */
+        void leaveRoom(Context context, int index) {
+            var room = context.rooms[index];
+            var slot = context.roomSlots[index];
+            var moved = room.remove(slot);
+            if (moved != null) {
+                moved.roomSlots[moved.roomIndex(room)] = slot;
+            }
+            context.exitRoom(index);
+            if (room.size == 0) {
+                rooms.remove(room.name);
+                roomReactors.computeIfPresent(room.name, (k, current) -> {
+                    var updated = new ArrayList<>(current);
+                    updated.remove(this);
+                    return updated.isEmpty() ? null : List.copyOf(updated);
+                });
+            }
+        }
+
+        void broadcastRoom(String name, EncodedTrame trame) {
+            var room = rooms.get(name);
+            if (room == null) {
+                return;
+            }
+            for (var i = 0; i < room.size; i++) {
+                room.members[i].queueTrame(trame);
+            }
+        }
+
+        /**
+         * Transmet le message public de numéro {@code sequence} aux connexions authentifiées ne l'ayant
+         * pas déjà reçu, par reprise ou parce qu'il précède leur authentification.
+         */
+        void broadcastLocal(EncodedTrame trame, long sequence) {
+            for (var context : contexts) {
+                if (context.authenticated && sequence > context.lastSequence) {
+                    context.lastSequence = sequence;
+                    context.queueTrame(trame);
+                }
+            }
+        }
+
+        /**
+         * Transmet une évolution de la présence : les trames USERS_DELTA aux connexions abonnées,
+         * l'avis textuel aux autres connexions authentifiées.
+         */
+        void broadcastPresence(List<EncodedTrame> deltas, EncodedTrame notice) {
+            for (var context : contexts) {
+                if (context.presenceSubscribed) {
+                    deltas.forEach(context::queueTrame);
+                } else if (context.authenticated) {
+                    context.queueTrame(notice);
+                }
+            }
+        }
+
+        /**
+         * Boucle du réacteur. Une erreur inattendue en traitant une clé, une tâche ou une écriture ne
+         * ferme que le contexte en cause, ou n'abandonne que la tâche : les autres connexions du
+         * réacteur continuent d'être servies.
+         */
+        private void run() {
+            try {
+                while (!Thread.interrupted()) {
+                    selector.select(this::treatKey, selectTimeout());
+                    selectCalls.increment();
+                    runTasks();
+                    closePending();
+                    flushDirty();
+                }
+            } catch (IOException e) {
+                LogCategory.SERVER.severe("Réacteur arrêté: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Attente maximale du sélecteur en millisecondes : sans limite (0) si aucune trame n'attend, sinon
+         * jusqu'à l'expiration du délai d'accumulation, arrondie à la milliseconde inférieure mais d'au
+         * moins une milliseconde, résolution de {@link Selector#select(long)}. Le réacteur ne tourne donc
+         * jamais à vide : la dernière fraction de milliseconde d'un délai est attendue en entier, et un
+         * délai inférieur à la milliseconde, s'il n'est pas interrompu par un événement, dure une
+         * milliseconde.
+         */
+        private long selectTimeout() {
+            if (dirty.isEmpty()) {
+                return 0;
+            }
+            var remaining = dirtySince + flushDelayNanos - System.nanoTime();
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+        }
+
+        /**
+         * Phase d'écriture de fin de tour : chaque contexte ayant reçu des trames les écrit en une fois,
+         * directement, sans attendre que le sélecteur signale la socket prête.
+         */
+        private void flushDirty() {
+            if (dirty.isEmpty() || System.nanoTime() - dirtySince < flushDelayNanos) {
+                return;
+            }
+            Context context;
+            while ((context = dirty.poll()) != null) {
+                context.dirty = false;
+                if (context.closed) {
+                    continue;
+                }
+                try {
+                    context.flush();
+                } catch (IOException e) {
+                    LogCategory.CONNECTION.warning("Connexion fermée: " + e.getMessage());
+                    silentlyClose(context);
+                } catch (RuntimeException e) {
+                    fail(context, e);
+                }
+            }
+        }
+
+        private void runTasks() {
+            wakeupPending.set(false);
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LogCategory.SERVER.severe("Tâche du réacteur abandonnée", e);
+                }
+            }
+        }
+
+        private void closePending() {
+            Context context;
+            while ((context = closing.poll()) != null) {
+                try {
+                    silentlyClose(context);
+                } catch (RuntimeException e) {
+                    LogCategory.SERVER.severe("Erreur à la fermeture de " + context.pseudo, e);
+                }
+            }
+        }
+
+        private void treatKey(SelectionKey key) {
+            var context = (Context) key.attachment();
+            try {
+                if (key.isValid() && key.isWritable()) {
+                    context.doWrite();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    context.doRead();
+                }
+            } catch (IOException e) {
+                LogCategory.CONNECTION.warning("Connexion fermée: " + e.getMessage());
+                silentlyClose(context);
+                return;
+            } catch (RuntimeException e) {
+                fail(context, e);
+                return;
+            }
+            if (context.closed) {
+                silentlyClose(context);
+            }
+        }
+
+        /**
+         * Ferme le contexte après une erreur inattendue ; une erreur pendant la fermeture elle-même
+         * est journalisée sans interrompre la boucle.
+         */
+        private void fail(Context context, RuntimeException e) {
+            LogCategory.SERVER.severe("Erreur inattendue, connexion de " + context.pseudo + " fermée", e);
+            try {
+                silentlyClose(context);
+            } catch (RuntimeException closeError) {
+                LogCategory.SERVER.severe("Fermeture incomplète de " + context.pseudo, closeError);
+            }
+        }
+
+        private void silentlyClose(Context context) {
+            if (!contexts.remove(context)) {
+                return;
+            }
+            load.decrementAndGet();
+            context.closed = true;
+            try {
+                context.releaseInput(false);
+                context.cleanup();
+            } finally {
+                try {
+                    context.sc.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Membres d'un salon gérés par un même réacteur, rangés dans un tableau compact : au départ d'un
+     * membre, le dernier prend sa place. Chaque membre connaît son emplacement, le départ est donc en
+     * temps constant.
+     */
+    private static final class Room {
+        private final String name;
+        private Context[] members = new Context[4];
+        private int size;
+
+        Room(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return l'emplacement du nouveau membre
+         */
+        int add(Context context) {
+            if (size == members.length) {
+                members = Arrays.copyOf(members, 2 * size);
+            }
+            members[size] = context;
+            return size++;
+        }
+
+        /**
+         * Libère l'emplacement donné.
+         *
+         * @return le membre déplacé dans cet emplacement, ou {@code null} si c'était le dernier
+         */
+        Context remove(int slot) {
+            size--;
+            var last = members[size];
+            members[size] = null;
+            if (slot == size) {
+                return null;
+            }
+            members[slot] = last;
+            return last;
+        }
+    }
+
+    /**
+     * Contexte client simplifié
+     * <p>
+     * Le buffer de lecture et le lecteur de trames ne sont empruntés au réacteur que pendant la réception
+     * d'une trame, et rendus dès qu'aucune trame n'est en cours : une connexion inactive n'en possède pas.
+     * Le buffer emprunté fait {@code BUFFER_SIZE} octets et n'est remplacé par un plus grand, jusqu'à
+     * {@link TrameReader#maxFrameSize(int)}, que lorsqu'une trame incomplète ne tient pas dedans.
+     */
+    private class Context implements ServerMessageProcessor {
+        private final SelectionKey key;
+        private final Reactor reactor;
+        private final SocketChannel sc;
+        private ByteBuffer bufferIn;
+        private final OutboundQueue outQueue = new OutboundQueue();
+
+        private TrameReader trameReader;
+
+        private String pseudo;
+        boolean authenticated = false;
+        boolean presenceSubscribed = false;
+        private boolean closed = false;
+        private boolean authPending = false;
+        private boolean slowConsumerReported = false;
+        private boolean dirty = false;
+        private boolean writeInterest = false;
+        private int coalescedMessages;
+        // numéro du dernier message public transmis, et du dernier enregistré à l'authentification
+        long lastSequence;
+        private long authSequence;
+        private long pendingResume = NO_RESUME;
+        private long pendingResumeEpoch;
+        // la connexion compte les messages publics reçus : tout abandon est suivi d'un RESUME qui la recale
+        private boolean sequenced = false;
+        private boolean resyncPending = false;
+        // avis de perte et tranches d'historique renvoyées à la reprise, chacune de plusieurs messages :
+        // jamais abandonnés
+        private List<ByteBuffer> replayBuffers = List.of();
+        // salons rejoints et emplacement dans chacun, alloués à la première entrée dans un salon
+        private Room[] rooms;
+        private int[] roomSlots;
+        private int roomCount;
+
+        Context(SelectionKey key, Reactor reactor) {
+            this.key = key;
+            this.reactor = reactor;
+            this.sc = (SocketChannel) key.channel();
+        }
+
+        void doRead() throws IOException {
+            if (bufferIn == null) {
+                bufferIn = reactor.pool.acquire(BUFFER_SIZE);
+                trameReader = reactor.borrowReader();
+            }
+            var read = sc.read(bufferIn);
+
+            if (read == -1) {
+                closed = true;
+                return;
+            }
+
+            if (read > 0) {
+                processIn();
+            } else if (bufferIn.position() == 0) {
+                releaseInput(true);
+            }
+        }
+
+        private void processIn() {
+            bufferIn.flip();
+
+            var needed = 0;
+            while (bufferIn.hasRemaining()) {
+                // une trame n'est décodée qu'entière, d'un seul tenant dans le buffer
+                needed = trameReader.frameSize(bufferIn);
+                if (needed > bufferIn.remaining()) {
+                    break;
+                }
+                var status = trameReader.process(bufferIn);
+
+                if (status == Reader.ProcessStatus.DONE) {
+                    var trame = trameReader.get();
+                    handleTrame(trame);
+                    trameReader.reset();
+                } else {
+                    LogCategory.CONNECTION.severe("Erreur parsing - abandon");
+                    closed = true;
+                    return;
+                }
+            }
+
+            var partial = bufferIn.hasRemaining();
+            bufferIn.compact();
+            if (!partial) {
+                releaseInput(true);
+            } else if (needed > bufferIn.capacity()) {
+                growInput(needed);
+            }
+        }
+
+        /**
+         * Remplace le buffer de lecture par un buffer du pool assez grand pour {@code size} octets,
+         * en conservant les octets déjà reçus.
+         */
+        private void growInput(int size) {
+            var larger = reactor.pool.acquire(size);
+            larger.put(bufferIn.flip());
+            reactor.pool.release(bufferIn);
+            bufferIn = larger;
+        }
+
+        /**
+         * Rend le buffer de lecture au pool du réacteur ; le lecteur de trames n'est réutilisé
+         * que s'il a été réinitialisé après une trame complète.
+         */
+        void releaseInput(boolean reuseReader) {
+            if (bufferIn == null) {
+                return;
+            }
+            reactor.pool.release(bufferIn);
+            bufferIn = null;
+            if (reuseReader) {
+                reactor.returnReader(trameReader);
+            }
+            trameReader = null;
+        }
+
+        void doWrite() throws IOException {
+            flush();
+        }
+
+        /**
+         * Écrit la file de sortie ; {@link SelectionKey#OP_WRITE} n'est demandé que si la socket n'a pas
+         * tout accepté, et retiré dès que la file est vide.
+         */
+        void flush() throws IOException {
+            outQueue.flush(sc, writeCalls);
+            setWriteInterest(!outQueue.isEmpty());
+            if (outQueue.isEmpty()) {
+                replayBuffers = List.of();
+            }
+            if (outQueue.isEmpty() && coalescedMessages > 0) {
+                var dropped = coalescedMessages;
+                coalescedMessages = 0;
+                notice(dropped + " messages publics non distribués (connexion trop lente)");
+            }
+        }
+
+        private void setWriteInterest(boolean interest) {
+            if (interest != writeInterest) {
+                writeInterest = interest;
+                key.interestOps(interest ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+                interestOpsChanges.increment();
+            }
+        }
+
+        private void handleTrame(Trame trame) {
+            if (pseudo == null) {
+                pseudo = trame.sender();
+            } else if (!pseudo.equals(trame.sender()) && !trame.sender().equals(SERVER_PSEUDO) && !trame.sender().isBlank()) {
+                LogCategory.CONNECTION.warning("Pseudo incohérent: reçu '" + trame.sender() + "', attendu '" + pseudo + "'");
+                return;
+            }
+
+            trame.message().process(this);
+        }
+
+        /**
+         * Ajoute une vue de la trame encodée à la file de sortie ; doit être appelée sur le thread du réacteur.
+         * La trame sera écrite en fin de tour de boucle, ou dès que la socket sera prête si elle est pleine.
+         */
+        private void queueTrame(EncodedTrame trame) {
+            if (closed) {
+                return;
+            }
+            if (admit(trame)) {
+                offer(trame.buffer());
+            }
+            if (resyncPending) {
+                resync();
+            }
+        }
+
+        /**
+         * Recale une connexion qui compte les messages publics après l'abandon de certains d'entre eux :
+         * un RESUME portant le numéro du dernier message transmis ou abandonné suit ceux encore en file.
+         * Il remplace les RESUME encore en attente, pour qu'ils ne s'accumulent pas hors des limites de la
+         * file de sortie.
+         */
+        private void resync() {
+            resyncPending = false;
+            outQueue.removeAll(ChatVaBienServer::isResume);
+            offer(Trame.serverResponse(OPCODE.RESUME, new ResumeMessage(history.epoch(), lastSequence)).encode().buffer());
+        }
+
+        private void offer(ByteBuffer buffer) {
+            outQueue.offer(buffer);
+            queuedFrames.increment();
+            if (!dirty && !writeInterest) {
+                dirty = true;
+                reactor.markDirty(this);
+            }
+        }
+
+        private boolean fits(EncodedTrame trame) {
+            return outQueue.size() < config.maxQueuedFrames()
+                    && outQueue.queuedBytes() + trame.size() <= config.maxQueuedBytes();
+        }
+
+        /**
+         * Applique la politique de consommateur lent si la trame dépasse les limites de la file de sortie.
+         * Une file ne contenant plus de messages publics à abandonner entraîne la déconnexion. Un abandon
+         * sur une connexion qui compte les messages publics demande de la recaler.
+         *
+         * @return {@code true} si la trame peut être mise en file
+         */
+        private boolean admit(EncodedTrame trame) {
+            if (fits(trame)) {
+                return true;
+            }
+
+            var policy = config.slowConsumerPolicy();
+            if (!slowConsumerReported) {
+                slowConsumerReported = true;
+                LogCategory.FLOW.warning("Client lent " + pseudo + " (" + outQueue.size() + " trames, "
+                        + outQueue.queuedBytes() + " octets en attente): " + policy);
+            }
+
+            switch (policy) {
+                case DROP_OLDEST -> {
+                    while (!fits(trame) && outQueue.removeOldest(this::isDroppable)) {
+                        droppedFrames.get(policy).increment();
+                        resyncPending = sequenced;
+                    }
+                }
+                case COALESCE -> {
+                    var removed = outQueue.removeAll(this::isDroppable);
+                    droppedFrames.get(policy).add(removed);
+                    coalescedMessages += removed;
+                    resyncPending = sequenced && removed > 0;
+                }
+                case DISCONNECT -> {
+                    // rien à abandonner, la connexion sera fermée
+                }
+            }
+
+            if (fits(trame)) {
+                return true;
+            }
+            if (policy != SlowConsumerPolicy.DISCONNECT
+                    && (trame.opcode() == OPCODE.MESSAGE || trame.opcode() == OPCODE.ROOM_MESSAGE)) {
+                droppedFrames.get(policy).increment();
+                if (policy == SlowConsumerPolicy.COALESCE) {
+                    coalescedMessages++;
+                }
+                resyncPending = sequenced;
+                return false;
+            }
+
+            resyncPending = false;
+            droppedFrames.get(SlowConsumerPolicy.DISCONNECT).add(outQueue.size() + 1);
+            LogCategory.FLOW.warning("Déconnexion du client lent " + pseudo);
+            reactor.closeLater(this);
+            return false;
+        }
+
+        /**
+         * Message public que la politique de consommateur lent peut abandonner : une tranche renvoyée à
+         * la reprise commence comme un message public mais en contient plusieurs, et l'avis de perte qui
+         * la précède est le seul à signaler les messages manqués ; ni l'une ni l'autre n'est abandonné.
+         */
+        private boolean isDroppable(ByteBuffer buffer) {
+            if (!isPublicMessage(buffer)) {
+                return false;
+            }
+            for (var replayed : replayBuffers) {
+                if (replayed == buffer) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Transmet une trame à ce contexte depuis n'importe quel réacteur.
+         */
+        void send(EncodedTrame trame) {
+            reactor.execute(() -> queueTrame(trame));
+        }
+
+        int roomIndex(String name) {
+            for (var i = 0; i < roomCount; i++) {
+                if (rooms[i].name.equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        int roomIndex(Room room) {
+            for (var i = 0; i < roomCount; i++) {
+                if (rooms[i] == room) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void enterRoom(Room room, int slot) {
+            if (rooms == null) {
+                var capacity = Math.min(4, config.maxRoomsPerUser());
+                rooms = new Room[capacity];
+                roomSlots = new int[capacity];
+            } else if (roomCount == rooms.length) {
+                rooms = Arrays.copyOf(rooms, Math.min(2 * roomCount, config.maxRoomsPerUser()));
+                roomSlots = Arrays.copyOf(roomSlots, rooms.length);
+            }
+            rooms[roomCount] = room;
+            roomSlots[roomCount] = slot;
+            roomCount++;
+        }
+
+        void exitRoom(int index) {
+            roomCount--;
+            rooms[index] = rooms[roomCount];
+            roomSlots[index] = roomSlots[roomCount];
+            rooms[roomCount] = null;
+        }
+
+        private void notice(String text) {
+            queueTrame(Trame.serverResponse(OPCODE.MESSAGE, new PublicMessage(text)).encode());
+        }
+
+        private static ByteBuffer noticeBuffer(String text) {
+            return Trame.serverResponse(OPCODE.MESSAGE, new PublicMessage(text)).encode().buffer();
+        }
+
+        void cleanup() {
+            while (roomCount > 0) {
+                reactor.leaveRoom(this, roomCount - 1);
+            }
+            if (pseudo != null && authenticated && connectedUsers.remove(pseudo, this)) {
+                presence.leave(pseudo);
+            }
+        }
+
+        void onAuthResponse(boolean success) {
+            authPending = false;
+            if (closed) {
+                return;
+            }
+            if (success && connectedUsers.putIfAbsent(pseudo, this) == null) {
+                onAuthenticated();
+                LogCategory.CONNECTION.info(pseudo + " s'est connecté avec mot de passe");
+            } else {
+                queueTrame(LOGIN_REFUSED);
+            }
+        }
+
+        /**
+         * Les messages publics déjà enregistrés ne sont plus diffusés à la connexion : une reprise
+         * demandée avant l'authentification les renvoie avant tout nouveau message.
+         */
+        private void onAuthenticated() {
+            authenticated = true;
+            lastSequence = authSequence = history.lastSequence();
+            presence.join(pseudo);
+            queueTrame(LOGIN_ACCEPTED);
+            queueTrame(limitsTrame);
+            if (pendingResume != NO_RESUME) {
+                resume(pendingResumeEpoch, pendingResume);
+            }
+        }
+
+        /**
+         * Renvoie, depuis l'historique et sans réencodage, les messages publics de numéro supérieur à
+         * {@code after} antérieurs à l'authentification, dans la limite de la moitié de la file de sortie,
+         * puis la position atteinte par la connexion. Un numéro d'une autre époque, attribué avant un
+         * redémarrage du serveur, ne désigne aucun message de l'historique : seule la perte est annoncée.
+         */
+        private void resume(long epoch, long after) {
+            sequenced = true;
+            var replayed = new ArrayList<ByteBuffer>();
+            if (after >= 0 && epoch != history.epoch()) {
+                replayed.add(noticeBuffer("Messages publics manqués perdus : le serveur a redémarré depuis la déconnexion"));
+                LogCategory.MESSAGE.log(Level.FINE, () -> "Reprise de " + pseudo + " d'une autre époque");
+            } else if (after >= 0 && after < authSequence) {
+                var replay = history.after(after, authSequence, config.maxQueuedBytes() / 2);
+                if (replay.lost() > 0) {
+                    replayed.add(noticeBuffer(replay.lost() + " messages publics trop anciens pour être renvoyés"));
+                }
+                replayed.addAll(replay.buffers());
+                LogCategory.MESSAGE.log(Level.FINE, () -> "Reprise de " + pseudo + " : "
+                        + (authSequence - replay.firstSequence() + 1) + " messages renvoyés, " + replay.lost() + " perdus");
+            }
+            // hors des limites de la file, déjà bornées à sa moitié : une tranche ne peut être ni refusée
+            // ni abandonnée sans perdre en silence les messages qu'elle contient
+            if (!replayed.isEmpty()) {
+                replayBuffers = replayed;
+                replayed.forEach(this::offer);
+            }
+            queueTrame(Trame.serverResponse(OPCODE.RESUME, new ResumeMessage(history.epoch(), lastSequence)).encode());
+        }
+
+        private boolean acceptsPseudo() {
+            return !SERVER_PSEUDO.equals(pseudo) && presence.accepts(pseudo);
+        }
+
+        @Override
+        public void processLoginAuth(String password) {
+            if (authenticated || authPending) {
+                return;
+            }
+            if (!acceptsPseudo()) {
+                queueTrame(LOGIN_REFUSED);
+                return;
+            }
+            if (mdpClient == null) {
+                LogCategory.AUTH.warning("Connexion avec mot de passe sans serveur MDP: " + pseudo);
+                queueTrame(LOGIN_REFUSED);
+                return;
+            }
+            if (authCache != null && authCache.isValid(pseudo, password)) {
+                LogCategory.AUTH.log(Level.FINE, () -> "Mot de passe de " + pseudo + " vérifié par le cache");
+                onAuthResponse(true);
+                return;
+            }
+            authPending = true;
+            var login = pseudo;
+            mdpClient.authenticate(login, password, accepted -> {
+                if (authCache != null) {
+                    if (accepted) {
+                        authCache.put(login, password);
+                    } else {
+                        authCache.invalidate(login);
+                    }
+                }
+                reactor.execute(() -> onAuthResponse(accepted));
+            });
+        }
+
+        @Override
+        public void processLogin() {
+            if (!acceptsPseudo() || connectedUsers.putIfAbsent(pseudo, this) != null) {
+                queueTrame(LOGIN_REFUSED);
+            } else {
+                onAuthenticated();
+                LogCategory.CONNECTION.info(pseudo + " s'est connecté");
+            }
+        }
+
+        @Override
+        public void processResume(long epoch, long sequence) {
+            if (!authenticated) {
+                pendingResume = sequence;
+                pendingResumeEpoch = epoch;
+            } else if (!sequenced) {
+                resume(epoch, sequence);
+            }
+        }
+
+        @Override
+        public void processPublicMessage(String text) {
+            if (!authenticated) {
+                if (LogCategory.MESSAGE.sampled(Level.WARNING)) {
+                    LogCategory.MESSAGE.warning("Message non authentifié de " + pseudo);
+                }
+                return;
+            }
+
+            if (LogCategory.MESSAGE.sampled(Level.INFO)) {
+                LogCategory.MESSAGE.info("Message public: " + pseudo + " -> " + text);
+            }
+            broadcast(pseudo, text);
+        }
+
+        @Override
+        public void processPrivateRequest(String targetPseudo) {
+            var targetContext = connectedUsers.get(targetPseudo);
+            if (targetContext == null) {
+                if (LogCategory.PRIVATE.sampled(Level.WARNING)) {
+                    LogCategory.PRIVATE.warning("Utilisateur cible introuvable: " + pseudo + " -> " + targetPseudo);
+                }
+                return;
+            }
+
+            var requestTrame = Trame.clientMessage(OPCODE.REQUEST_PRIVATE, pseudo, new PrivateRequestMessage(targetPseudo)).encode();
+            targetContext.send(requestTrame);
+            if (LogCategory.PRIVATE.sampled(Level.INFO)) {
+                LogCategory.PRIVATE.info("Demande privée transmise: " + pseudo + " -> " + targetPseudo);
+            }
+        }
+
+        @Override
+        public void processOKPrivate(String targetPseudo, InetSocketAddress address, long token) {
+            var targetContext = connectedUsers.get(targetPseudo);
+            if (targetContext == null) return;
+
+            var responseTrame = Trame.clientMessage(OPCODE.OK_PRIVATE, pseudo,
+                    new OKPrivateMessage(targetPseudo, reachableAddress(address), token)).encode();
+            targetContext.send(responseTrame);
+        }
+
+        /**
+         * Un client écoutant sur toutes ses interfaces annonce l'adresse joker : elle est remplacée par
+         * celle depuis laquelle il est connecté au serveur, seule joignable par le demandeur.
+         */
+        private InetSocketAddress reachableAddress(InetSocketAddress address) {
+            if (!address.getAddress().isAnyLocalAddress()) {
+                return address;
+            }
+            try {
+                var remote = (InetSocketAddress) sc.getRemoteAddress();
+                return new InetSocketAddress(remote.getAddress(), address.getPort());
+            } catch (IOException e) {
+                return address;
+            }
+        }
+
+        @Override
+        public void processKOPrivate(String targetPseudo) {
+            var targetContext = connectedUsers.get(targetPseudo);
+            if (targetContext == null) return;
+
+            var responseTrame = Trame.clientMessage(OPCODE.KO_PRIVATE, pseudo, new PublicMessage(targetPseudo)).encode();
+            targetContext.send(responseTrame);
+        }
+
+        @Override
+        public void processGetUsers() {
+            var cache = userListCache;
+            var version = presence.changeCount();
+            if (cache.version() != version) {
+                // le compte est lu avant la liste : une liste plus récente que son compte sera reconstruite
+                cache = new UserListCache(version,
+                        Trame.serverResponse(OPCODE.CONNECTED_USERS_LIST, new PublicMessage(userList())).encode());
+                userListCache = cache;
+            }
+            queueTrame(cache.trame());
+            if (LogCategory.USERS.sampled(Level.INFO)) {
+                LogCategory.USERS.info("Liste utilisateurs envoyée à " + pseudo);
+            }
+        }
+
+        @Override
+        public void processSubscribeUsers() {
+            if (!authenticated || presenceSubscribed) {
+                return;
+            }
+            presenceSubscribed = true;
+            for (var trame : presence.snapshot()) {
+                queueTrame(trame);
+            }
+            if (LogCategory.USERS.sampled(Level.INFO)) {
+                LogCategory.USERS.info("État de présence envoyé à " + pseudo);
+            }
+        }
+
+        @Override
+        public void processJoinRoom(String room) {
+            if (!authenticated) {
+                return;
+            }
+            if (roomIndex(room) < 0) {
+                if (!JoinRoomMessage.isValidRoomName(room)) {
+                    // le nom, de taille quelconque, n'est pas repris : l'avis doit tenir dans une chaîne
+                    notice("Nom de salon invalide (non vide, sans espace, au plus "
+                            + JoinRoomMessage.MAX_ROOM_NAME_SIZE + " octets)");
+                    return;
+                }
+                if (roomCount == config.maxRoomsPerUser()) {
+                    notice("Trop de salons rejoints (maximum " + config.maxRoomsPerUser() + ")");
+                    return;
+                }
+                reactor.joinRoom(this, room);
+            }
+            queueTrame(Trame.serverResponse(OPCODE.JOIN_ROOM, new JoinRoomMessage(room)).encode());
+            if (LogCategory.ROOMS.sampled(Level.INFO)) {
+                LogCategory.ROOMS.info(pseudo + " a rejoint #" + room);
+            }
+        }
+
+        @Override
+        public void processLeaveRoom(String room) {
+            if (!authenticated) {
+                return;
+            }
+            var index = roomIndex(room);
+            if (index >= 0) {
+                reactor.leaveRoom(this, index);
+            }
+            queueTrame(Trame.serverResponse(OPCODE.LEAVE_ROOM, new LeaveRoomMessage(room)).encode());
+            if (LogCategory.ROOMS.sampled(Level.INFO)) {
+                LogCategory.ROOMS.info(pseudo + " a quitté #" + room);
+            }
+        }
+
+        @Override
+        public void processRoomMessage(String room, String text) {
+            if (!authenticated) {
+                return;
+            }
+            if (roomIndex(room) < 0) {
+                notice(JoinRoomMessage.isValidRoomName(room)
+                        ? "Vous n'êtes pas dans le salon #" + room
+                        : "Vous n'êtes pas dans ce salon, dont le nom est invalide");
+                return;
+            }
+            if (LogCategory.ROOMS.sampled(Level.INFO)) {
+                LogCategory.ROOMS.info("Message de salon: " + pseudo + " -> #" + room + ": " + text);
+            }
+            broadcastRoom(pseudo, room, text);
+        }
+    }
+
+    /**
+     * Liste des pseudos connectés, tronquée pour tenir dans une chaîne de {@link ServerConfig#maxStringSize()}
+     * octets ; les pseudos omis sont alors comptés en fin de liste.
+     */
+    private String userList() {
+        return truncatedList(connectedUsers.keySet(), config.maxStringSize());
+    }
+
+    /**
+     * Pseudos séparés par des virgules, ceux au-delà de {@code maxSize} octets étant seulement comptés.
+     */
+    private static String truncatedList(Collection<String> users, int maxSize) {
+        var limit = maxSize - USER_LIST_SUFFIX_SIZE;
+        var list = new StringBuilder();
+        var size = 0;
+        var omitted = 0;
+        for (var user : users) {
+            if (omitted > 0) {
+                omitted++;
+                continue;
+            }
+            var userSize = user.getBytes(StandardCharsets.UTF_8).length + (list.isEmpty() ? 0 : 2);
+            if (size + userSize > limit) {
+                omitted++;
+                continue;
+            }
+            if (!list.isEmpty()) {
+                list.append(", ");
+            }
+            list.append(user);
+            size += userSize;
+        }
+        if (omitted > 0) {
+            list.append(list.isEmpty() ? "" : ", ... et ").append(omitted).append(list.isEmpty() ? " pseudos" : " autres");
+        }
+        return list.toString();
+    }
+
+    /**
+     * Diffuse les arrivées et départs d'une fenêtre de présence ; appelé sous le verrou de {@link Presence},
+     * les évolutions sont donc postées à chaque réacteur dans l'ordre de leurs versions.
+     */
+    private void publishPresence(List<EncodedTrame> deltas, List<String> joined, List<String> left) {
+        var notice = Trame.serverResponse(OPCODE.MESSAGE, new PublicMessage(presenceNotice(joined, left))).encode();
+        for (var reactor : reactors) {
+            reactor.post(() -> reactor.broadcastPresence(deltas, notice));
+        }
+        LogCategory.USERS.log(Level.FINE, () -> "Présence: " + joined.size() + " arrivées, " + left.size() + " départs");
+    }
+
+    /**
+     * Avis de présence pour les clients non abonnés : une phrase pour un seul changement, sinon les
+     * listes d'arrivées et de départs, tronquées pour tenir dans une chaîne.
+     */
+    private String presenceNotice(List<String> joined, List<String> left) {
+        if (left.isEmpty() && joined.size() == 1) {
+            return joined.getFirst() + " s'est connecté";
+        }
+        if (joined.isEmpty() && left.size() == 1) {
+            return left.getFirst() + " s'est déconnecté";
+        }
+        var listSize = (config.maxStringSize() - PRESENCE_NOTICE_TEXT_SIZE) / (joined.isEmpty() || left.isEmpty() ? 1 : 2);
+        var notice = new StringBuilder();
+        if (!joined.isEmpty()) {
+            notice.append("Connexions : ").append(truncatedList(joined, listSize));
+        }
+        if (!left.isEmpty()) {
+            notice.append(notice.isEmpty() ? "Déconnexions : " : " ; déconnexions : ").append(truncatedList(left, listSize));
+        }
+        return notice.toString();
+    }
+
+    /**
+     * Enregistre le message dans l'historique et le poste à chaque réacteur sous le verrou de ce dernier :
+     * chaque réacteur reçoit les messages publics dans l'ordre de leurs numéros.
+     */
+    private void broadcast(String sender, String message) {
+        var broadcastMessage = new PublicMessage(message);
+        var trame = Trame.clientMessage(OPCODE.MESSAGE, sender, broadcastMessage).encode();
+
+        history.record(trame, sequence -> {
+            for (var reactor : reactors) {
+                reactor.post(() -> reactor.broadcastLocal(trame, sequence));
+            }
+        });
+
+        if (LogCategory.MESSAGE.sampled(Level.INFO)) {
+            LogCategory.MESSAGE.info("Message diffusé de " + sender + " à " + connectedUsers.size() + " utilisateurs");
+        }
+    }
+
+    /**
+     * Transmet le message aux seuls réacteurs ayant des membres du salon ; la trame est encodée une fois.
+     */
+    private void broadcastRoom(String sender, String room, String text) {
+        var trame = Trame.clientMessage(OPCODE.ROOM_MESSAGE, sender, new RoomMessage(room, text)).encode();
+        for (var reactor : roomReactors.getOrDefault(room, List.of())) {
+            reactor.execute(() -> reactor.broadcastRoom(room, trame));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java ChatVaBienServer <port> [mdpPort]");
+            return;
+        }
+
+        var serverPort = Integer.parseInt(args[0]);
+        InetSocketAddress mdpAddress = null;
+
+        if (args.length >= 2) {
+            var mdpPort = Integer.parseInt(args[1]);
+            mdpAddress = new InetSocketAddress("localhost", mdpPort);
+        }
+
+        new ChatVaBienServer(serverPort, mdpAddress).launch();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,123 @@
+package fr.upem.net.chatvabien.server;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Catégories de journalisation du serveur, chacune avec son propre {@link Logger} et donc son propre niveau.
+ * <p>
+ * Le niveau d'une catégorie se règle par la propriété système {@code chatvabien.log.<catégorie>},
+ * par exemple {@code -Dchatvabien.log.message=INFO}. Les catégories émettant un événement par message
+ * sont désactivées par défaut ; une fois activées, seul un événement sur
+ * {@code chatvabien.log.sample} est journalisé.
+ * <p>
+ * Les événements sont formatés et écrits par un {@link AsyncLogHandler}, jamais par le thread appelant.
+ */
+enum LogCategory {
+    /** Démarrage du serveur et des réacteurs. */
+    SERVER(Level.INFO, false),
+    /** Ouverture, identification et fermeture des connexions clientes. */
+    CONNECTION(Level.INFO, false),
+    /** Dialogue avec le serveur MDP. */
+    AUTH(Level.INFO, false),
+    /** Clients lents et trames abandonnées. */
+    FLOW(Level.INFO, false),
+    /** Messages publics et diffusions. */
+    MESSAGE(Level.WARNING, true),
+    /** Demandes de connexion privée. */
+    PRIVATE(Level.WARNING, true),
+    /** Demandes de liste des utilisateurs. */
+    USERS(Level.WARNING, true),
+    /** Entrées, sorties et messages des salons. */
+    ROOMS(Level.WARNING, true);
+
+    /**
+     * Logger parent de toutes les catégories, auquel est attaché le {@link AsyncLogHandler}.
+     */
+    static final String ROOT = "fr.upem.net.chatvabien.server";
+
+    private final Logger logger;
+    private final Level defaultLevel;
+    private final boolean perMessage;
+    private volatile int sampleRate = 1;
+
+    LogCategory(Level defaultLevel, boolean perMessage) {
+        this.logger = Logger.getLogger(ROOT + "." + name().toLowerCase(Locale.ROOT));
+        this.defaultLevel = defaultLevel;
+        this.perMessage = perMessage;
+    }
+
+    /**
+     * Applique les niveaux et le taux d'échantillonnage des propriétés système
+     * et installe le {@link AsyncLogHandler} ; sans effet si ce dernier est déjà installé.
+     */
+    static void configure() {
+        var sampleRate = Integer.getInteger("chatvabien.log.sample", 1);
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("chatvabien.log.sample doit être >= 1: " + sampleRate);
+        }
+        for (var category : values()) {
+            var property = "chatvabien.log." + category.name().toLowerCase(Locale.ROOT);
+            var level = System.getProperty(property);
+            category.logger.setLevel(level == null ? category.defaultLevel : Level.parse(level.toUpperCase(Locale.ROOT)));
+            category.sampleRate = category.perMessage ? sampleRate : 1;
+        }
+        AsyncLogHandler.install(Logger.getLogger(ROOT), Integer.getInteger("chatvabien.log.buffer", 8192));
+    }
+
+    boolean isLoggable(Level level) {
+        return logger.isLoggable(level);
+    }
+
+    /**
+     * Indique si un événement de ce niveau doit être journalisé, en tenant compte de l'échantillonnage.
+     * À tester avant de construire le message d'un événement émis pour chaque message.
+     */
+    boolean sampled(Level level) {
+        if (!logger.isLoggable(level)) {
+            return false;
+        }
+        var rate = sampleRate;
+        return rate == 1 || ThreadLocalRandom.current().nextInt(rate) == 0;
+    }
+
+    void log(Level level, String message) {
+        if (logger.isLoggable(level)) {
+            // source explicite : la déduire imposerait un parcours de pile au thread appelant
+            logger.logp(level, logger.getName(), null, message);
+        }
+    }
+
+    /**
+     * Journalise un message construit seulement si le niveau est actif.
+     */
+    void log(Level level, Supplier<String> message) {
+        if (logger.isLoggable(level)) {
+            logger.logp(level, logger.getName(), null, message);
+        }
+    }
+
+    void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    void warning(String message) {
+        log(Level.WARNING, message);
+    }
+
+    void severe(String message) {
+        log(Level.SEVERE, message);
+    }
+
+    /**
+     * Journalise une erreur inattendue avec sa pile d'appels.
+     */
+    void severe(String message, Throwable thrown) {
+        if (logger.isLoggable(Level.SEVERE)) {
+            logger.logp(Level.SEVERE, logger.getName(), null, message, thrown);
+        }
+    }
+}
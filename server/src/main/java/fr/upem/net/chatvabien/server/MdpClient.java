@@ -0,0 +1,287 @@
+package fr.upem.net.chatvabien.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import fr.upem.net.chatvabien.protocol.OutboundQueue;
+
+/**
+ * Client du serveur MDP vérifiant les mots de passe, sur une unique connexion servie par son propre thread.
+ * <p>
+ * Les demandes sont envoyées sans attendre les réponses précédentes et identifiées par leur id ;
+ * les réponses (statut sur un octet puis id sur 8 octets) sont reconstituées dans un buffer persistant,
+ * même lorsqu'elles arrivent en plusieurs lectures. Une demande sans réponse après
+ * {@link ServerConfig#mdpTimeoutMillis()} est refusée. Si la connexion est perdue, elle est rétablie
+ * avec un délai croissant et les demandes encore en attente sont renvoyées.
+ */
+final class MdpClient {
+    private static final byte AUTH = 1;
+    private static final byte STATUS_OK = 1;
+    private static final int RESPONSE_SIZE = Byte.BYTES + Long.BYTES;
+    private static final int BUFFER_SIZE = 256 * RESPONSE_SIZE;
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Demande en attente de réponse ; {@code request} est conservée pour être renvoyée après une reconnexion.
+     */
+    private record Pending(ByteBuffer request, long deadline, Consumer<Boolean> callback) {}
+
+    private final InetSocketAddress address;
+    private final long timeoutNanos;
+    private final long maxBackoffNanos;
+    private final int maxPending;
+    private final int maxStringSize;
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+    private final ByteBuffer bufferIn = ByteBuffer.allocate(BUFFER_SIZE);
+    private OutboundQueue outQueue = new OutboundQueue();
+    // ordre d'insertion = ordre des échéances, le délai étant le même pour toutes les demandes
+    private final Map<Long, Pending> pending = new LinkedHashMap<>();
+    private long nextId;
+
+    private SocketChannel channel;
+    private SelectionKey key;
+    private boolean connected;
+    private long backoffNanos = MIN_BACKOFF_NANOS;
+    private long reconnectAt;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+
+    MdpClient(InetSocketAddress address, ServerConfig config) throws IOException {
+        this.address = address;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.mdpTimeoutMillis());
+        this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(config.mdpMaxBackoffMillis());
+        this.maxPending = config.mdpMaxPending();
+        this.maxStringSize = config.maxStringSize();
+        this.selector = Selector.open();
+        this.thread = Thread.ofPlatform().name("mdp-client").daemon().unstarted(this::run);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void shutdown() {
+        thread.interrupt();
+    }
+
+    /**
+     * Demande au serveur MDP si le mot de passe est celui du login ; appelable depuis n'importe quel thread.
+     * Le callback est appelé sur le thread du client MDP, avec {@code false} si le serveur refuse,
+     * ne répond pas à temps, si trop de demandes sont déjà en attente ou si le login ou le mot de passe
+     * dépasse {@link ServerConfig#maxStringSize()} octets.
+     */
+    void authenticate(String login, String password, Consumer<Boolean> callback) {
+        var loginBytes = login.getBytes(StandardCharsets.UTF_8);
+        var passwordBytes = password.getBytes(StandardCharsets.UTF_8);
+        if (loginBytes.length > maxStringSize || passwordBytes.length > maxStringSize) {
+            execute(() -> callback.accept(false));
+            return;
+        }
+        execute(() -> submit(loginBytes, passwordBytes, callback));
+    }
+
+    long requests() {
+        return requests.sum();
+    }
+
+    long timeouts() {
+        return timeouts.sum();
+    }
+
+    long rejected() {
+        return rejected.sum();
+    }
+
+    long reconnects() {
+        return reconnects.sum();
+    }
+
+    private void execute(Runnable task) {
+        tasks.offer(task);
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    private void submit(byte[] login, byte[] password, Consumer<Boolean> callback) {
+        if (pending.size() >= maxPending) {
+            rejected.increment();
+            callback.accept(false);
+            return;
+        }
+        var id = nextId++;
+        var request = ByteBuffer.allocate(Byte.BYTES + Long.BYTES + 2 * Integer.BYTES + login.length + password.length)
+                .put(AUTH)
+                .putLong(id)
+                .putInt(login.length).put(login)
+                .putInt(password.length).put(password)
+                .flip();
+        pending.put(id, new Pending(request, System.nanoTime() + timeoutNanos, callback));
+        requests.increment();
+        if (connected) {
+            outQueue.offer(request.duplicate());
+        }
+    }
+
+    private void run() {
+        try {
+            connect();
+            while (!Thread.interrupted()) {
+                selector.select(this::treatKey, selectTimeoutMillis());
+                runTasks();
+                var now = System.nanoTime();
+                expire(now);
+                if (channel == null && now - reconnectAt >= 0) {
+                    connect();
+                }
+                flush();
+            }
+        } catch (IOException e) {
+            LogCategory.AUTH.severe("Client MDP arrêté: " + e.getMessage());
+        }
+    }
+
+    private long selectTimeoutMillis() {
+        var now = System.nanoTime();
+        var next = Long.MAX_VALUE;
+        if (!pending.isEmpty()) {
+            next = pending.values().iterator().next().deadline() - now;
+        }
+        if (channel == null) {
+            next = Math.min(next, reconnectAt - now);
+        }
+        if (next == Long.MAX_VALUE) {
+            return 0;
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(next) + 1);
+    }
+
+    private void runTasks() {
+        wakeupPending.set(false);
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void expire(long now) {
+        var iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            var request = iterator.next();
+            if (request.deadline() - now > 0) {
+                return;
+            }
+            iterator.remove();
+            timeouts.increment();
+            request.callback().accept(false);
+        }
+    }
+
+    private void connect() {
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            key = channel.register(selector, SelectionKey.OP_CONNECT);
+            if (channel.connect(address)) {
+                onConnected();
+            }
+        } catch (IOException e) {
+            disconnect(e);
+        }
+    }
+
+    private void treatKey(SelectionKey selected) {
+        try {
+            if (selected.isValid() && selected.isConnectable() && channel.finishConnect()) {
+                onConnected();
+            }
+            if (selected.isValid() && selected.isWritable()) {
+                outQueue.flush(channel);
+            }
+            if (selected.isValid() && selected.isReadable()) {
+                read();
+            }
+        } catch (IOException e) {
+            disconnect(e);
+        }
+    }
+
+    private void onConnected() {
+        connected = true;
+        backoffNanos = MIN_BACKOFF_NANOS;
+        LogCategory.AUTH.info("Connecté au serveur MDP" + (pending.isEmpty() ? "" : ", "
+                + pending.size() + " demandes renvoyées"));
+        for (var request : pending.values()) {
+            outQueue.offer(request.request().duplicate());
+        }
+    }
+
+    private void read() throws IOException {
+        if (channel.read(bufferIn) == -1) {
+            throw new IOException("connexion fermée par le serveur MDP");
+        }
+        bufferIn.flip();
+        while (bufferIn.remaining() >= RESPONSE_SIZE) {
+            var status = bufferIn.get();
+            var id = bufferIn.getLong();
+            var request = pending.remove(id);
+            if (request != null) { // sinon réponse arrivée après l'échéance
+                request.callback().accept(status == STATUS_OK);
+            }
+        }
+        bufferIn.compact();
+    }
+
+    private void flush() {
+        if (!connected) {
+            return;
+        }
+        try {
+            outQueue.flush(channel);
+            key.interestOps(outQueue.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            disconnect(e);
+        }
+    }
+
+    private void disconnect(IOException cause) {
+        LogCategory.AUTH.warning("Connexion MDP perdue (" + cause.getMessage() + "), nouvelle tentative dans "
+                + TimeUnit.NANOSECONDS.toMillis(backoffNanos) + " ms");
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            // ignore
+        }
+        channel = null;
+        key = null;
+        connected = false;
+        bufferIn.clear();
+        outQueue = new OutboundQueue();
+        reconnectAt = System.nanoTime() + backoffNanos;
+        backoffNanos = Math.min(2 * backoffNanos, maxBackoffNanos);
+        reconnects.increment();
+    }
+}
@@ -0,0 +1,156 @@
+package fr.upem.net.chatvabien.server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongConsumer;
+
+import fr.upem.net.chatvabien.protocol.EncodedTrame;
+
+/**
+ * Historique borné des derniers messages publics, tels qu'encodés pour la diffusion.
+ * <p>
+ * Chaque message reçoit un numéro de séquence croissant, à partir de 1, et sa trame est copiée à la
+ * suite des précédentes dans des segments de mémoire directe. Un segment plein n'est plus jamais
+ * modifié : les plus anciens sont abandonnés dès que l'historique dépasse sa capacité. Une reprise
+ * envoie donc des vues en lecture seule sur les segments, une par segment, sans copie ni réencodage,
+ * qui restent valides même si le segment est abandonné entre-temps.
+ * <p>
+ * Les numéros repartant de 1 à chaque démarrage du serveur, l'historique a une époque aléatoire : un
+ * numéro n'a de sens qu'accompagné de l'époque de l'historique qui l'a attribué.
+ * <p>
+ * Les numéros sont attribués sous le verrou de l'historique, pendant lequel l'appelant transmet le
+ * message aux réacteurs : chaque réacteur reçoit les messages dans l'ordre de leurs numéros.
+ */
+final class MessageHistory {
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    /**
+     * Messages d'une reprise : les vues à envoyer, le numéro du premier message et le nombre de
+     * messages demandés absents de l'historique ou au-delà de la taille autorisée.
+     */
+    record Replay(List<ByteBuffer> buffers, long firstSequence, long lost) {}
+
+    private static final class Segment {
+        private final ByteBuffer bytes;
+        private final long firstSequence;
+        private int[] starts = new int[64];
+        private int count;
+
+        Segment(int capacity, long firstSequence) {
+            this.bytes = ByteBuffer.allocateDirect(capacity);
+            this.firstSequence = firstSequence;
+        }
+
+        void append(ByteBuffer frame) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, 2 * count);
+            }
+            starts[count++] = bytes.position();
+            bytes.put(frame);
+        }
+
+        int start(long sequence) {
+            return starts[(int) (sequence - firstSequence)];
+        }
+
+        long lastSequence() {
+            return firstSequence + count - 1;
+        }
+    }
+
+    private final long capacity;
+    private final long epoch = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private long retainedBytes;
+    private long lastSequence;
+
+    /**
+     * @param capacity nombre d'octets de messages conservés, 0 pour n'en conserver aucun
+     */
+    MessageHistory(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Époque de cet historique, jamais {@link fr.upem.net.chatvabien.protocol.ResumeMessage#NO_EPOCH}.
+     */
+    long epoch() {
+        return epoch;
+    }
+
+    /**
+     * Numéro du dernier message enregistré, 0 si aucun.
+     */
+    synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Enregistre le message et transmet son numéro à {@code publisher}, appelé sous le verrou.
+     */
+    synchronized void record(EncodedTrame trame, LongConsumer publisher) {
+        var sequence = ++lastSequence;
+        if (capacity > 0) {
+            append(trame.buffer(), sequence);
+        }
+        publisher.accept(sequence);
+    }
+
+    private void append(ByteBuffer frame, long sequence) {
+        var size = frame.remaining();
+        var segment = segments.peekLast();
+        if (segment == null || segment.bytes.remaining() < size) {
+            // un message plus grand qu'un segment occupe un segment à sa taille
+            segment = new Segment(Math.max(SEGMENT_SIZE, size), sequence);
+            segments.addLast(segment);
+            retainedBytes += segment.bytes.capacity();
+        }
+        segment.append(frame);
+        while (retainedBytes > capacity && segments.size() > 1) {
+            retainedBytes -= segments.pollFirst().bytes.capacity();
+        }
+    }
+
+    /**
+     * Messages de numéro supérieur à {@code after} et inférieur ou égal à {@code upTo}, en ne gardant que
+     * les plus récents si leur taille dépasse {@code maxBytes}.
+     */
+    synchronized Replay after(long after, long upTo, long maxBytes) {
+        if (after >= upTo) {
+            return new Replay(List.of(), upTo + 1, 0);
+        }
+        var buffers = new ArrayList<ByteBuffer>();
+        var first = upTo + 1;
+        var remaining = maxBytes;
+        var iterator = segments.descendingIterator();
+        while (iterator.hasNext() && first > after + 1) {
+            var segment = iterator.next();
+            if (segment.firstSequence > upTo) {
+                continue;
+            }
+            var last = Math.min(upTo, segment.lastSequence());
+            var end = last == segment.lastSequence() ? segment.bytes.position() : segment.start(last + 1);
+            var from = Math.max(after + 1, segment.firstSequence);
+            // recule le début tant que les messages tiennent dans la taille autorisée
+            var start = end;
+            var sequence = last + 1;
+            while (sequence > from && end - segment.start(sequence - 1) <= remaining) {
+                sequence--;
+                start = segment.start(sequence);
+            }
+            if (sequence <= last) {
+                buffers.add(segment.bytes.slice(start, end - start).asReadOnlyBuffer());
+                remaining -= end - start;
+                first = sequence;
+            }
+            if (sequence > from) {
+                break;
+            }
+        }
+        return new Replay(buffers.reversed(), first, first - after - 1);
+    }
+}
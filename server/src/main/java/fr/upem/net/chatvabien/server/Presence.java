@@ -0,0 +1,286 @@
+package fr.upem.net.chatvabien.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import fr.upem.net.chatvabien.protocol.*;
+
+/**
+ * État de présence versionné : pseudos connectés, découpés en pages encodées une fois pour toutes.
+ * <p>
+ * Les arrivées et départs sont comptés immédiatement, mais ne sont appliqués à l'état publié qu'à la
+ * fin d'une fenêtre de {@link ServerConfig#presenceWindowMillis()} : l'ensemble des changements de la
+ * fenêtre, après annulation des allers-retours, donne une seule évolution USERS_DELTA (découpée si
+ * elle dépasse la taille d'une chaîne). Les évolutions sont publiées sous le verrou de l'état, pour
+ * que tous les réacteurs les reçoivent dans l'ordre des versions.
+ * <p>
+ * Seules les pages modifiées sont réencodées, et seulement à la prochaine demande d'état : une
+ * demande coûte le nombre de pages et non le nombre d'utilisateurs. Une page vidée sous la moitié de
+ * sa taille par des départs est fusionnée avec une voisine, pour que des arrivées et départs répétés
+ * ne laissent pas des pages presque vides transmises à chaque demande.
+ * <p>
+ * Un pseudo peut être compté plusieurs fois le temps qu'une ancienne connexion se ferme ; il n'est
+ * parti qu'au départ de sa dernière connexion.
+ */
+final class Presence {
+    // contenu d'une évolution à un seul pseudo : version, deux nombres de pseudos et une taille
+    private static final int DELTA_OVERHEAD = Long.BYTES + 3 * Integer.BYTES;
+
+    /**
+     * Reçoit les évolutions publiées, appelé sous le verrou de l'état.
+     */
+    interface Publisher {
+        /**
+         * @param deltas trames USERS_DELTA de versions consécutives
+         * @param joined pseudos arrivés pendant la fenêtre
+         * @param left   pseudos partis pendant la fenêtre
+         */
+        void publish(List<EncodedTrame> deltas, List<String> joined, List<String> left);
+    }
+
+    private static final class Page {
+        private final LinkedHashSet<String> users = new LinkedHashSet<>();
+        private int size = Integer.BYTES;
+        private EncodedTrame encoded;
+
+        EncodedTrame encoded() {
+            if (encoded == null) {
+                encoded = Trame.serverResponse(OPCODE.USERS_SNAPSHOT, new UsersPageMessage(List.copyOf(users))).encode();
+            }
+            return encoded;
+        }
+    }
+
+    private record Entry(Page page, int size) {}
+
+    private final int maxContentSize;
+    private final long windowMillis;
+    private final Publisher publisher;
+    private final ScheduledExecutorService scheduler;
+
+    // connexions authentifiées par pseudo, à jour à chaque arrivée ou départ
+    private final Map<String, Integer> connections = new HashMap<>();
+    private long changeCount;
+    // pseudos dont la présence a pu changer depuis la dernière publication
+    private final LinkedHashSet<String> changed = new LinkedHashSet<>();
+    private boolean flushScheduled;
+
+    // état publié
+    private final List<Page> pages = new ArrayList<>();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private long version;
+
+    /**
+     * @param maxStringSize taille maximale du contenu d'une trame, qui borne pages et évolutions
+     * @param windowMillis  durée de regroupement des changements, 0 pour publier chacun immédiatement
+     */
+    Presence(int maxStringSize, long windowMillis, Publisher publisher) {
+        this.maxContentSize = maxStringSize;
+        this.windowMillis = windowMillis;
+        this.publisher = publisher;
+        this.scheduler = windowMillis == 0 ? null : Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("presence").daemon().factory());
+    }
+
+    void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Indique si ce pseudo tient dans une évolution ou une page ; sinon la connexion doit être refusée.
+     */
+    boolean accepts(String pseudo) {
+        return pseudo.getBytes(StandardCharsets.UTF_8).length <= maxContentSize - DELTA_OVERHEAD;
+    }
+
+    /**
+     * Nombre d'arrivées et de départs depuis le démarrage, publiés ou non.
+     */
+    synchronized long changeCount() {
+        return changeCount;
+    }
+
+    synchronized void join(String pseudo) {
+        if (connections.merge(pseudo, 1, Integer::sum) == 1) {
+            change(pseudo);
+        }
+    }
+
+    synchronized void leave(String pseudo) {
+        var count = connections.get(pseudo);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            connections.put(pseudo, count - 1);
+            return;
+        }
+        connections.remove(pseudo);
+        change(pseudo);
+    }
+
+    /**
+     * État publié : ses pages puis une trame USERS_DELTA vide portant sa version.
+     */
+    synchronized List<EncodedTrame> snapshot() {
+        var trames = new ArrayList<EncodedTrame>(pages.size() + 1);
+        for (var page : pages) {
+            trames.add(page.encoded());
+        }
+        trames.add(delta(version, List.of(), List.of()));
+        return trames;
+    }
+
+    private void change(String pseudo) {
+        changeCount++;
+        changed.add(pseudo);
+        if (scheduler == null) {
+            flush();
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            scheduler.schedule(this::scheduledFlush, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void scheduledFlush() {
+        flushScheduled = false;
+        flush();
+    }
+
+    /**
+     * Applique à l'état publié les changements en attente et publie l'évolution qui en résulte.
+     */
+    private void flush() {
+        var joined = new ArrayList<String>();
+        var left = new ArrayList<String>();
+        var shrunk = new LinkedHashSet<Page>();
+        for (var pseudo : changed) {
+            var connected = connections.containsKey(pseudo);
+            var published = entries.containsKey(pseudo);
+            if (connected && !published) {
+                add(pseudo);
+                joined.add(pseudo);
+            } else if (!connected && published) {
+                shrunk.add(remove(pseudo));
+                left.add(pseudo);
+            }
+        }
+        changed.clear();
+        if (joined.isEmpty() && left.isEmpty()) {
+            return;
+        }
+        var deltas = deltas(joined, left);
+        if (compact(shrunk)) {
+            // mêmes pseudos, autres pages : une version vide de plus distingue les états transmis ensuite
+            deltas.add(delta(++version, List.of(), List.of()));
+        }
+        publisher.publish(deltas, joined, left);
+    }
+
+    private void add(String pseudo) {
+        var size = Integer.BYTES + pseudo.getBytes(StandardCharsets.UTF_8).length;
+        var page = pages.isEmpty() ? null : pages.getLast();
+        if (page == null || page.size + size > maxContentSize) {
+            page = new Page();
+            pages.add(page);
+        }
+        page.users.add(pseudo);
+        page.size += size;
+        page.encoded = null;
+        entries.put(pseudo, new Entry(page, size));
+    }
+
+    /**
+     * @return la page qui contenait le pseudo
+     */
+    private Page remove(String pseudo) {
+        var entry = entries.remove(pseudo);
+        var page = entry.page();
+        page.users.remove(pseudo);
+        page.size -= entry.size();
+        page.encoded = null;
+        if (page.users.isEmpty()) {
+            pages.remove(page);
+        }
+        return page;
+    }
+
+    /**
+     * Fusionne chaque page de {@code shrunk} encore remplie à moins de moitié avec la précédente, ou
+     * à défaut avec la suivante, si leurs pseudos tiennent dans une seule page. L'ordre des pseudos
+     * d'un état est conservé.
+     *
+     * @return {@code true} si des pages ont été fusionnées
+     */
+    private boolean compact(Set<Page> shrunk) {
+        var compacted = false;
+        for (var page : shrunk) {
+            var index = pages.indexOf(page);
+            if (index < 0 || page.size > maxContentSize / 2) {
+                continue;
+            }
+            if (index > 0 && fits(pages.get(index - 1), page)) {
+                merge(pages.get(index - 1), page);
+                pages.remove(index);
+                compacted = true;
+            } else if (index + 1 < pages.size() && fits(page, pages.get(index + 1))) {
+                merge(page, pages.get(index + 1));
+                pages.remove(index + 1);
+                compacted = true;
+            }
+        }
+        return compacted;
+    }
+
+    private boolean fits(Page into, Page from) {
+        return into.size + from.size - Integer.BYTES <= maxContentSize;
+    }
+
+    private void merge(Page into, Page from) {
+        for (var pseudo : from.users) {
+            entries.put(pseudo, new Entry(into, entries.get(pseudo).size()));
+        }
+        into.users.addAll(from.users);
+        into.size += from.size - Integer.BYTES;
+        into.encoded = null;
+    }
+
+    /**
+     * Découpe les changements en évolutions tenant chacune dans une chaîne, de versions consécutives.
+     */
+    private List<EncodedTrame> deltas(List<String> joined, List<String> left) {
+        var deltas = new ArrayList<EncodedTrame>(1);
+        var chunkJoined = new ArrayList<String>();
+        var chunkLeft = new ArrayList<String>();
+        var size = Long.BYTES + 2 * Integer.BYTES;
+        for (var i = 0; i < joined.size() + left.size(); i++) {
+            var joining = i < joined.size();
+            var pseudo = joining ? joined.get(i) : left.get(i - joined.size());
+            var pseudoSize = Integer.BYTES + pseudo.getBytes(StandardCharsets.UTF_8).length;
+            if (size + pseudoSize > maxContentSize) {
+                deltas.add(delta(++version, chunkJoined, chunkLeft));
+                chunkJoined.clear();
+                chunkLeft.clear();
+                size = Long.BYTES + 2 * Integer.BYTES;
+            }
+            (joining ? chunkJoined : chunkLeft).add(pseudo);
+            size += pseudoSize;
+        }
+        deltas.add(delta(++version, chunkJoined, chunkLeft));
+        return deltas;
+    }
+
+    private static EncodedTrame delta(long version, List<String> joined, List<String> left) {
+        return Trame.serverResponse(OPCODE.USERS_DELTA, new UsersDeltaMessage(version, joined, left)).encode();
+    }
+}
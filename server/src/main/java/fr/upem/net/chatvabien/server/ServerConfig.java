@@ -0,0 +1,178 @@
+package fr.upem.net.chatvabien.server;
+
+import java.util.Locale;
+import java.util.Objects;
+
+import fr.upem.net.chatvabien.protocol.StringReader;
+import fr.upem.net.chatvabien.protocol.TrameReader;
+
+/**
+ * Configuration du serveur ChatVaBien.
+ * <p>
+ * Les valeurs par défaut peuvent être surchargées par propriétés système,
+ * par exemple {@code -Dchatvabien.reactors=8}.
+ *
+ * @param reactorCount         nombre de réacteurs (threads sélecteurs) traitant les connexions clientes
+ * @param balancing            stratégie de répartition des nouvelles connexions entre les réacteurs
+ * @param maxQueuedBytes       nombre maximal d'octets en attente d'envoi par connexion
+ * @param maxQueuedFrames      nombre maximal de trames en attente d'envoi par connexion
+ * @param slowConsumerPolicy   traitement d'une connexion dépassant l'une de ces limites
+ * @param flushDelayMicros     délai pendant lequel les trames mises en file sont accumulées avant d'être
+ *                             écrites, 0 pour les écrire à la fin de chaque tour de boucle du réacteur ;
+ *                             attendu par le sélecteur, à la milliseconde près, sans attente active
+ * @param mdpTimeoutMillis     délai au-delà duquel une demande au serveur MDP sans réponse est refusée
+ * @param mdpMaxBackoffMillis  délai maximal entre deux tentatives de reconnexion au serveur MDP
+ * @param mdpMaxPending        nombre maximal de demandes en attente d'une réponse du serveur MDP
+ * @param authCacheTtlSeconds  durée de validité d'un mot de passe accepté par le serveur MDP,
+ *                             0 pour interroger ce dernier à chaque connexion
+ * @param authCacheSize        nombre maximal de mots de passe acceptés gardés en cache
+ * @param maxStringSize        taille maximale en octets d'une chaîne (pseudo ou texte) d'une trame,
+ *                             annoncée aux clients ; le buffer de lecture d'une connexion grandit
+ *                             jusqu'à contenir la plus grande trame correspondante
+ * @param presenceWindowMillis durée pendant laquelle les arrivées et départs sont regroupés en une
+ *                             seule notification par destinataire, 0 pour les notifier un par un
+ * @param maxRoomsPerUser      nombre maximal de salons rejoints en même temps par une connexion
+ * @param historyBytes         nombre d'octets de messages publics récents conservés pour être renvoyés
+ *                             aux clients qui se reconnectent, 0 pour n'en conserver aucun
+ */
+public record ServerConfig(int reactorCount, Balancing balancing,
+                           int maxQueuedBytes, int maxQueuedFrames, SlowConsumerPolicy slowConsumerPolicy,
+                           long flushDelayMicros,
+                           long mdpTimeoutMillis, long mdpMaxBackoffMillis, int mdpMaxPending,
+                           long authCacheTtlSeconds, int authCacheSize, int maxStringSize,
+                           long presenceWindowMillis, int maxRoomsPerUser, long historyBytes) {
+
+    /**
+     * Stratégie de choix du réacteur pour une connexion nouvellement acceptée.
+     */
+    public enum Balancing {
+        /** Les réacteurs sont choisis à tour de rôle. */
+        ROUND_ROBIN,
+        /** Le réacteur gérant le moins de connexions est choisi. */
+        LEAST_LOADED
+    }
+
+    /**
+     * Traitement d'un client qui ne lit pas assez vite ses trames.
+     */
+    public enum SlowConsumerPolicy {
+        /** La connexion est fermée. */
+        DISCONNECT,
+        /** Les messages publics les plus anciens en attente sont abandonnés. */
+        DROP_OLDEST,
+        /**
+         * Les messages publics en attente sont abandonnés et remplacés par un unique
+         * avis indiquant combien ont été perdus, envoyé dès que le client a rattrapé son retard.
+         */
+        COALESCE
+    }
+
+    /**
+     * Bornes de {@link #maxStringSize()} : de quoi écrire un pseudo, et au plus 16 Mio.
+     */
+    public static final int MIN_STRING_SIZE = 64;
+    public static final int MAX_STRING_SIZE = 1 << 24;
+
+    public ServerConfig {
+        if (reactorCount < 1) {
+            throw new IllegalArgumentException("reactorCount doit être >= 1: " + reactorCount);
+        }
+        Objects.requireNonNull(balancing);
+        if (maxQueuedBytes < 1 || maxQueuedFrames < 1) {
+            throw new IllegalArgumentException("limites de file de sortie invalides: "
+                    + maxQueuedBytes + " octets, " + maxQueuedFrames + " trames");
+        }
+        Objects.requireNonNull(slowConsumerPolicy);
+        if (flushDelayMicros < 0) {
+            throw new IllegalArgumentException("flushDelayMicros doit être >= 0: " + flushDelayMicros);
+        }
+        if (mdpTimeoutMillis < 1 || mdpMaxBackoffMillis < 1 || mdpMaxPending < 1) {
+            throw new IllegalArgumentException("paramètres MDP invalides: " + mdpTimeoutMillis + " ms, "
+                    + mdpMaxBackoffMillis + " ms, " + mdpMaxPending + " demandes");
+        }
+        if (authCacheTtlSeconds < 0 || authCacheSize < 1) {
+            throw new IllegalArgumentException("paramètres du cache d'authentification invalides: "
+                    + authCacheTtlSeconds + " s, " + authCacheSize + " entrées");
+        }
+        if (maxStringSize < MIN_STRING_SIZE || maxStringSize > MAX_STRING_SIZE) {
+            throw new IllegalArgumentException("maxStringSize doit être entre " + MIN_STRING_SIZE + " et "
+                    + MAX_STRING_SIZE + ": " + maxStringSize);
+        }
+        // une trame de taille maximale doit pouvoir entrer dans une file de sortie vide
+        if (maxQueuedBytes < TrameReader.maxFrameSize(maxStringSize)) {
+            throw new IllegalArgumentException("maxQueuedBytes doit être >= " + TrameReader.maxFrameSize(maxStringSize)
+                    + " pour des chaînes de " + maxStringSize + " octets: " + maxQueuedBytes);
+        }
+        if (presenceWindowMillis < 0) {
+            throw new IllegalArgumentException("presenceWindowMillis doit être >= 0: " + presenceWindowMillis);
+        }
+        if (maxRoomsPerUser < 1) {
+            throw new IllegalArgumentException("maxRoomsPerUser doit être >= 1: " + maxRoomsPerUser);
+        }
+        if (historyBytes < 0) {
+            throw new IllegalArgumentException("historyBytes doit être >= 0: " + historyBytes);
+        }
+    }
+
+    /**
+     * Copie de cette configuration avec d'autres limites de file de sortie et politique de consommateur lent.
+     */
+    public ServerConfig withOutputQueue(int maxQueuedBytes, int maxQueuedFrames, SlowConsumerPolicy slowConsumerPolicy) {
+        return new ServerConfig(reactorCount, balancing, maxQueuedBytes, maxQueuedFrames, slowConsumerPolicy,
+                flushDelayMicros, mdpTimeoutMillis, mdpMaxBackoffMillis, mdpMaxPending, authCacheTtlSeconds, authCacheSize,
+                maxStringSize, presenceWindowMillis, maxRoomsPerUser, historyBytes);
+    }
+
+    /**
+     * Copie de cette configuration avec un autre délai d'accumulation des trames.
+     */
+    public ServerConfig withFlushDelayMicros(long flushDelayMicros) {
+        return new ServerConfig(reactorCount, balancing, maxQueuedBytes, maxQueuedFrames, slowConsumerPolicy,
+                flushDelayMicros, mdpTimeoutMillis, mdpMaxBackoffMillis, mdpMaxPending, authCacheTtlSeconds, authCacheSize,
+                maxStringSize, presenceWindowMillis, maxRoomsPerUser, historyBytes);
+    }
+
+    /**
+     * Copie de cette configuration avec une autre fenêtre de regroupement de la présence.
+     */
+    public ServerConfig withPresenceWindowMillis(long presenceWindowMillis) {
+        return new ServerConfig(reactorCount, balancing, maxQueuedBytes, maxQueuedFrames, slowConsumerPolicy,
+                flushDelayMicros, mdpTimeoutMillis, mdpMaxBackoffMillis, mdpMaxPending, authCacheTtlSeconds, authCacheSize,
+                maxStringSize, presenceWindowMillis, maxRoomsPerUser, historyBytes);
+    }
+
+    /**
+     * Copie de cette configuration avec une autre taille d'historique des messages publics.
+     */
+    public ServerConfig withHistoryBytes(long historyBytes) {
+        return new ServerConfig(reactorCount, balancing, maxQueuedBytes, maxQueuedFrames, slowConsumerPolicy,
+                flushDelayMicros, mdpTimeoutMillis, mdpMaxBackoffMillis, mdpMaxPending, authCacheTtlSeconds, authCacheSize,
+                maxStringSize, presenceWindowMillis, maxRoomsPerUser, historyBytes);
+    }
+
+    /**
+     * Construit la configuration à partir des propriétés système {@code chatvabien.*}.
+     */
+    public static ServerConfig fromSystemProperties() {
+        var reactorCount = Integer.getInteger("chatvabien.reactors", Runtime.getRuntime().availableProcessors());
+        var balancing = Balancing.valueOf(
+                System.getProperty("chatvabien.balancing", Balancing.ROUND_ROBIN.name()).toUpperCase(Locale.ROOT));
+        var maxQueuedBytes = Integer.getInteger("chatvabien.out.maxBytes", 1 << 20);
+        var maxQueuedFrames = Integer.getInteger("chatvabien.out.maxFrames", 4096);
+        var slowConsumerPolicy = SlowConsumerPolicy.valueOf(
+                System.getProperty("chatvabien.out.policy", SlowConsumerPolicy.DROP_OLDEST.name()).toUpperCase(Locale.ROOT));
+        var flushDelayMicros = Long.getLong("chatvabien.out.flushDelayMicros", 0);
+        var mdpTimeoutMillis = Long.getLong("chatvabien.mdp.timeoutMillis", 2000);
+        var mdpMaxBackoffMillis = Long.getLong("chatvabien.mdp.maxBackoffMillis", 5000);
+        var mdpMaxPending = Integer.getInteger("chatvabien.mdp.maxPending", 10_000);
+        var authCacheTtlSeconds = Long.getLong("chatvabien.auth.cacheTtlSeconds", 0);
+        var authCacheSize = Integer.getInteger("chatvabien.auth.cacheSize", 10_000);
+        var maxStringSize = Integer.getInteger("chatvabien.maxStringSize", StringReader.MAX_STRING_SIZE);
+        var presenceWindowMillis = Long.getLong("chatvabien.presence.windowMillis", 100);
+        var maxRoomsPerUser = Integer.getInteger("chatvabien.rooms.maxPerUser", 16);
+        var historyBytes = Long.getLong("chatvabien.history.bytes", 1 << 20);
+        return new ServerConfig(reactorCount, balancing, maxQueuedBytes, maxQueuedFrames, slowConsumerPolicy,
+                flushDelayMicros, mdpTimeoutMillis, mdpMaxBackoffMillis, mdpMaxPending, authCacheTtlSeconds, authCacheSize,
+                maxStringSize, presenceWindowMillis, maxRoomsPerUser, historyBytes);
+    }
+}